@@ -1,6 +1,12 @@
 
 import com.zeroc.Ice.*;
 import MIO.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import client.GraphStreamListenerI;
+import client.ProgressListenerI;
 
 public class Client {
 
@@ -54,6 +60,10 @@ public class Client {
             System.out.println("  - Master (procesamiento distribuido)");
             System.out.println("=".repeat(80));
 
+            // El modo job se suscribe solo al trabajo que envía
+            boolean jobMode = args.length > 0 && args[0].equals("job");
+            ProgressListenerPrx progressListener = subscribeProgress(communicator, mioService, !jobMode);
+
             System.out.println("\n[1] Construyendo el grafo en el servidor...");
             mioService.buildGraph();
             System.out.println("    Grafo construido exitosamente");
@@ -62,23 +72,57 @@ public class Client {
             String stats = mioService.getStatistics();
             System.out.println(stats);
 
-            System.out.println("\n[3] Obteniendo arcos del grafo...");
-            ArcInfo[] arcs = mioService.getAllArcs();
-            System.out.println("    Total de arcos: " + arcs.length);
+            System.out.println("\n[3] Tamaño del grafo...");
+            System.out.println("    Total de arcos: " + mioService.getArcCount());
 
             if (args.length > 0 && args[0].equals("benchmark")) {
                 runBenchmarkWithRealData(mioService);
             } else if (args.length > 0 && args[0].equals("benchmark-gen")) {
-                runBenchmark(master, arcs);
+                runBenchmark(master, fetchArcs(mioService));
             } else if (args.length > 1 && args[0].equals("test")) {
                 int count = Integer.parseInt(args[1]);
                 runSingleTestWithRealData(mioService, count);
             } else if (args.length > 0 && args[0].equals("experiment")) {
                 runExperiments(mioService);
+            } else if (args.length > 0 && args[0].equals("workers")) {
+                printWorkers(master);
+            } else if (args.length > 0 && args[0].equals("wire-bench")) {
+                int count = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+                runWireFormatBenchmark(master, count);
+            } else if (args.length > 0 && args[0].equals("aggregation-bench")) {
+                int count = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+                runAggregationBenchmark(master, count);
+            } else if (args.length > 0 && args[0].equals("batch-bench")) {
+                int count = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+                int tasks = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+                runBatchBenchmark(master, count, tasks);
+            } else if (args.length > 0 && args[0].equals("merge-bench")) {
+                int arcCount = args.length > 1 ? Integer.parseInt(args[1]) : 7_000;
+                int tasks = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+                runMergeBenchmark(master, arcCount, tasks);
+            } else if (args.length > 0 && args[0].equals("graph-stream")) {
+                int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+                runGraphStream(communicator, mioService, batchSize);
+            } else if (args.length > 0 && args[0].equals("job")) {
+                int count = args.length > 1 ? Integer.parseInt(args[1]) : Integer.MAX_VALUE;
+                long cancelAfterMs = args.length > 2 ? Long.parseLong(args[2]) : 0;
+                runSpeedJob(mioService, progressListener, count, cancelAfterMs);
+            } else if (args.length > 2 && args[0].equals("route")) {
+                runFastestPath(mioService, Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            } else if (args.length > 0 && args[0].equals("route-batch")) {
+                int count = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+                runFastestPathBatch(mioService, count);
+            } else if (args.length > 0 && args[0].equals("transfer-bench")) {
+                int count = args.length > 1 ? Integer.parseInt(args[1]) : 500_000;
+                runTransferBenchmark(master, count);
             } else {
                 runDemoWithRealData(mioService);
             }
 
+            if (progressListener != null) {
+                mioService.removeProgressListener(progressListener);
+            }
+
             System.out.println("\n" + "=".repeat(80));
             System.out.println("Todas las operaciones completadas exitosamente");
             System.out.println("=".repeat(80));
@@ -90,6 +134,24 @@ public class Client {
         }
     }
 
+    // Callback para ver el avance de los calculos largos; sin el, el cliente solo ve el resultado final.
+    // Sin allJobs queda sin suscribir, para suscribirlo luego a un solo trabajo
+    private static ProgressListenerPrx subscribeProgress(Communicator communicator, MIOServicePrx mioService,
+            boolean allJobs) {
+        try {
+            ObjectAdapter adapter = communicator.createObjectAdapterWithEndpoints("ProgressAdapter", "tcp");
+            ProgressListenerPrx listener = ProgressListenerPrx.uncheckedCast(adapter.addWithUUID(new ProgressListenerI()));
+            adapter.activate();
+            if (allJobs) {
+                mioService.addProgressListener(listener);
+            }
+            return listener;
+        } catch (LocalException e) {
+            System.err.println("Advertencia: no se pudo suscribir al avance (" + e + ")");
+            return null;
+        }
+    }
+
     private static void runBenchmarkWithRealData(MIOServicePrx mioService) {
         System.out.println("\n" + "=".repeat(80));
         System.out.println("EJECUTANDO BENCHMARK CON DATOS REALES (datagrams4history.csv)");
@@ -108,6 +170,133 @@ public class Client {
         System.out.println("\n[5] Tiempo total desde el cliente: " + totalTime + " ms");
     }
 
+    // Descarga los arcos por páginas en lugar de un solo mensaje con todo el grafo
+    private static ArcInfo[] fetchArcs(MIOServicePrx mioService) {
+        List<ArcInfo> arcs = new ArrayList<>();
+        int cursor = 0;
+        long version = 0;
+        while (cursor >= 0) {
+            ArcPage page = mioService.getArcsPage(cursor, 0);
+            if (cursor > 0 && page.graphVersion != version) {
+                throw new IllegalStateException("El grafo cambio durante la descarga de arcos");
+            }
+            version = page.graphVersion;
+            arcs.addAll(Arrays.asList(page.arcs));
+            cursor = page.nextCursor;
+        }
+        return arcs.toArray(new ArcInfo[0]);
+    }
+
+    private static void runGraphStream(Communicator communicator, MIOServicePrx mioService, int batchSize) {
+        System.out.println("\n" + "=".repeat(80));
+        System.out.println("CONSULTA DEL GRAFO EN STREAMING (lotes de " + batchSize + ")");
+        System.out.println("=".repeat(80));
+
+        ObjectAdapter adapter = communicator.createObjectAdapterWithEndpoints("GraphStreamAdapter", "tcp");
+        GraphStreamListenerI receiver = new GraphStreamListenerI();
+        GraphStreamListenerPrx listener = GraphStreamListenerPrx.uncheckedCast(adapter.addWithUUID(receiver));
+        adapter.activate();
+        try {
+            long start = System.currentTimeMillis();
+            mioService.streamStops(listener, batchSize);
+            mioService.streamArcs(listener, batchSize);
+            System.out.println("Paradas recibidas: " + receiver.getStops());
+            System.out.println("Arcos recibidos: " + receiver.getArcs());
+            System.out.println("Lotes: " + receiver.getBatches() + " en " + (System.currentTimeMillis() - start) + " ms");
+        } finally {
+            adapter.destroy();
+        }
+    }
+
+    // Cálculo como trabajo asíncrono: se consulta el estado cada segundo y, con cancelAfterMs > 0,
+    // se cancela pasado ese tiempo
+    private static void runSpeedJob(MIOServicePrx mioService, ProgressListenerPrx progressListener, int count,
+            long cancelAfterMs) throws InterruptedException {
+        System.out.println("\n" + "=".repeat(80));
+        System.out.println("CALCULO COMO TRABAJO ASINCRONO");
+        System.out.println("=".repeat(80));
+
+        long start = System.currentTimeMillis();
+        long jobId = mioService.submitSpeedJob(DATAGRAMS_CSV, count);
+        System.out.println("Trabajo enviado: " + jobId);
+        if (progressListener != null) {
+            mioService.addJobProgressListener(jobId, progressListener);
+        }
+        boolean cancelRequested = false;
+        JobStatus status = mioService.getJobStatus(jobId);
+        while (status.state == JobState.Queued || status.state == JobState.Running) {
+            System.out.println(String.format("  [%s] %d/%d tareas, %.2f km/h parcial, %d ms", status.state,
+                    status.progress.completedTasks, status.progress.totalTasks,
+                    status.progress.runningAvgSpeed, status.runningMs));
+            if (cancelAfterMs > 0 && !cancelRequested && System.currentTimeMillis() - start >= cancelAfterMs) {
+                cancelRequested = true;
+                System.out.println("  Cancelando: " + mioService.cancelJob(jobId));
+            }
+            Thread.sleep(1000);
+            status = mioService.getJobStatus(jobId);
+        }
+
+        System.out.println("Estado final: " + status.state + " (en cola " + status.queuedMs + " ms, ejecucion "
+                + status.runningMs + " ms)");
+        if (status.state == JobState.Completed) {
+            printResults(mioService.getJobResult(jobId));
+        } else {
+            System.out.println("Motivo: " + status.error);
+        }
+    }
+
+    private static void runFastestPath(MIOServicePrx mioService, int fromStopId, int toStopId) {
+        System.out.println("\n" + "=".repeat(80));
+        System.out.println("CAMINO MAS RAPIDO " + fromStopId + " -> " + toStopId);
+        System.out.println("=".repeat(80));
+
+        long start = System.nanoTime();
+        TravelRoute route = mioService.findFastestPath(fromStopId, toStopId);
+        long elapsedUs = (System.nanoTime() - start) / 1000;
+        if (!route.found) {
+            System.out.println("No hay camino entre las paradas (" + elapsedUs + " us)");
+            return;
+        }
+        System.out.println(String.format("  - Tiempo de viaje: %.1f min", route.travelTimeSec / 60));
+        System.out.println(String.format("  - Distancia: %.2f km", route.distanceKm));
+        System.out.println("  - Paradas: " + route.stopIds.length + " (" + route.measuredArcs + " de "
+                + (route.stopIds.length - 1) + " arcos con velocidad medida)");
+        System.out.println("  - Recorrido: " + Arrays.toString(route.stopIds));
+        System.out.println("  - Consulta: " + elapsedUs + " us (incluye la llamada ICE)");
+    }
+
+    // Pares de paradas al azar resueltos en una sola invocación
+    private static void runFastestPathBatch(MIOServicePrx mioService, int count) {
+        System.out.println("\n" + "=".repeat(80));
+        System.out.println("CAMINOS MAS RAPIDOS EN LOTE (" + count + " pares)");
+        System.out.println("=".repeat(80));
+
+        StopInfo[] stops = mioService.getAllStops();
+        Random random = new Random(42);
+        StopPair[] pairs = new StopPair[count];
+        for (int i = 0; i < count; i++) {
+            pairs[i] = new StopPair(stops[random.nextInt(stops.length)].stopId,
+                    stops[random.nextInt(stops.length)].stopId);
+        }
+        long start = System.currentTimeMillis();
+        TravelRoute[] routes = mioService.findFastestPaths(pairs);
+        long elapsed = System.currentTimeMillis() - start;
+
+        int found = 0;
+        double totalMinutes = 0;
+        for (TravelRoute route : routes) {
+            if (route.found) {
+                found++;
+                totalMinutes += route.travelTimeSec / 60;
+            }
+        }
+        System.out.println("  - Con camino: " + found + " de " + routes.length);
+        if (found > 0) {
+            System.out.println(String.format("  - Tiempo de viaje promedio: %.1f min", totalMinutes / found));
+        }
+        System.out.println(String.format("  - Lote: %d ms (%.1f us por par)", elapsed, elapsed * 1000.0 / Math.max(1, count)));
+    }
+
     private static void runBenchmark(MasterPrx master, ArcInfo[] arcs) {
         System.out.println("\n" + "=".repeat(80));
         System.out.println("EJECUTANDO BENCHMARK CON DATOS GENERADOS");
@@ -117,6 +306,53 @@ public class Client {
         System.out.println(report);
     }
 
+    private static void runTransferBenchmark(MasterPrx master, int count) {
+        System.out.println("\n" + "=".repeat(80));
+        System.out.println("BENCHMARK DE TRANSFERENCIA DE TAREAS (" + formatNumber(count) + " datagramas)");
+        System.out.println("=".repeat(80));
+
+        String report = master.runTransferBenchmark(count);
+        System.out.println(report);
+    }
+
+    private static void runWireFormatBenchmark(MasterPrx master, int count) {
+        System.out.println("\n" + "=".repeat(80));
+        System.out.println("BENCHMARK DE FORMATO DE DATAGRAMAS (" + formatNumber(count) + " datagramas)");
+        System.out.println("=".repeat(80));
+
+        String report = master.runWireFormatBenchmark(count);
+        System.out.println(report);
+    }
+
+    private static void runBatchBenchmark(MasterPrx master, int count, int tasks) {
+        System.out.println("\n" + "=".repeat(80));
+        System.out.println("BENCHMARK DE LOTES DE TAREAS (" + formatNumber(count) + " datagramas, " + tasks
+                + " tareas)");
+        System.out.println("=".repeat(80));
+
+        String report = master.runBatchBenchmark(count, tasks);
+        System.out.println(report);
+    }
+
+    private static void runMergeBenchmark(MasterPrx master, int arcs, int tasks) {
+        System.out.println("\n" + "=".repeat(80));
+        System.out.println("BENCHMARK DE CONSOLIDACION POR ARCO (" + formatNumber(arcs) + " arcos, " + tasks
+                + " tareas)");
+        System.out.println("=".repeat(80));
+
+        String report = master.runMergeBenchmark(arcs, tasks);
+        System.out.println(report);
+    }
+
+    private static void runAggregationBenchmark(MasterPrx master, int count) {
+        System.out.println("\n" + "=".repeat(80));
+        System.out.println("BENCHMARK DE AGREGACION EN ARBOL (" + formatNumber(count) + " datagramas)");
+        System.out.println("=".repeat(80));
+
+        String report = master.runAggregationBenchmark(count);
+        System.out.println(report);
+    }
+
     private static void runSingleTestWithRealData(MIOServicePrx mioService, int count) {
         System.out.println("\n" + "=".repeat(80));
         System.out.println("EJECUTANDO PRUEBA CON " + formatNumber(count) + " DATAGRAMAS REALES");
@@ -199,15 +435,38 @@ public class Client {
         System.out.println("  java -jar client.jar benchmark-gen   -> Benchmark con datos generados");
         System.out.println("  java -jar client.jar test <cantidad> -> Prueba con N datagramas reales");
         System.out.println("  java -jar client.jar experiment      -> Ejecutar experimentos (1M, 10M, 100M)");
+        System.out.println("  java -jar client.jar workers         -> Listar workers registrados y sus capacidades");
+        System.out.println("  java -jar client.jar route <A> <B>   -> Camino mas rapido entre dos paradas");
+        System.out.println("  java -jar client.jar route-batch [n] -> N caminos entre paradas al azar en un lote");
 
         runSingleTestWithRealData(mioService, 100_000_000);
     }
 
+    private static void printWorkers(MasterPrx master) {
+        System.out.println("\n" + "=".repeat(80));
+        System.out.println("WORKERS REGISTRADOS EN EL MASTER");
+        System.out.println("=".repeat(80));
+
+        WorkerStatus[] workers = master.getWorkers();
+        if (workers.length == 0) {
+            System.out.println("  (ninguno - el Master procesa con su ThreadPool local)");
+        }
+        long now = System.currentTimeMillis();
+        for (WorkerStatus status : workers) {
+            System.out.println(String.format("  Worker %d @ %s: %d cores, heap %d MB, kernel %.1f dg/ms, peso %.2f, "
+                    + "en vuelo %d, visto hace %d ms",
+                    status.workerId, status.capabilities.hostname, status.capabilities.cores,
+                    status.capabilities.maxHeapBytes / (1024 * 1024), status.capabilities.kernelSpeed,
+                    status.weight, status.inFlight, now - status.lastSeenMs));
+        }
+        System.out.println("=".repeat(80));
+    }
+
     private static void printResults(GlobalResult result) {
         System.out.println("\n" + "=".repeat(80));
         System.out.println("RESULTADOS:");
         System.out.println("  - Datagramas procesados: " + formatNumber(result.totalDatagrams));
-        System.out.println("  - Arcos únicos: " + result.totalArcs);
+        System.out.println("  - Arcos únicos: " + result.totalArcs + (result.totalArcsApproximate ? " (aprox., HyperLogLog)" : ""));
         System.out.println("  - Velocidad promedio: " + String.format("%.2f", result.globalAvgSpeed) + " km/h");
         System.out.println("  - Tiempo total: " + result.totalProcessingTimeMs + " ms");
         System.out.println("  - Workers utilizados: " + result.workerCount);
@@ -1,6 +1,10 @@
 import com.zeroc.Ice.*;
 import MIO.*;
+import client.TaskPuller;
+import client.WorkerBenchmark;
 import client.WorkerI;
+import com.mio.log.Level;
+import com.mio.log.Log;
 
 public class WorkerClient {
 
@@ -24,7 +28,21 @@ public class WorkerClient {
             initData.properties.setProperty("Ice.MessageSizeMax", "500000");
         }
 
+        // Hilos de despacho del adaptador del worker: sin esto Ice atiende una llamada a la vez y las
+        // tareas en vuelo del Master, los frames y los pings de heartbeat esperan en fila
+        int cores = Runtime.getRuntime().availableProcessors();
+        int dispatchThreads = initData.properties.getPropertyAsIntWithDefault("Worker.DispatchThreads",
+                Math.max(4, cores));
+        if (initData.properties.getProperty("Ice.ThreadPool.Server.Size").isEmpty()) {
+            initData.properties.setProperty("Ice.ThreadPool.Server.Size", Integer.toString(dispatchThreads));
+        }
+        if (initData.properties.getProperty("Ice.ThreadPool.Server.SizeMax").isEmpty()) {
+            initData.properties.setProperty("Ice.ThreadPool.Server.SizeMax", Integer.toString(dispatchThreads * 2));
+        }
+
         try (Communicator communicator = Util.initialize(args, initData)) {
+            Log.configure(Level.parse(communicator.getProperties().getProperty("Log.Level"), Level.INFO),
+                    communicator.getProperties().getPropertyAsIntWithDefault("Log.MaxLinesPerSecond", 2000));
 
             System.out.println("=".repeat(80));
             System.out.println("Worker Client - Sistema MIO");
@@ -51,16 +69,56 @@ public class WorkerClient {
                     "tcp"
             );
 
-            WorkerI workerServant = new WorkerI(0);
+            int parallelism = communicator.getProperties().getPropertyAsIntWithDefault("Worker.Parallelism",
+                    Runtime.getRuntime().availableProcessors());
+            WorkerI workerServant = new WorkerI(0, parallelism);
+            workerServant.setAggregationTimeoutMs(communicator.getProperties()
+                    .getPropertyAsIntWithDefault("Worker.AggregationTimeoutMs", 120000));
+            workerServant.setApproximateArcs("approx".equalsIgnoreCase(
+                    communicator.getProperties().getPropertyWithDefault("Worker.ArcCounting", "exact")));
+            String historyFile = communicator.getProperties().getProperty("Worker.HistoryFile");
+            if (!historyFile.isEmpty()) {
+                workerServant.setLocalHistoryFile(historyFile);
+                System.out.println("Copia local del historico: " + historyFile);
+            }
             ObjectPrx workerObj = adapter.addWithUUID(workerServant);
 
             adapter.activate();
 
+            System.out.println("Midiendo capacidades del worker (auto-benchmark)...");
+            WorkerCapabilities capabilities = WorkerBenchmark.measure(workerServant);
+            System.out.println("  - Hilos de calculo: " + capabilities.cores);
+            System.out.println("  - Hilos de despacho: "
+                    + communicator.getProperties().getProperty("Ice.ThreadPool.Server.Size") + " (max "
+                    + communicator.getProperties().getProperty("Ice.ThreadPool.Server.SizeMax") + ")");
+            System.out.println("  - Heap maximo: " + (capabilities.maxHeapBytes / (1024 * 1024)) + " MB");
+            System.out.println("  - Kernel: " + String.format("%.1f", capabilities.kernelSpeed) + " datagramas/ms");
+
+            // Datos de referencia antes de registrarse, fuera de cualquier despacho; si el grafo aún no
+            // existe, el Master los envía cuando lo construya
+            try {
+                MIOServicePrx mioService = MIOServicePrx.uncheckedCast(
+                        communicator.stringToProxy("MIOService:" + connectionString));
+                workerServant.setReference(mioService.getReferenceTables());
+            } catch (RuntimeException e) {
+                System.out.println("  - Datos de referencia pendientes: el Master los enviara (" + e.getMessage() + ")");
+            }
+
             WorkerPrx workerProxy = WorkerPrx.uncheckedCast(workerObj);
-            master.registerWorker(workerProxy);
+            int workerId = master.registerWorker(workerProxy, capabilities);
+            workerServant.setWorkerId(workerId);
 
-            System.out.println("✅ Worker registrado con el Master");
+            System.out.println("✅ Worker registrado con el Master (ID " + workerId + ")");
             System.out.println("Endpoint del Worker: " + workerObj.toString());
+
+            String mode = communicator.getProperties().getPropertyWithDefault("Worker.Mode", "push");
+            if ("pull".equalsIgnoreCase(mode)) {
+                int pollIntervalMs = communicator.getProperties().getPropertyAsIntWithDefault("Worker.PollIntervalMs", 100);
+                Thread puller = new Thread(new TaskPuller(master, workerServant, workerId, pollIntervalMs), "task-puller");
+                puller.setDaemon(true);
+                puller.start();
+                System.out.println("Modo PULL: solicitando tareas al Master cada " + pollIntervalMs + " ms cuando esta ocioso");
+            }
             System.out.println("\n" + "=".repeat(80));
             System.out.println("Worker listo. Esperando tareas...");
             System.out.println("Presiona Ctrl+C para detener");
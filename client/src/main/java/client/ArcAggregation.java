@@ -0,0 +1,93 @@
+package client;
+
+import MIO.*;
+import com.mio.compute.ArcColumns;
+import com.mio.compute.ArcCounter;
+import com.mio.compute.ArcTable;
+import com.mio.compute.ArcTraversals;
+import com.mio.dist.PartialCombiner;
+import java.util.List;
+
+// Conversión entre las columnas de com.mio.compute y los agregados por arco que viajan en PartialResult
+public final class ArcAggregation {
+
+    private ArcAggregation() {
+    }
+
+    public static ArcAggregates toWire(ArcTable table) {
+        ArcColumns columns = ArcColumns.of(table);
+        return new ArcAggregates(columns.arcs, columns.counts, columns.minTimestamps, columns.maxTimestamps);
+    }
+
+    // Arcos presentes de la tabla (graphArcs: G del grafo local, 0 si no hay)
+    public static ArcPresence presenceOf(ArcTable table, int graphArcs, boolean approximate) {
+        return toWire(ArcCounter.of(table, graphArcs, approximate));
+    }
+
+    public static ArcPresence toWire(ArcCounter counter) {
+        return new ArcPresence(counter.graphBits(), counter.otherArcs(), counter.sketch());
+    }
+
+    public static void mergeInto(ArcCounter counter, ArcPresence presence) {
+        if (presence != null) {
+            counter.addPresence(presence.graphArcs, presence.otherArcs, presence.sketch);
+        }
+    }
+
+    // false si el resultado no trae agregados (p. ej. de un worker anterior a este formato)
+    public static boolean hasStats(PartialResult result) {
+        return result.arcStats != null && ArcColumns.isComplete(result.arcStats.arcs, result.datagramCount);
+    }
+
+    public static void mergeInto(ArcTable table, ArcAggregates stats) {
+        if (stats != null) {
+            ArcColumns.mergeInto(table, stats.arcs, stats.counts, stats.minTimestamps, stats.maxTimestamps);
+        }
+    }
+
+    public static ArcTraversalStats toWire(ArcTraversals traversals) {
+        int[][] columns = traversals.toColumns();
+        return new ArcTraversalStats(columns[0], columns[1], columns[2]);
+    }
+
+    public static void mergeInto(ArcTraversals traversals, ArcTraversalStats stats) {
+        if (stats != null) {
+            traversals.addColumns(stats.arcs, stats.buckets, stats.counts);
+        }
+    }
+
+    // Un resultado con los totales y arcos de todas las partes (el taskId es el de la primera)
+    public static PartialResult combine(List<PartialResult> parts) {
+        PartialCombiner combiner = new PartialCombiner();
+        for (PartialResult p : parts) {
+            combiner.addTotals(p.arcCount, p.datagramCount, p.sumSpeed, p.totalDistance, p.totalTime,
+                    p.processingTimeMs, p.filteredSpeedSum, p.filteredCount);
+            if (hasStats(p)) {
+                combiner.addStats(p.arcStats.arcs, p.arcStats.counts, p.arcStats.minTimestamps,
+                        p.arcStats.maxTimestamps);
+            } else {
+                combiner.missingStats();
+            }
+            if (p.arcPresence != null) {
+                combiner.addPresence(p.arcPresence.graphArcs, p.arcPresence.otherArcs, p.arcPresence.sketch);
+            }
+        }
+        PartialResult combined = new PartialResult();
+        combined.taskId = parts.get(0).taskId;
+        combined.arcCount = combiner.arcCount;
+        combined.datagramCount = combiner.datagramCount;
+        combined.sumSpeed = combiner.sumSpeed;
+        combined.totalDistance = combiner.totalDistance;
+        combined.totalTime = combiner.totalTime;
+        combined.avgSpeed = combiner.avgSpeed();
+        combined.processingTimeMs = combiner.processingTimeMs;
+        combined.filteredSpeedSum = combiner.filteredSpeedSum;
+        combined.filteredCount = combiner.filteredCount;
+        ArcColumns stats = combiner.stats();
+        if (stats != null) {
+            combined.arcStats = new ArcAggregates(stats.arcs, stats.counts, stats.minTimestamps, stats.maxTimestamps);
+        }
+        combined.arcPresence = toWire(combiner.presence());
+        return combined;
+    }
+}
@@ -0,0 +1,37 @@
+package client;
+
+import MIO.*;
+import com.zeroc.Ice.Current;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Recibe los lotes de streamArcs / streamStops; solo cuenta lo recibido, sin retener los lotes
+public class GraphStreamListenerI implements GraphStreamListener {
+
+    private final AtomicInteger arcs = new AtomicInteger();
+    private final AtomicInteger stops = new AtomicInteger();
+    private final AtomicInteger batches = new AtomicInteger();
+
+    @Override
+    public void arcBatch(ArcInfo[] batch, int offset, int total, Current current) {
+        arcs.addAndGet(batch.length);
+        batches.incrementAndGet();
+    }
+
+    @Override
+    public void stopBatch(StopInfo[] batch, int offset, int total, Current current) {
+        stops.addAndGet(batch.length);
+        batches.incrementAndGet();
+    }
+
+    public int getArcs() {
+        return arcs.get();
+    }
+
+    public int getStops() {
+        return stops.get();
+    }
+
+    public int getBatches() {
+        return batches.get();
+    }
+}
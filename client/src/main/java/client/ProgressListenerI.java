@@ -0,0 +1,15 @@
+package client;
+
+import MIO.*;
+import com.zeroc.Ice.Current;
+
+// Muestra en consola el avance que publica el Master durante un cálculo
+public class ProgressListenerI implements ProgressListener {
+
+    @Override
+    public void progress(JobProgress progress, Current current) {
+        System.out.println(String.format("    [avance %d] %5.1f%% (%d/%d tareas) %,d datagramas, %.2f km/h parcial, %d ms",
+                progress.jobId, progress.percentComplete, progress.completedTasks, progress.totalTasks, progress.datagramCount,
+                progress.runningAvgSpeed, progress.elapsedMs));
+    }
+}
@@ -0,0 +1,157 @@
+package client;
+
+import MIO.*;
+import com.mio.compute.ArcTable;
+import com.mio.compute.RadixArcKernel;
+import com.mio.compute.SpeedKernel;
+import com.mio.compute.SpeedTotals;
+import com.mio.ingest.ReferenceData;
+import com.mio.log.Log;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Estado incremental de una tarea: cada frame se reduce por arco al llegar, sin esperar la tarea completa
+public class TaskAssembly {
+
+    private static final Log LOG = Log.get("Worker");
+
+    private final int taskId;
+    private final int frameCount;
+    private final ReferenceData reference;
+    private final ForkJoinPool pool;
+    private final BitSet received = new BitSet();
+    private final ArcTable arcs = new ArcTable(256);
+    private final long startTime = System.currentTimeMillis();
+    private long datagramCount;
+
+    // Con reference != null los arcId son índices densos y la distancia sale de la caché del grafo;
+    // con pool != null los frames grandes se reducen en paralelo
+    public TaskAssembly(int taskId, int frameCount, ReferenceData reference, ForkJoinPool pool) {
+        this.taskId = taskId;
+        this.frameCount = frameCount;
+        this.reference = reference;
+        this.pool = pool;
+    }
+
+    public int getTaskId() {
+        return taskId;
+    }
+
+    // Reduce el frame fuera del lock y lo mezcla; retorna false si el frame ya se habia recibido
+    public boolean addFrame(int frameIndex, SpeedDatagram[] datagrams) {
+        if (reference != null) {
+            // Con índices densos no hacen falta coordenadas: basta ordenar (arco, timestamp)
+            ArcTable local = SpeedKernel.reduce(pool, datagrams.length, (from, to) -> RadixArcKernel.reduce(from,
+                    to, i -> datagrams[i].arcId, i -> datagrams[i].timestamp));
+            return merge(frameIndex, datagrams.length, local);
+        }
+        long base = (long) frameIndex << 32;
+        ArcTable local = SpeedKernel.reduce(pool, datagrams.length, (from, to) -> {
+            ArcTable chunk = new ArcTable(64);
+            for (int i = from; i < to; i++) {
+                SpeedDatagram dg = datagrams[i];
+                int slot = chunk.add(dg.arcId, dg.timestamp);
+                chunk.offerCoords(slot, base | i, dg.fromLat, dg.fromLon, dg.toLat, dg.toLon);
+            }
+            return chunk;
+        });
+        return merge(frameIndex, datagrams.length, local);
+    }
+
+    private synchronized boolean merge(int frameIndex, int datagrams, ArcTable local) {
+        if (received.get(frameIndex)) {
+            return false;
+        }
+        received.set(frameIndex);
+        datagramCount += datagrams;
+        arcs.merge(local);
+        return true;
+    }
+
+    private static long[] timestampsOf(DatagramBatch batch) {
+        if (!batch.deltaEncoded) {
+            return batch.timestamps;
+        }
+        long[] timestamps = new long[batch.arcIdx.length];
+        long timestamp = batch.baseTimestamp;
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamp += batch.timestampDeltas[i];
+            timestamps[i] = timestamp;
+        }
+        return timestamps;
+    }
+
+    // Variante columnar: acumula directamente desde las secuencias sin materializar SpeedDatagram
+    public boolean addBatch(int frameIndex, DatagramBatch batch) {
+        if (batch.arcIds.length == 0) {
+            return addIndexedBatch(frameIndex, batch);
+        }
+        long base = (long) frameIndex << 32;
+        long[] timestamps = timestampsOf(batch);
+        // Se ordena por posición en el diccionario del lote; las coordenadas son las de esa entrada
+        ArcTable local = SpeedKernel.reduce(pool, batch.arcIdx.length, (from, to) -> {
+            ArcTable chunk = new ArcTable(batch.arcIds.length);
+            RadixArcKernel.scan(from, to, i -> batch.arcIdx[i], i -> timestamps[i], (arc, count, first, last) -> {
+                chunk.addAggregate(batch.arcIds[arc], count, first, last);
+                chunk.offerCoords(chunk.find(batch.arcIds[arc]), base | arc, batch.arcCoords[arc * 4],
+                        batch.arcCoords[arc * 4 + 1], batch.arcCoords[arc * 4 + 2], batch.arcCoords[arc * 4 + 3]);
+            });
+            return chunk;
+        });
+        return merge(frameIndex, batch.arcIdx.length, local);
+    }
+
+    private boolean addIndexedBatch(int frameIndex, DatagramBatch batch) {
+        if (reference == null && batch.arcIdx.length > 0) {
+            throw new IllegalStateException("Lote con indices globales sin datos de referencia (Task " + taskId + ")");
+        }
+        long[] timestamps = timestampsOf(batch);
+        ArcTable local = SpeedKernel.reduce(pool, batch.arcIdx.length,
+                (from, to) -> RadixArcKernel.reduce(batch.arcIdx, timestamps, from, to));
+        return merge(frameIndex, batch.arcIdx.length, local);
+    }
+
+    public synchronized int missingFrames() {
+        return frameCount - received.cardinality();
+    }
+
+    // verbose: detalle por arco en nivel DEBUG; approximateArcs: los arcos presentes viajan como
+    // sketch HyperLogLog en lugar de bitset
+    public synchronized PartialResult toResult(int workerId, boolean verbose, boolean approximateArcs) {
+        SpeedKernel.ArcDistance distance = reference != null ? SpeedKernel.graphDistance(reference)
+                : SpeedKernel.HAVERSINE;
+        SpeedTotals totals;
+        if (verbose && LOG.isDebugEnabled()) {
+            LOG.debug("[Worker %d] ---- Detalle de cálculo por arco ----", workerId);
+            totals = SpeedKernel.totals(arcs, 0, arcs.size(), distance, (arcId, distanceKm, timeHours, speed, count) -> {
+                if (distanceKm < SpeedKernel.MIN_DISTANCE_KM) {
+                    LOG.debug("[Worker %d] ArcId=%d descartado por distancia < 1m", workerId, arcId);
+                } else if (timeHours > SpeedKernel.MIN_TIME_HOURS) {
+                    double limited = Math.min(Math.max(speed, 0), SpeedKernel.MAX_SPEED_KMH);
+                    LOG.debug("[Worker %d] ArcId=%d Dist=%.3fkm Time=%.3fh Speed=%.2fkm/h (limitado=%.2fkm/h) Datagramas=%d", workerId, arcId, distanceKm, timeHours, speed, limited, count);
+                } else {
+                    LOG.debug("[Worker %d] ArcId=%d descartado por tiempo insuficiente (%.6fh)", workerId, arcId, timeHours);
+                }
+            });
+            LOG.debug("[Worker %d] ---- Fin detalle por arco ----", workerId);
+        } else {
+            totals = SpeedKernel.totals(pool, arcs, distance);
+        }
+
+        PartialResult result = new PartialResult();
+        result.taskId = taskId;
+        result.arcCount = totals.arcCount;
+        result.datagramCount = datagramCount;
+        result.sumSpeed = totals.weightedSpeed;
+        result.totalDistance = totals.distance;
+        result.totalTime = totals.time;
+        result.avgSpeed = datagramCount > 0 ? totals.weightedSpeed / datagramCount : 0;
+        result.processingTimeMs = System.currentTimeMillis() - startTime;
+        result.filteredSpeedSum = totals.filteredSpeedSum;
+        result.filteredCount = totals.filteredCount;
+        result.arcStats = ArcAggregation.toWire(arcs);
+        result.arcPresence = ArcAggregation.presenceOf(arcs,
+                reference != null ? reference.getArcs().graphArcCount() : 0, approximateArcs);
+        return result;
+    }
+}
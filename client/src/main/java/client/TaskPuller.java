@@ -0,0 +1,57 @@
+package client;
+
+import MIO.*;
+
+public class TaskPuller implements Runnable {
+
+    private final MasterPrx master;
+    private final MasterPrx masterOneway;
+    private final WorkerI worker;
+    private final int workerId;
+    private final long pollIntervalMs;
+    private volatile boolean running = true;
+
+    public TaskPuller(MasterPrx master, WorkerI worker, int workerId, long pollIntervalMs) {
+        this.master = master;
+        this.masterOneway = master.ice_oneway();
+        this.worker = worker;
+        this.workerId = workerId;
+        this.pollIntervalMs = pollIntervalMs;
+    }
+
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public void run() {
+        long idleSleep = pollIntervalMs;
+        while (running) {
+            try {
+                Task task = master.requestTask(workerId);
+                if (task.taskId < 0) {
+                    Thread.sleep(idleSleep);
+                    idleSleep = Math.min(idleSleep * 2, pollIntervalMs * 10);
+                    continue;
+                }
+                idleSleep = pollIntervalMs;
+
+                PartialResult result = worker.processTask(task, null);
+                masterOneway.submitResult(workerId, result);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (com.zeroc.Ice.CommunicatorDestroyedException e) {
+                return;
+            } catch (java.lang.Exception e) {
+                System.err.println("[Worker " + workerId + "] Error en modo pull: " + e.getMessage());
+                try {
+                    Thread.sleep(pollIntervalMs * 10);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+}
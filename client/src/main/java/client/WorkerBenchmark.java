@@ -0,0 +1,67 @@
+package client;
+
+import MIO.*;
+import java.util.Random;
+
+public class WorkerBenchmark {
+
+    private static final int BENCHMARK_DATAGRAMS = 200_000;
+    private static final int BENCHMARK_ARCS = 2_000;
+    private static final int WARMUP_ROUNDS = 2;
+    private static final int MEASURED_ROUNDS = 3;
+
+    public static WorkerCapabilities measure(WorkerI worker) {
+        WorkerCapabilities capabilities = new WorkerCapabilities();
+        capabilities.cores = worker.getParallelism();
+        capabilities.maxHeapBytes = Runtime.getRuntime().maxMemory();
+        capabilities.hostname = hostname();
+
+        Task task = syntheticTask();
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            worker.processTask(task, false);
+        }
+
+        long bestNanos = Long.MAX_VALUE;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            worker.processTask(task, false);
+            bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+        }
+        // Throughput del kernel paralelo expresado por nucleo, asi cores * kernelSpeed refleja la eficiencia real
+        capabilities.kernelSpeed = BENCHMARK_DATAGRAMS / Math.max(bestNanos / 1_000_000.0, 0.001)
+                / capabilities.cores;
+        return capabilities;
+    }
+
+    // Datagramas sinteticos con coordenadas dentro de Cali, repartidos en BENCHMARK_ARCS arcos
+    private static Task syntheticTask() {
+        Random random = new Random(42);
+        SpeedDatagram[] datagrams = new SpeedDatagram[BENCHMARK_DATAGRAMS];
+        long baseTime = 1527724800000L;
+        for (int i = 0; i < datagrams.length; i++) {
+            int arc = random.nextInt(BENCHMARK_ARCS);
+            SpeedDatagram dg = new SpeedDatagram();
+            dg.fromStopId = 500000 + arc;
+            dg.toStopId = 500001 + arc;
+            dg.arcId = arc;
+            dg.timestamp = baseTime + random.nextInt(86_400) * 1000L;
+            dg.fromLat = 3.35 + arc * 1e-4;
+            dg.fromLon = -76.52 + arc * 1e-4;
+            dg.toLat = dg.fromLat + 0.003;
+            dg.toLon = dg.fromLon + 0.002;
+            datagrams[i] = dg;
+        }
+        Task task = new Task();
+        task.taskId = -1;
+        task.datagrams = datagrams;
+        return task;
+    }
+
+    private static String hostname() {
+        try {
+            return java.net.InetAddress.getLocalHost().getHostName();
+        } catch (java.io.IOException e) {
+            return "desconocido";
+        }
+    }
+}
@@ -1,110 +1,389 @@
 package client;
 
 import MIO.*;
+import com.mio.compute.ArcTraversals;
+import com.mio.dist.AggregationTree;
+import com.mio.ingest.BusHistory;
+import com.mio.ingest.BusTracker;
+import com.mio.ingest.ReferenceData;
+import com.mio.ingest.SliceScanner;
+import com.mio.log.Log;
 import com.zeroc.Ice.Current;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class WorkerI implements Worker {
+    private static final Log LOG = Log.get("Worker");
+    // Espera máxima de los datos de referencia de una versión que el Master aún está enviando
+    private static final long REFERENCE_WAIT_MS = 30_000;
+
     public static class PartialResultWithDatagrams extends MIO.PartialResult {
         public SpeedDatagram[] datagrams;
     }
 
-    private final int workerId;
-    private boolean available = true;
+    private volatile int workerId;
+    private final AtomicInteger activeTasks = new AtomicInteger();
+    private final int parallelism;
+    private final ForkJoinPool pool;
+
+    private volatile String localHistoryFile;
+    private volatile ReferenceData reference;
+    private final Map<Integer, TaskAssembly> assemblies = new ConcurrentHashMap<>();
+    private final Map<Integer, StagedRound> staged = new ConcurrentHashMap<>();
+    private volatile long aggregationTimeoutMs = 120_000;
+    private volatile boolean approximateArcs;
 
     public WorkerI(int workerId) {
+        this(workerId, Runtime.getRuntime().availableProcessors());
+    }
+
+    // Cada tarea se reparte entre los hilos del pool; varias tareas concurrentes comparten el mismo pool
+    public WorkerI(int workerId, int parallelism) {
+        this.workerId = workerId;
+        this.parallelism = Math.max(1, parallelism);
+        this.pool = this.parallelism > 1 ? new ForkJoinPool(this.parallelism) : null;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    // Espera maxima del resultado propio de una ronda de agregacion (si la tarea nunca llega)
+    public void setAggregationTimeoutMs(long aggregationTimeoutMs) {
+        this.aggregationTimeoutMs = aggregationTimeoutMs;
+    }
+
+    // Modo aproximado: arcos presentes como HyperLogLog (espacios de arcos sin cota)
+    public void setApproximateArcs(boolean approximateArcs) {
+        this.approximateArcs = approximateArcs;
+    }
+
+    public void setWorkerId(int workerId) {
         this.workerId = workerId;
     }
 
-    private static final double EARTH_RADIUS_KM = 6371.0;
-    private double haversineDistance(double lat1, double lon1, double lat2, double lon2) {
-        double dLat = Math.toRadians(lat2 - lat1);
-        double dLon = Math.toRadians(lon2 - lon1);
-        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
-                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
-                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        return EARTH_RADIUS_KM * c;
+    // Copia local del archivo de historia (si es null se usa la ruta enviada por el Master)
+    public void setLocalHistoryFile(String localHistoryFile) {
+        this.localHistoryFile = localHistoryFile;
     }
 
+    // Caché de paradas, arcos y longitudes. El Master la envía con loadReference al registrar el worker
+    // y en cada versión nueva del grafo
     @Override
-    public PartialResult processTask(Task task, Current current) {
-        long startTime = System.currentTimeMillis();
-        available = false;
-
-        SpeedDatagram[] datagrams = task.datagrams;
-        Map<Integer, List<SpeedDatagram>> datagramsByArc = new HashMap<>();
-        for (SpeedDatagram dg : datagrams) {
-            datagramsByArc.computeIfAbsent(dg.arcId, k -> new ArrayList<>()).add(dg);
-        }
-
-        double totalWeightedSpeed = 0;
-        double totalDistance = 0;
-        double totalTime = 0;
-        int arcCount = 0;
-        double filteredSpeedSum = 0;
-        int filteredCount = 0;
-
-        System.out.println("[Worker " + workerId + "] ---- Detalle de cálculo por arco ----");
-        for (Map.Entry<Integer, List<SpeedDatagram>> entry : datagramsByArc.entrySet()) {
-            List<SpeedDatagram> arcDatagrams = entry.getValue();
-            if (arcDatagrams.isEmpty()) continue;
-
-            SpeedDatagram first = arcDatagrams.get(0);
-            double distanceKm = haversineDistance(first.fromLat, first.fromLon, first.toLat, first.toLon);
-            if (distanceKm < 0.001) {
-                System.out.println("[Worker " + workerId + "] ArcId=" + first.arcId + " descartado por distancia < 1m");
-                continue;
+    public void loadReference(ReferenceTables tables, Current current) {
+        setReference(tables);
+    }
+
+    public void setReference(ReferenceTables tables) {
+        synchronized (this) {
+            if (reference != null && reference.getVersion() == tables.version) {
+                return;
+            }
+            reference = new ReferenceData(tables.version, tables.stopIds, tables.latitudes, tables.longitudes,
+                    tables.arcFromStopIds, tables.arcToStopIds, tables.arcLengthsKm);
+            notifyAll();
+        }
+        LOG.info("[Worker %d] Datos de referencia cargados (version %x): %d paradas, %d arcos", workerId,
+                tables.version, tables.stopIds.length, tables.arcFromStopIds.length);
+    }
+
+    // Una tarea nunca llama al Master: si su versión aún no llegó, espera el envío en camino. Pedirla
+    // desde aquí bloquearía el despacho hasta que el Master tenga un hilo libre para responder
+    private ReferenceData reference(long version) {
+        ReferenceData cached = reference;
+        if (cached != null && (version == 0 || cached.getVersion() == version)) {
+            return cached;
+        }
+        long deadline = System.currentTimeMillis() + REFERENCE_WAIT_MS;
+        synchronized (this) {
+            while (true) {
+                cached = reference;
+                if (cached != null && (version == 0 || cached.getVersion() == version)) {
+                    return cached;
+                }
+                long left = deadline - System.currentTimeMillis();
+                if (left <= 0) {
+                    throw new IllegalStateException("Version del grafo " + Long.toHexString(version)
+                            + " no recibida del Master (actual "
+                            + (cached != null ? Long.toHexString(cached.getVersion()) : "ninguna") + ")");
+                }
+                try {
+                    wait(left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Espera de datos de referencia interrumpida", e);
+                }
             }
+        }
+    }
 
-            arcDatagrams.sort(Comparator.comparingLong(dg -> dg.timestamp));
-            SpeedDatagram firstDg = arcDatagrams.get(0);
-            SpeedDatagram lastDg = arcDatagrams.get(arcDatagrams.size() - 1);
-            double timeHours = (lastDg.timestamp - firstDg.timestamp) / (1000.0 * 3600.0);
+    private ReferenceData referenceFor(long graphVersion) {
+        return graphVersion != 0 ? reference(graphVersion) : null;
+    }
 
-            if (timeHours > 0.0001) {
-                double arcSpeed = distanceKm / timeHours;
-                double arcSpeedLimited = Math.min(Math.max(arcSpeed, 0), 120);
+    @Override
+    public PartialResult processTask(Task task, Current current) {
+        return processTask(task, true);
+    }
 
-                totalWeightedSpeed += arcSpeedLimited * arcDatagrams.size();
-                totalDistance += distanceKm * arcDatagrams.size();
-                totalTime += timeHours * arcDatagrams.size();
-                filteredSpeedSum += arcSpeedLimited;
-                filteredCount++;
+    @Override
+    public PartialResult[] processTasks(Task[] tasks, Current current) {
+        long start = System.currentTimeMillis();
+        PartialResult[] results = new PartialResult[tasks.length];
+        long datagrams = 0;
+        for (int i = 0; i < tasks.length; i++) {
+            results[i] = processTask(tasks[i], false);
+            datagrams += results[i].datagramCount;
+        }
+        LOG.info("[Worker %d] Lote de %d tareas (%d datagramas) en %d ms", workerId, tasks.length, datagrams,
+                System.currentTimeMillis() - start);
+        return results;
+    }
 
-                System.out.println(String.format("[Worker %d] ArcId=%d Dist=%.3fkm Time=%.3fh Speed=%.2fkm/h (limitado=%.2fkm/h) Datagramas=%d", workerId, first.arcId, distanceKm, timeHours, arcSpeed, arcSpeedLimited, arcDatagrams.size()));
-            } else {
-                System.out.println(String.format("[Worker %d] ArcId=%d descartado por tiempo insuficiente (%.6fh)", workerId, first.arcId, timeHours));
-            }
-            arcCount++;
+    public PartialResult processTask(Task task, boolean verbose) {
+        activeTasks.incrementAndGet();
+        try {
+            return processTaskInternal(task, verbose);
+        } finally {
+            activeTasks.decrementAndGet();
+        }
+    }
+
+    private PartialResult processTaskInternal(Task task, boolean verbose) {
+        TaskAssembly assembly = new TaskAssembly(task.taskId, 1, referenceFor(task.graphVersion), pool);
+        if (task.batch != null && task.batch.arcIdx != null && task.batch.arcIdx.length > 0) {
+            assembly.addBatch(0, task.batch);
+        } else {
+            assembly.addFrame(0, task.datagrams);
         }
-        System.out.println("[Worker " + workerId + "] ---- Fin detalle por arco ----");
+        PartialResult partial = assembly.toResult(workerId, verbose, approximateArcs);
 
         PartialResultWithDatagrams result = new PartialResultWithDatagrams();
-        result.taskId = task.taskId;
-        result.arcCount = arcCount;
-        result.datagramCount = datagrams.length;
-        result.sumSpeed = totalWeightedSpeed;
-        result.totalDistance = totalDistance;
-        result.totalTime = totalTime;
-        result.avgSpeed = datagrams.length > 0 ? totalWeightedSpeed / datagrams.length : 0;
-        result.processingTimeMs = System.currentTimeMillis() - startTime;
-        result.filteredSpeedSum = filteredSpeedSum;
-        result.filteredCount = filteredCount;
-        result.datagrams = datagrams;
-
-        available = true;
-
-        System.out.println("[Worker " + workerId + "] Task " + task.taskId + " completada. " +
-            "Datagramas: " + datagrams.length + ", Arcos: " + arcCount +
-            ", Velocidad promedio: " + String.format("%.2f", result.avgSpeed) + " km/h");
-        System.out.println(String.format("[Worker %d] Suma ponderada=%.2f, Distancia total=%.2f, Tiempo total=%.2f, Velocidad filtrada=%.2f, Count filtrado=%d", workerId, totalWeightedSpeed, totalDistance, totalTime, filteredSpeedSum, filteredCount));
+        result.taskId = partial.taskId;
+        result.arcCount = partial.arcCount;
+        result.datagramCount = partial.datagramCount;
+        result.sumSpeed = partial.sumSpeed;
+        result.totalDistance = partial.totalDistance;
+        result.totalTime = partial.totalTime;
+        result.avgSpeed = partial.avgSpeed;
+        result.processingTimeMs = partial.processingTimeMs;
+        result.filteredSpeedSum = partial.filteredSpeedSum;
+        result.filteredCount = partial.filteredCount;
+        result.arcStats = partial.arcStats;
+        result.arcPresence = partial.arcPresence;
+        result.datagrams = task.datagrams;
+
+        if (verbose) {
+            printSummary(result);
+        }
+        return result;
+    }
+
+    @Override
+    public void openTask(int taskId, int frameCount, long graphVersion, Current current) {
+        assemblies.put(taskId, new TaskAssembly(taskId, frameCount, referenceFor(graphVersion), pool));
+        LOG.debug("[Worker %d] Task %d abierta (%d frames)", workerId, taskId, frameCount);
+    }
+
+    // Cada frame se procesa en el hilo de despacho que lo recibe, en paralelo con los siguientes frames
+    @Override
+    public void appendFrame(int taskId, int frameIndex, SpeedDatagram[] datagrams, Current current) {
+        TaskAssembly assembly = assemblies.get(taskId);
+        if (assembly == null) {
+            throw new IllegalStateException("Task " + taskId + " no fue abierta");
+        }
+        if (!assembly.addFrame(frameIndex, datagrams)) {
+            LOG.warn("[Worker %d] Frame %d de Task %d duplicado, ignorado", workerId, frameIndex, taskId);
+        }
+    }
+
+    @Override
+    public void appendBatch(int taskId, int frameIndex, DatagramBatch batch, Current current) {
+        TaskAssembly assembly = assemblies.get(taskId);
+        if (assembly == null) {
+            throw new IllegalStateException("Task " + taskId + " no fue abierta");
+        }
+        if (!assembly.addBatch(frameIndex, batch)) {
+            LOG.warn("[Worker %d] Frame %d de Task %d duplicado, ignorado", workerId, frameIndex, taskId);
+        }
+    }
+
+    @Override
+    public PartialResult sealTask(int taskId, Current current) {
+        TaskAssembly assembly = assemblies.get(taskId);
+        if (assembly == null) {
+            throw new IllegalStateException("Task " + taskId + " no fue abierta");
+        }
+        int missing = assembly.missingFrames();
+        if (missing > 0) {
+            throw new IllegalStateException("Task " + taskId + " sellada con " + missing + " frames pendientes");
+        }
+        assemblies.remove(taskId);
+        PartialResult result = assembly.toResult(workerId, false, approximateArcs);
+        printSummary(result);
         return result;
     }
 
+    // Partes de una ronda de agregación: el resultado se completa al llegar la última
+    private static final class StagedRound {
+        final CompletableFuture<PartialResult> result = new CompletableFuture<>();
+        private final List<PartialResult> parts = new ArrayList<>();
+
+        synchronized void add(PartialResult part, int partCount) {
+            parts.add(part);
+            if (parts.size() >= partCount) {
+                // En orden de tarea: la ronda toma el taskId menor sin importar el orden de llegada
+                parts.sort(Comparator.comparingInt(p -> p.taskId));
+                result.complete(ArcAggregation.combine(parts));
+            }
+        }
+    }
+
+    // Una ronda cuyo collectGroup no llega, o un stageTask que llega después de que el collect expiró,
+    // dejaría la entrada para siempre: se descarta pasado el doble del plazo de agregación
+    private StagedRound stagedRound(int roundId) {
+        return staged.computeIfAbsent(roundId, k -> {
+            StagedRound round = new StagedRound();
+            CompletableFuture.delayedExecutor(aggregationTimeoutMs * 2, TimeUnit.MILLISECONDS).execute(() -> {
+                if (staged.remove(roundId, round)) {
+                    round.result.cancel(false);
+                    LOG.warn("[Worker %d] Ronda %d descartada: sin recoleccion en %d ms", workerId, roundId,
+                            aggregationTimeoutMs * 2);
+                }
+            });
+            return round;
+        });
+    }
+
+    @Override
+    public void stageTask(int roundId, int partCount, Task task, Current current) {
+        StagedRound round = stagedRound(roundId);
+        try {
+            round.add(processTask(task, false), partCount);
+        } catch (RuntimeException e) {
+            round.result.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    // Lanza primero la recoleccion de los subarboles hijos y luego combina con el resultado propio
+    @Override
+    public CompletionStage<PartialResult> collectGroupAsync(int roundId, WorkerPrx[] group, int fanIn,
+            Current current) {
+        List<CompletableFuture<PartialResult>> parts = new ArrayList<>();
+        parts.add(stagedRound(roundId).result.orTimeout(aggregationTimeoutMs, TimeUnit.MILLISECONDS));
+        for (WorkerPrx[] subtree : AggregationTree.children(group, fanIn)) {
+            parts.add(subtree[0].collectGroupAsync(roundId, subtree, fanIn));
+        }
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture[0]))
+                .whenComplete((v, ex) -> staged.remove(roundId))
+                .thenApply(v -> {
+                    List<PartialResult> results = new ArrayList<>(parts.size());
+                    for (CompletableFuture<PartialResult> part : parts) {
+                        results.add(part.join());
+                    }
+                    PartialResult combined = ArcAggregation.combine(results);
+                    LOG.info("[Worker %d] Ronda %d: %d resultados combinados (%d peers en el subarbol)", workerId,
+                            roundId, parts.size(), group.length - 1);
+                    return combined;
+                });
+    }
+
+    private void printSummary(PartialResult result) {
+        LOG.info("[Worker %d] Task %d completada. Datagramas: %d, Arcos: %d, Velocidad promedio: %.2f km/h", workerId,
+                result.taskId, result.datagramCount, result.arcCount, result.avgSpeed);
+        LOG.debug("[Worker %d] Suma ponderada=%.2f, Distancia total=%.2f, Tiempo total=%.2f, Velocidad filtrada=%.2f, Count filtrado=%d", workerId, result.sumSpeed, result.totalDistance, result.totalTime, result.filteredSpeedSum, result.filteredCount);
+    }
+
+    @Override
+    public SliceResult processSlice(FileSlice slice, Current current) {
+        long startTime = System.currentTimeMillis();
+        String path = localHistoryFile != null ? localHistoryFile : slice.filePath;
+        LOG.info("[Worker %d] Slice %d: %s bytes [%d, %d)", workerId, slice.taskId, path, slice.offset,
+                slice.offset + slice.length);
+
+        ReferenceData ref = reference(slice.graphVersion);
+        SliceScanner scanner = new SliceScanner(ref.getLocator());
+        List<SpeedDatagram> datagrams = new ArrayList<>();
+        ArcTraversals traversals = new ArcTraversals(ref.getArcs().graphArcCount());
+        long linesRead;
+        try {
+            linesRead = scanner.scan(path, slice.offset, slice.length, t -> {
+                SpeedDatagram dg = toDatagram(t, ref);
+                traversals.add(dg.arcId, t.departureTimestamp, t.toTimestamp);
+                datagrams.add(dg);
+            });
+        } catch (java.io.IOException e) {
+            throw new RuntimeException("Error leyendo " + path + ": " + e.getMessage(), e);
+        }
+
+        Task task = new Task();
+        task.taskId = slice.taskId;
+        task.datagrams = datagrams.toArray(new SpeedDatagram[0]);
+
+        SliceResult sliceResult = new SliceResult();
+        sliceResult.result = processTask(task, true);
+        sliceResult.boundaries = toBoundaries(scanner.getTracker());
+        sliceResult.linesRead = linesRead;
+        sliceResult.traversals = ArcAggregation.toWire(traversals);
+
+        LOG.info("[Worker %d] Slice %d leido: %d lineas, %d arcos, %d buses en frontera (%d ms)", workerId,
+                slice.taskId, linesRead, datagrams.size(), sliceResult.boundaries.length,
+                System.currentTimeMillis() - startTime);
+        return sliceResult;
+    }
+
+    private static SpeedDatagram toDatagram(BusTracker.Transition t, ReferenceData ref) {
+        SpeedDatagram dg = new SpeedDatagram();
+        dg.fromStopId = t.fromStopId;
+        dg.toStopId = t.toStopId;
+        dg.timestamp = t.toTimestamp;
+        dg.fromLat = t.fromLat;
+        dg.fromLon = t.fromLon;
+        dg.toLat = t.toLat;
+        dg.toLon = t.toLon;
+        dg.arcId = ref.getArcs().indexOf(dg.fromStopId, dg.toStopId);
+        return dg;
+    }
+
+    private static BusBoundary[] toBoundaries(BusTracker tracker) {
+        Map<Integer, BusTracker.Head> heads = tracker.getHeads();
+        BusBoundary[] boundaries = new BusBoundary[tracker.getHistories().size()];
+        int i = 0;
+        for (Map.Entry<Integer, BusHistory> entry : tracker.getHistories().entrySet()) {
+            BusHistory tail = entry.getValue();
+            BusTracker.Head head = heads.get(entry.getKey());
+            BusBoundary b = new BusBoundary();
+            b.busId = entry.getKey();
+            b.headStopId = -1;
+            if (head != null) {
+                b.headStopId = head.stopId;
+                b.headLat = head.lat;
+                b.headLon = head.lon;
+                b.headTimestamp = head.timestamp;
+                b.hasPrevious = head.hasPrevious;
+                b.prevLat = head.prevLat;
+                b.prevLon = head.prevLon;
+                b.prevTimestamp = head.prevTimestamp;
+            }
+            b.tailStopId = tail.lastStopId != null ? tail.lastStopId : -1;
+            b.tailLat = tail.lastLat;
+            b.tailLon = tail.lastLon;
+            b.tailTimestamp = tail.lastTimestamp;
+            b.tailStopTimestamp = tail.lastStopTimestamp;
+            boundaries[i++] = b;
+        }
+        return boundaries;
+    }
+
     @Override
     public boolean isAvailable(Current current) {
-        return available;
+        return activeTasks.get() < parallelism;
     }
 
     @Override
@@ -0,0 +1,103 @@
+package com.mio.compute;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Reducción por arco de una tarea: mapa con listas por arco (versión original del worker),
+// tabla hash ArcTable y ordenamiento radix. Distribuciones:
+//   zipf    - pocos arcos troncales concentran la mayoría de datagramas (caso real del MIO)
+//   uniform - todos los arcos del grafo con la misma frecuencia
+//   burst   - datagramas agrupados por bus: rachas largas del mismo arco
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ArcKernelBenchmark {
+
+    private static final int GRAPH_ARCS = 7_000;
+    private static final long DAY_START = 1_700_000_000_000L;
+    private static final int DAY_MS = 86_400_000;
+
+    @Param({ "16384", "262144" })
+    public int datagrams;
+
+    @Param({ "zipf", "uniform", "burst" })
+    public String distribution;
+
+    private int[] arcs;
+    private long[] timestamps;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        arcs = new int[datagrams];
+        timestamps = new long[datagrams];
+        double[] cumulative = zipf(GRAPH_ARCS, 1.1);
+        int run = 0;
+        int arc = 0;
+        for (int i = 0; i < datagrams; i++) {
+            switch (distribution) {
+                case "zipf":
+                    arc = sample(cumulative, random.nextDouble());
+                    break;
+                case "uniform":
+                    arc = random.nextInt(GRAPH_ARCS);
+                    break;
+                default:
+                    if (run-- <= 0) {
+                        arc = sample(cumulative, random.nextDouble());
+                        run = 5 + random.nextInt(40);
+                    }
+            }
+            arcs[i] = arc;
+            // Datagramas casi en orden de llegada, con algo de desorden entre buses
+            timestamps[i] = DAY_START + (long) i * DAY_MS / datagrams + random.nextInt(60_000);
+        }
+    }
+
+    private static double[] zipf(int n, double exponent) {
+        double[] cumulative = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1 / Math.pow(k + 1, exponent);
+            cumulative[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cumulative[k] /= sum;
+        }
+        return cumulative;
+    }
+
+    private static int sample(double[] cumulative, double u) {
+        int pos = Arrays.binarySearch(cumulative, u);
+        return Math.min(cumulative.length - 1, pos >= 0 ? pos : -pos - 1);
+    }
+
+    @Benchmark
+    public int boxedLists() {
+        Map<Integer, List<Long>> byArc = new HashMap<>();
+        for (int i = 0; i < datagrams; i++) {
+            byArc.computeIfAbsent(arcs[i], k -> new ArrayList<>()).add(timestamps[i]);
+        }
+        long checksum = 0;
+        for (List<Long> list : byArc.values()) {
+            list.sort(Comparator.naturalOrder());
+            checksum += list.get(list.size() - 1) - list.get(0) + list.size();
+        }
+        return (int) checksum;
+    }
+
+    @Benchmark
+    public ArcTable hashTable() {
+        ArcTable table = new ArcTable(1024);
+        for (int i = 0; i < datagrams; i++) {
+            table.add(arcs[i], timestamps[i]);
+        }
+        return table;
+    }
+
+    @Benchmark
+    public ArcTable radixSort() {
+        return RadixArcKernel.reduce(arcs, timestamps, 0, datagrams);
+    }
+}
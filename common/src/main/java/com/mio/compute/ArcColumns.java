@@ -0,0 +1,48 @@
+package com.mio.compute;
+
+// Agregados por arco en columnas paralelas ordenadas por arco, tal como viajan en los resultados
+// parciales. Cada módulo solo traduce entre estas columnas y su struct de Ice
+public final class ArcColumns {
+
+    public final int[] arcs;
+    public final int[] counts;
+    public final long[] minTimestamps;
+    public final long[] maxTimestamps;
+
+    public ArcColumns(int[] arcs, int[] counts, long[] minTimestamps, long[] maxTimestamps) {
+        this.arcs = arcs;
+        this.counts = counts;
+        this.minTimestamps = minTimestamps;
+        this.maxTimestamps = maxTimestamps;
+    }
+
+    public static ArcColumns of(ArcTable table) {
+        int[] slots = table.slotsByArc();
+        ArcColumns columns = new ArcColumns(new int[slots.length], new int[slots.length], new long[slots.length],
+                new long[slots.length]);
+        for (int i = 0; i < slots.length; i++) {
+            columns.arcs[i] = table.arcId(slots[i]);
+            columns.counts[i] = table.count(slots[i]);
+            columns.minTimestamps[i] = table.minTimestamp(slots[i]);
+            columns.maxTimestamps[i] = table.maxTimestamp(slots[i]);
+        }
+        return columns;
+    }
+
+    // false si el resultado no trae agregados (p. ej. de un worker anterior a este formato); sin
+    // ellos la consolidación ya no es exacta
+    public static boolean isComplete(int[] arcs, long datagramCount) {
+        return arcs != null && (arcs.length > 0 || datagramCount == 0);
+    }
+
+    // Columnas nulas no aportan nada
+    public static void mergeInto(ArcTable table, int[] arcs, int[] counts, long[] minTimestamps,
+            long[] maxTimestamps) {
+        if (arcs == null) {
+            return;
+        }
+        for (int i = 0; i < arcs.length; i++) {
+            table.addAggregate(arcs[i], counts[i], minTimestamps[i], maxTimestamps[i]);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.mio.compute;
+
+import java.util.Arrays;
+
+// Arcos presentes en un conjunto de resultados. Exacto: bitset sobre los arcos del grafo [0, G) y lista
+// ordenada para el resto; aproximado: HyperLogLog de tamaño fijo para espacios de arcos sin cota.
+// Al recibir un sketch, un contador exacto pasa a aproximado volcando sus arcos en el HLL
+public final class ArcCounter {
+
+    private final int graphArcs;
+    private long[] bits;
+    private int[] others = new int[16];
+    private int otherCount;
+    private HyperLogLog sketch;
+
+    public ArcCounter(int graphArcs, boolean approximate) {
+        this.graphArcs = graphArcs;
+        this.bits = new long[(graphArcs + 63) >>> 6];
+        if (approximate) {
+            sketch = new HyperLogLog(HyperLogLog.DEFAULT_PRECISION);
+        }
+    }
+
+    // Arcos presentes de la tabla (graphArcs: G del grafo local, 0 si no hay)
+    public static ArcCounter of(ArcTable table, int graphArcs, boolean approximate) {
+        ArcCounter counter = new ArcCounter(graphArcs, approximate);
+        for (int slot = 0; slot < table.size(); slot++) {
+            counter.add(table.arcId(slot));
+        }
+        return counter;
+    }
+
+    public boolean isApproximate() {
+        return sketch != null;
+    }
+
+    public void add(int arcId) {
+        if (arcId < 0) {
+            return;
+        }
+        if (sketch != null) {
+            sketch.add(arcId);
+        } else if (arcId < graphArcs) {
+            bits[arcId >>> 6] |= 1L << arcId;
+        } else {
+            if (otherCount == others.length) {
+                compactOthers();
+                if (otherCount * 2 > others.length) {
+                    others = Arrays.copyOf(others, others.length * 2);
+                }
+            }
+            others[otherCount++] = arcId;
+        }
+    }
+
+    // Bitset de otro contador (su G puede ser distinto: los bits fuera de [0, G) van a la lista)
+    public void addGraphBits(long[] otherBits) {
+        if (sketch == null && otherBits.length <= bits.length && (long) otherBits.length * 64 <= graphArcs) {
+            for (int i = 0; i < otherBits.length; i++) {
+                bits[i] |= otherBits[i];
+            }
+            return;
+        }
+        for (int word = 0; word < otherBits.length; word++) {
+            long w = otherBits[word];
+            while (w != 0) {
+                add(word * 64 + Long.numberOfTrailingZeros(w));
+                w &= w - 1;
+            }
+        }
+    }
+
+    public void addAll(int[] arcIds) {
+        for (int arcId : arcIds) {
+            add(arcId);
+        }
+    }
+
+    public void addSketch(byte[] registers) {
+        if (registers.length == 0) {
+            return;
+        }
+        if (sketch == null) {
+            sketch = new HyperLogLog(Integer.numberOfTrailingZeros(registers.length));
+            long[] exactBits = bits;
+            int[] exactOthers = otherArcs();
+            bits = new long[0];
+            others = new int[0];
+            otherCount = 0;
+            addGraphBits(exactBits);
+            addAll(exactOthers);
+        }
+        sketch.merge(registers);
+    }
+
+    // Presencia recibida de otro resultado en sus tres columnas; las nulas no aportan nada
+    public void addPresence(long[] graphBits, int[] otherArcs, byte[] registers) {
+        if (registers != null) {
+            addSketch(registers);
+        }
+        if (graphBits != null) {
+            addGraphBits(graphBits);
+        }
+        if (otherArcs != null) {
+            addAll(otherArcs);
+        }
+    }
+
+    private void compactOthers() {
+        Arrays.sort(others, 0, otherCount);
+        int unique = 0;
+        for (int i = 0; i < otherCount; i++) {
+            if (unique == 0 || others[unique - 1] != others[i]) {
+                others[unique++] = others[i];
+            }
+        }
+        otherCount = unique;
+    }
+
+    public long count() {
+        if (sketch != null) {
+            return sketch.estimate();
+        }
+        long count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        compactOthers();
+        return count + otherCount;
+    }
+
+    public long[] graphBits() {
+        return sketch != null ? new long[0] : bits.clone();
+    }
+
+    public int[] otherArcs() {
+        compactOthers();
+        return Arrays.copyOf(others, otherCount);
+    }
+
+    public byte[] sketch() {
+        return sketch != null ? sketch.registers() : new byte[0];
+    }
+}
@@ -0,0 +1,185 @@
+package com.mio.compute;
+
+import java.util.Arrays;
+
+// Acumulado por arco en arreglos paralelos (hash abierto arcId -> slot), sin un objeto por arco.
+// Las coordenadas de cada arco son las del primer datagrama en orden de llegada (order más bajo)
+public final class ArcTable {
+
+    private int[] index;
+    private int[] arcIds;
+    private int[] counts;
+    private long[] minTimestamps;
+    private long[] maxTimestamps;
+    private long[] firstOrders;
+    private double[] coords;
+    private int size;
+
+    public ArcTable(int expectedArcs) {
+        int capacity = Math.max(16, Integer.highestOneBit(Math.max(1, expectedArcs)) << 1);
+        index = new int[capacity * 2];
+        arcIds = new int[capacity];
+        counts = new int[capacity];
+        minTimestamps = new long[capacity];
+        maxTimestamps = new long[capacity];
+        firstOrders = new long[capacity];
+        coords = new double[capacity * 4];
+    }
+
+    private static int hash(int arcId) {
+        int h = arcId * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // -1 si el arco no está en la tabla
+    public int find(int arcId) {
+        int mask = index.length - 1;
+        int pos = hash(arcId) & mask;
+        while (index[pos] != 0) {
+            int slot = index[pos] - 1;
+            if (arcIds[slot] == arcId) {
+                return slot;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return -1;
+    }
+
+    // Slot del arco, creándolo vacío si no existe
+    public int slot(int arcId) {
+        int mask = index.length - 1;
+        int pos = hash(arcId) & mask;
+        while (index[pos] != 0) {
+            int slot = index[pos] - 1;
+            if (arcIds[slot] == arcId) {
+                return slot;
+            }
+            pos = (pos + 1) & mask;
+        }
+        if (size == arcIds.length) {
+            grow();
+            return slot(arcId);
+        }
+        int slot = size++;
+        index[pos] = slot + 1;
+        arcIds[slot] = arcId;
+        minTimestamps[slot] = Long.MAX_VALUE;
+        maxTimestamps[slot] = Long.MIN_VALUE;
+        firstOrders[slot] = Long.MAX_VALUE;
+        return slot;
+    }
+
+    private void grow() {
+        int capacity = arcIds.length * 2;
+        arcIds = Arrays.copyOf(arcIds, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+        minTimestamps = Arrays.copyOf(minTimestamps, capacity);
+        maxTimestamps = Arrays.copyOf(maxTimestamps, capacity);
+        firstOrders = Arrays.copyOf(firstOrders, capacity);
+        coords = Arrays.copyOf(coords, capacity * 4);
+        index = new int[capacity * 2];
+        int mask = index.length - 1;
+        for (int slot = 0; slot < size; slot++) {
+            int pos = hash(arcIds[slot]) & mask;
+            while (index[pos] != 0) {
+                pos = (pos + 1) & mask;
+            }
+            index[pos] = slot + 1;
+        }
+    }
+
+    public int add(int arcId, long timestamp) {
+        int slot = slot(arcId);
+        addAt(slot, timestamp);
+        return slot;
+    }
+
+    public void addAt(int slot, long timestamp) {
+        counts[slot]++;
+        if (timestamp < minTimestamps[slot]) {
+            minTimestamps[slot] = timestamp;
+        }
+        if (timestamp > maxTimestamps[slot]) {
+            maxTimestamps[slot] = timestamp;
+        }
+    }
+
+    public void offerCoords(int slot, long order, double fromLat, double fromLon, double toLat, double toLon) {
+        if (order < firstOrders[slot]) {
+            firstOrders[slot] = order;
+            coords[slot * 4] = fromLat;
+            coords[slot * 4 + 1] = fromLon;
+            coords[slot * 4 + 2] = toLat;
+            coords[slot * 4 + 3] = toLon;
+        }
+    }
+
+    // Agregado ya reducido de un arco (p. ej. de un resultado parcial)
+    public void addAggregate(int arcId, int count, long minTimestamp, long maxTimestamp) {
+        int slot = slot(arcId);
+        counts[slot] += count;
+        minTimestamps[slot] = Math.min(minTimestamps[slot], minTimestamp);
+        maxTimestamps[slot] = Math.max(maxTimestamps[slot], maxTimestamp);
+    }
+
+    // Slots en orden creciente de arcId
+    public int[] slotsByArc() {
+        long[] keyed = new long[size];
+        for (int slot = 0; slot < size; slot++) {
+            keyed[slot] = ((long) arcIds[slot] << 32) | slot;
+        }
+        Arrays.sort(keyed);
+        int[] slots = new int[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = (int) keyed[i];
+        }
+        return slots;
+    }
+
+    public void merge(ArcTable other) {
+        for (int i = 0; i < other.size; i++) {
+            int slot = slot(other.arcIds[i]);
+            counts[slot] += other.counts[i];
+            minTimestamps[slot] = Math.min(minTimestamps[slot], other.minTimestamps[i]);
+            maxTimestamps[slot] = Math.max(maxTimestamps[slot], other.maxTimestamps[i]);
+            offerCoords(slot, other.firstOrders[i], other.coords[i * 4], other.coords[i * 4 + 1],
+                    other.coords[i * 4 + 2], other.coords[i * 4 + 3]);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int arcId(int slot) {
+        return arcIds[slot];
+    }
+
+    public int count(int slot) {
+        return counts[slot];
+    }
+
+    public long minTimestamp(int slot) {
+        return minTimestamps[slot];
+    }
+
+    public long maxTimestamp(int slot) {
+        return maxTimestamps[slot];
+    }
+
+    public double fromLat(int slot) {
+        return coords[slot * 4];
+    }
+
+    public double fromLon(int slot) {
+        return coords[slot * 4 + 1];
+    }
+
+    public double toLat(int slot) {
+        return coords[slot * 4 + 2];
+    }
+
+    public double toLon(int slot) {
+        return coords[slot * 4 + 3];
+    }
+}
@@ -0,0 +1,126 @@
+package com.mio.compute;
+
+// Tiempos de recorrido por arco del grafo: cada transición de un bus entre dos paradas consecutivas
+// suma uno en el histograma logarítmico de su arco. La mediana es el tiempo típico de recorrido y no
+// se mueve por unas pocas esperas largas; los histogramas se suman sin pérdida, así los slices
+// leídos en distintos workers se combinan en el Master. No es seguro entre hilos
+public final class ArcTraversals {
+
+    // Cubetas de ancho 1.25x: la cubeta b cubre [1.25^b, 1.25^(b+1)) segundos y la 0 todo lo menor
+    static final double GROWTH = 1.25;
+    private static final double LOG_GROWTH = Math.log(GROWTH);
+    // Un tramo entre paradas consecutivas que tarda más es una pausa del bus (fin de turno, falla)
+    public static final long MAX_TRAVERSAL_MS = 2 * 3600_000L;
+    static final int BUCKETS = bucketOf(MAX_TRAVERSAL_MS) + 1;
+
+    private final int[][] histograms;
+
+    public ArcTraversals(int graphArcs) {
+        this.histograms = new int[graphArcs][];
+    }
+
+    public int graphArcCount() {
+        return histograms.length;
+    }
+
+    // Arcos fuera del grafo, duraciones no positivas y pausas no cuentan
+    public void add(int arcIdx, long fromTimestamp, long toTimestamp) {
+        long ms = toTimestamp - fromTimestamp;
+        if (ms > 0 && ms <= MAX_TRAVERSAL_MS) {
+            addCount(arcIdx, bucketOf(ms), 1);
+        }
+    }
+
+    static int bucketOf(long ms) {
+        double seconds = ms / 1000.0;
+        return seconds < GROWTH ? 0 : (int) (Math.log(seconds) / LOG_GROWTH);
+    }
+
+    private void addCount(int arcIdx, int bucket, int count) {
+        if (arcIdx < 0 || arcIdx >= histograms.length || bucket < 0 || bucket >= BUCKETS || count <= 0) {
+            return;
+        }
+        int[] histogram = histograms[arcIdx];
+        if (histogram == null) {
+            histogram = new int[BUCKETS];
+            histograms[arcIdx] = histogram;
+        }
+        histogram[bucket] += count;
+    }
+
+    public int count(int arcIdx) {
+        int[] histogram = arcIdx >= 0 && arcIdx < histograms.length ? histograms[arcIdx] : null;
+        int total = 0;
+        if (histogram != null) {
+            for (int c : histogram) {
+                total += c;
+            }
+        }
+        return total;
+    }
+
+    // Mediana en segundos (punto medio geométrico de su cubeta); NaN si el arco no tiene recorridos
+    public double medianSeconds(int arcIdx) {
+        int total = count(arcIdx);
+        if (total == 0) {
+            return Double.NaN;
+        }
+        int[] histogram = histograms[arcIdx];
+        int seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += histogram[b];
+            if (2 * seen >= total) {
+                return Math.pow(GROWTH, b + 0.5);
+            }
+        }
+        return Double.NaN;
+    }
+
+    public void merge(ArcTraversals other) {
+        for (int arc = 0; arc < other.histograms.length; arc++) {
+            int[] histogram = other.histograms[arc];
+            if (histogram != null) {
+                for (int b = 0; b < BUCKETS; b++) {
+                    addCount(arc, b, histogram[b]);
+                }
+            }
+        }
+    }
+
+    // Columnas dispersas para los resultados de los workers: arco, cubeta y cantidad de cada cubeta
+    // no vacía, en {arcs, buckets, counts}
+    public int[][] toColumns() {
+        int cells = 0;
+        for (int[] histogram : histograms) {
+            if (histogram != null) {
+                for (int c : histogram) {
+                    cells += c > 0 ? 1 : 0;
+                }
+            }
+        }
+        int[][] columns = { new int[cells], new int[cells], new int[cells] };
+        int i = 0;
+        for (int arc = 0; arc < histograms.length; arc++) {
+            int[] histogram = histograms[arc];
+            for (int b = 0; histogram != null && b < BUCKETS; b++) {
+                if (histogram[b] > 0) {
+                    columns[0][i] = arc;
+                    columns[1][i] = b;
+                    columns[2][i] = histogram[b];
+                    i++;
+                }
+            }
+        }
+        return columns;
+    }
+
+    // Columnas nulas no aportan nada
+    public void addColumns(int[] arcs, int[] buckets, int[] counts) {
+        if (arcs == null) {
+            return;
+        }
+        for (int i = 0; i < arcs.length; i++) {
+            addCount(arcs[i], buckets[i], counts[i]);
+        }
+    }
+}
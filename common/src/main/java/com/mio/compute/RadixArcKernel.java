@@ -0,0 +1,145 @@
+package com.mio.compute;
+
+import java.util.Arrays;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+
+// Reducción por ordenamiento: (arco, timestamp) se empaquetan en una clave long en columnas
+// primitivas, se ordenan con radix LSD (arco y luego tiempo) y un recorrido lineal da
+// primer/último timestamp y conteo por arco. Las columnas se reutilizan por hilo, así que no
+// hay asignaciones por datagrama
+public final class RadixArcKernel {
+
+    private static final int DIGIT_BITS = 8;
+    private static final int RADIX = 1 << DIGIT_BITS;
+
+    public interface ArcSink {
+        void arc(int arcId, int count, long firstTimestamp, long lastTimestamp);
+    }
+
+    private static final class Scratch {
+        long[] keys = new long[0];
+        long[] buffer = new long[0];
+        final int[][] histograms = new int[Long.SIZE / DIGIT_BITS][RADIX];
+
+        void ensure(int n) {
+            if (keys.length < n) {
+                int capacity = Math.max(n, keys.length + (keys.length >> 1));
+                keys = new long[capacity];
+                buffer = new long[capacity];
+            }
+        }
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private RadixArcKernel() {
+    }
+
+    public static ArcTable reduce(int[] arcs, long[] timestamps, int from, int to) {
+        return reduce(from, to, i -> arcs[i], i -> timestamps[i]);
+    }
+
+    public static ArcTable reduce(int from, int to, IntUnaryOperator arcOf, IntToLongFunction timestampOf) {
+        ArcTable table = new ArcTable(Math.min(1024, Math.max(16, to - from)));
+        scan(from, to, arcOf, timestampOf, table::addAggregate);
+        return table;
+    }
+
+    // Entrega cada arco una vez y en orden creciente de arcId (salvo rangos que no caben en 63 bits)
+    public static void scan(int from, int to, IntUnaryOperator arcOf, IntToLongFunction timestampOf,
+            ArcSink sink) {
+        int n = to - from;
+        if (n <= 0) {
+            return;
+        }
+        int minArc = Integer.MAX_VALUE;
+        int maxArc = Integer.MIN_VALUE;
+        long minTs = Long.MAX_VALUE;
+        long maxTs = Long.MIN_VALUE;
+        for (int i = from; i < to; i++) {
+            int arc = arcOf.applyAsInt(i);
+            long ts = timestampOf.applyAsLong(i);
+            minArc = Math.min(minArc, arc);
+            maxArc = Math.max(maxArc, arc);
+            minTs = Math.min(minTs, ts);
+            maxTs = Math.max(maxTs, ts);
+        }
+        int arcBits = bits((long) maxArc - minArc);
+        int timeBits = bits(maxTs - minTs);
+        if (timeBits < 0 || arcBits + timeBits > 63) {
+            // Rango demasiado amplio para una sola clave: se entrega datagrama a datagrama, sin orden
+            for (int i = from; i < to; i++) {
+                sink.arc(arcOf.applyAsInt(i), 1, timestampOf.applyAsLong(i), timestampOf.applyAsLong(i));
+            }
+            return;
+        }
+
+        Scratch scratch = SCRATCH.get();
+        scratch.ensure(n);
+        long[] keys = scratch.keys;
+        for (int i = 0; i < n; i++) {
+            keys[i] = ((long) (arcOf.applyAsInt(from + i) - minArc) << timeBits)
+                    | (timestampOf.applyAsLong(from + i) - minTs);
+        }
+        keys = sort(scratch, n, arcBits + timeBits);
+
+        long timeMask = (1L << timeBits) - 1;
+        long group = keys[0] >>> timeBits;
+        int start = 0;
+        for (int i = 1; i <= n; i++) {
+            if (i == n || keys[i] >>> timeBits != group) {
+                sink.arc((int) (group + minArc), i - start, (keys[start] & timeMask) + minTs,
+                        (keys[i - 1] & timeMask) + minTs);
+                if (i < n) {
+                    group = keys[i] >>> timeBits;
+                    start = i;
+                }
+            }
+        }
+    }
+
+    // Bits necesarios para representar 0..range; -1 si range desborda (long con signo)
+    private static int bits(long range) {
+        return range < 0 ? -1 : Long.SIZE - Long.numberOfLeadingZeros(range);
+    }
+
+    // Radix LSD de 8 bits; los histogramas de todas las pasadas salen de una sola lectura y las
+    // pasadas cuyo dígito es igual en todas las claves se omiten
+    private static long[] sort(Scratch scratch, int n, int keyBits) {
+        int passes = (keyBits + DIGIT_BITS - 1) / DIGIT_BITS;
+        int[][] histograms = scratch.histograms;
+        for (int p = 0; p < passes; p++) {
+            Arrays.fill(histograms[p], 0);
+        }
+        long[] src = scratch.keys;
+        long[] dst = scratch.buffer;
+        for (int i = 0; i < n; i++) {
+            long key = src[i];
+            for (int p = 0; p < passes; p++) {
+                histograms[p][(int) (key >>> (p * DIGIT_BITS)) & (RADIX - 1)]++;
+            }
+        }
+        for (int p = 0; p < passes; p++) {
+            int[] counts = histograms[p];
+            int shift = p * DIGIT_BITS;
+            if (counts[(int) (src[0] >>> shift) & (RADIX - 1)] == n) {
+                continue;
+            }
+            int offset = 0;
+            for (int d = 0; d < RADIX; d++) {
+                int c = counts[d];
+                counts[d] = offset;
+                offset += c;
+            }
+            for (int i = 0; i < n; i++) {
+                long key = src[i];
+                dst[counts[(int) (key >>> shift) & (RADIX - 1)]++] = key;
+            }
+            long[] swap = src;
+            src = dst;
+            dst = swap;
+        }
+        return src;
+    }
+}
@@ -0,0 +1,88 @@
+package com.mio.compute;
+
+import java.util.*;
+
+// Agregados por arco ordenados por arcId: se combinan por mezcla lineal, sin tabla hash
+public final class SortedArcs {
+
+    public final int[] arcs;
+    public final int[] counts;
+    public final long[] minTimestamps;
+    public final long[] maxTimestamps;
+
+    public SortedArcs(int[] arcs, int[] counts, long[] minTimestamps, long[] maxTimestamps) {
+        this.arcs = arcs;
+        this.counts = counts;
+        this.minTimestamps = minTimestamps;
+        this.maxTimestamps = maxTimestamps;
+    }
+
+    public static SortedArcs of(ArcTable table) {
+        int[] slots = table.slotsByArc();
+        SortedArcs sorted = new SortedArcs(new int[slots.length], new int[slots.length], new long[slots.length],
+                new long[slots.length]);
+        for (int i = 0; i < slots.length; i++) {
+            sorted.arcs[i] = table.arcId(slots[i]);
+            sorted.counts[i] = table.count(slots[i]);
+            sorted.minTimestamps[i] = table.minTimestamp(slots[i]);
+            sorted.maxTimestamps[i] = table.maxTimestamp(slots[i]);
+        }
+        return sorted;
+    }
+
+    public int size() {
+        return arcs.length;
+    }
+
+    public static SortedArcs merge(SortedArcs a, SortedArcs b) {
+        int n = a.size() + b.size();
+        int[] arcs = new int[n];
+        int[] counts = new int[n];
+        long[] min = new long[n];
+        long[] max = new long[n];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < a.size() || j < b.size()) {
+            if (j == b.size() || (i < a.size() && a.arcs[i] < b.arcs[j])) {
+                arcs[k] = a.arcs[i];
+                counts[k] = a.counts[i];
+                min[k] = a.minTimestamps[i];
+                max[k] = a.maxTimestamps[i];
+                i++;
+            } else if (i == a.size() || b.arcs[j] < a.arcs[i]) {
+                arcs[k] = b.arcs[j];
+                counts[k] = b.counts[j];
+                min[k] = b.minTimestamps[j];
+                max[k] = b.maxTimestamps[j];
+                j++;
+            } else {
+                arcs[k] = a.arcs[i];
+                counts[k] = a.counts[i] + b.counts[j];
+                min[k] = Math.min(a.minTimestamps[i], b.minTimestamps[j]);
+                max[k] = Math.max(a.maxTimestamps[i], b.maxTimestamps[j]);
+                i++;
+                j++;
+            }
+            k++;
+        }
+        return new SortedArcs(Arrays.copyOf(arcs, k), Arrays.copyOf(counts, k), Arrays.copyOf(min, k),
+                Arrays.copyOf(max, k));
+    }
+
+    // Mezcla por pares en log2(n) niveles
+    public static SortedArcs mergeAll(List<SortedArcs> runs) {
+        if (runs.isEmpty()) {
+            return new SortedArcs(new int[0], new int[0], new long[0], new long[0]);
+        }
+        List<SortedArcs> level = new ArrayList<>(runs);
+        while (level.size() > 1) {
+            List<SortedArcs> next = new ArrayList<>((level.size() + 1) / 2);
+            for (int i = 0; i < level.size(); i += 2) {
+                next.add(i + 1 < level.size() ? merge(level.get(i), level.get(i + 1)) : level.get(i));
+            }
+            level = next;
+        }
+        return level.get(0);
+    }
+}
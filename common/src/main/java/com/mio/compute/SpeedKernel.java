@@ -0,0 +1,135 @@
+package com.mio.compute;
+
+import com.mio.ingest.ReferenceData;
+import com.mio.ingest.StopLocator;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Cálculo de velocidad por arco compartido por el worker remoto y el worker local del Master:
+// reducción de datagramas a ArcTable y suma de velocidades por arco
+public final class SpeedKernel {
+
+    public static final double MIN_DISTANCE_KM = 0.001;
+    public static final double MIN_TIME_HOURS = 0.0001;
+    public static final double MAX_SPEED_KMH = 120;
+
+    // Por debajo de estos tamaños se trabaja en el hilo que llama
+    public static final int CHUNK_DATAGRAMS = 16_384;
+    public static final int CHUNK_ARCS = 2_048;
+
+    public interface ChunkReducer {
+        ArcTable reduce(int from, int to);
+    }
+
+    public interface ArcDistance {
+        double km(ArcTable table, int slot);
+    }
+
+    // Detalle por arco: distanceKm < MIN_DISTANCE_KM o timeHours <= MIN_TIME_HOURS indican arco descartado
+    public interface ArcListener {
+        void arc(int arcId, double distanceKm, double timeHours, double speedKmh, int count);
+    }
+
+    public static final ArcDistance HAVERSINE = (table, slot) -> StopLocator.haversine(table.fromLat(slot),
+            table.fromLon(slot), table.toLat(slot), table.toLon(slot));
+
+    private SpeedKernel() {
+    }
+
+    // Con arcId como índice denso, la longitud sale de la caché del grafo (arcId -1: paradas desconocidas)
+    public static ArcDistance graphDistance(ReferenceData reference) {
+        return (table, slot) -> table.arcId(slot) >= 0 ? reference.arcLengthKm(table.arcId(slot))
+                : HAVERSINE.km(table, slot);
+    }
+
+    private static class ReduceTask extends RecursiveTask<ArcTable> {
+        private final ChunkReducer reducer;
+        private final int from;
+        private final int to;
+
+        ReduceTask(ChunkReducer reducer, int from, int to) {
+            this.reducer = reducer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected ArcTable compute() {
+            if (to - from <= CHUNK_DATAGRAMS) {
+                return reducer.reduce(from, to);
+            }
+            int mid = (from + to) >>> 1;
+            ReduceTask left = new ReduceTask(reducer, from, mid);
+            left.fork();
+            ArcTable right = new ReduceTask(reducer, mid, to).compute();
+            ArcTable l = left.join();
+            if (l.size() < right.size()) {
+                right.merge(l);
+                return right;
+            }
+            l.merge(right);
+            return l;
+        }
+    }
+
+    // Con pool null (o pocos datagramas) se reduce en el hilo actual
+    public static ArcTable reduce(ForkJoinPool pool, int n, ChunkReducer reducer) {
+        if (pool == null || n <= CHUNK_DATAGRAMS) {
+            return reducer.reduce(0, n);
+        }
+        return pool.invoke(new ReduceTask(reducer, 0, n));
+    }
+
+    public static SpeedTotals totals(ArcTable table, int from, int to, ArcDistance distance,
+            ArcListener listener) {
+        SpeedTotals totals = new SpeedTotals();
+        for (int slot = from; slot < to; slot++) {
+            double distanceKm = distance.km(table, slot);
+            if (distanceKm < MIN_DISTANCE_KM) {
+                if (listener != null) {
+                    listener.arc(table.arcId(slot), distanceKm, 0, 0, table.count(slot));
+                }
+                continue;
+            }
+            double timeHours = (table.maxTimestamp(slot) - table.minTimestamp(slot)) / (1000.0 * 3600.0);
+            double speed = 0;
+            if (timeHours > MIN_TIME_HOURS) {
+                speed = distanceKm / timeHours;
+                double limited = Math.min(Math.max(speed, 0), MAX_SPEED_KMH);
+                int count = table.count(slot);
+                totals.weightedSpeed += limited * count;
+                totals.distance += distanceKm * count;
+                totals.time += timeHours * count;
+                totals.filteredSpeedSum += limited;
+                totals.filteredCount++;
+            }
+            if (listener != null) {
+                listener.arc(table.arcId(slot), distanceKm, timeHours, speed, table.count(slot));
+            }
+            totals.arcCount++;
+        }
+        return totals;
+    }
+
+    // Particiones de arcos independientes: cada una produce sus sumas y se combinan al final
+    public static SpeedTotals totals(ForkJoinPool pool, ArcTable table, ArcDistance distance) {
+        if (pool == null || table.size() <= CHUNK_ARCS) {
+            return totals(table, 0, table.size(), distance, null);
+        }
+        List<Callable<SpeedTotals>> partitions = new ArrayList<>();
+        for (int from = 0; from < table.size(); from += CHUNK_ARCS) {
+            int start = from;
+            int end = Math.min(from + CHUNK_ARCS, table.size());
+            partitions.add(() -> totals(table, start, end, distance, null));
+        }
+        SpeedTotals totals = new SpeedTotals();
+        for (Future<SpeedTotals> partial : pool.invokeAll(partitions)) {
+            try {
+                totals.add(partial.get());
+            } catch (InterruptedException | ExecutionException e) {
+                throw new RuntimeException("Error calculando velocidades por arco: " + e.getMessage(), e);
+            }
+        }
+        return totals;
+    }
+}
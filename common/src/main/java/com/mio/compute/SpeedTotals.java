@@ -0,0 +1,21 @@
+package com.mio.compute;
+
+// Sumas de un conjunto de arcos; weightedSpeed, distance y time van ponderados por datagramas
+public class SpeedTotals {
+
+    public double weightedSpeed;
+    public double distance;
+    public double time;
+    public int arcCount;
+    public double filteredSpeedSum;
+    public int filteredCount;
+
+    public void add(SpeedTotals other) {
+        weightedSpeed += other.weightedSpeed;
+        distance += other.distance;
+        time += other.time;
+        arcCount += other.arcCount;
+        filteredSpeedSum += other.filteredSpeedSum;
+        filteredCount += other.filteredCount;
+    }
+}
@@ -0,0 +1,43 @@
+package com.mio.dist;
+
+import java.util.*;
+
+// Árbol de agregación sobre una lista plana: el primer miembro de cada rango es la raíz de ese subárbol
+// y el resto se reparte en hasta fanIn subárboles contiguos
+public final class AggregationTree {
+
+    private AggregationTree() {
+    }
+
+    public static <T> List<T[]> split(T[] members, int from, int fanIn) {
+        int remaining = members.length - from;
+        int parts = Math.min(Math.max(1, fanIn), remaining);
+        List<T[]> subtrees = new ArrayList<>(parts);
+        int offset = from;
+        for (int i = 0; i < parts; i++) {
+            int size = remaining / parts + (i < remaining % parts ? 1 : 0);
+            subtrees.add(Arrays.copyOfRange(members, offset, offset + size));
+            offset += size;
+        }
+        return subtrees;
+    }
+
+    // Hijos de la raíz members[0]
+    public static <T> List<T[]> children(T[] members, int fanIn) {
+        return split(members, 1, fanIn);
+    }
+
+    public static int depth(int members, int fanIn) {
+        if (members <= 0) {
+            return 0;
+        }
+        int depth = 1;
+        int size = members - 1;
+        int f = Math.max(1, fanIn);
+        while (size > 0) {
+            size = (size + f - 1) / f - 1;
+            depth++;
+        }
+        return depth;
+    }
+}
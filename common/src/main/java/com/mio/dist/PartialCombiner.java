@@ -0,0 +1,67 @@
+package com.mio.dist;
+
+import com.mio.compute.ArcColumns;
+import com.mio.compute.ArcCounter;
+import com.mio.compute.ArcTable;
+
+// Combinación de resultados parciales: suma los totales y une los agregados por arco y los arcos
+// presentes. La comparten la agregación en árbol de los workers y el respaldo local del Master;
+// cada módulo solo traduce su PartialResult de Ice a estas llamadas y de vuelta
+public final class PartialCombiner {
+
+    public int arcCount;
+    public long datagramCount;
+    public double sumSpeed;
+    public double totalDistance;
+    public double totalTime;
+    public long processingTimeMs;
+    public double filteredSpeedSum;
+    public long filteredCount;
+
+    private final ArcTable arcs = new ArcTable(1024);
+    private ArcCounter presence;
+    private boolean withStats = true;
+
+    // processingTimeMs es el máximo: las partes corren en paralelo
+    public void addTotals(int arcCount, long datagramCount, double sumSpeed, double totalDistance, double totalTime,
+            long processingTimeMs, double filteredSpeedSum, long filteredCount) {
+        this.arcCount += arcCount;
+        this.datagramCount += datagramCount;
+        this.sumSpeed += sumSpeed;
+        this.totalDistance += totalDistance;
+        this.totalTime += totalTime;
+        this.processingTimeMs = Math.max(this.processingTimeMs, processingTimeMs);
+        this.filteredSpeedSum += filteredSpeedSum;
+        this.filteredCount += filteredCount;
+    }
+
+    public void addStats(int[] arcIds, int[] counts, long[] minTimestamps, long[] maxTimestamps) {
+        ArcColumns.mergeInto(arcs, arcIds, counts, minTimestamps, maxTimestamps);
+    }
+
+    // Una parte sin agregados por arco deja sin ellos al resultado combinado
+    public void missingStats() {
+        withStats = false;
+    }
+
+    // El bitset se dimensiona con la primera parte; las demás vienen del mismo grafo
+    public void addPresence(long[] graphBits, int[] otherArcs, byte[] sketch) {
+        if (presence == null) {
+            presence = new ArcCounter(graphBits != null ? graphBits.length * 64 : 0, false);
+        }
+        presence.addPresence(graphBits, otherArcs, sketch);
+    }
+
+    public double avgSpeed() {
+        return datagramCount > 0 ? sumSpeed / datagramCount : 0;
+    }
+
+    // null si alguna parte llegó sin agregados
+    public ArcColumns stats() {
+        return withStats ? ArcColumns.of(arcs) : null;
+    }
+
+    public ArcCounter presence() {
+        return presence != null ? presence : new ArcCounter(0, false);
+    }
+}
@@ -0,0 +1,113 @@
+package com.mio.ingest;
+
+// Arcos del grafo en formato CSR sobre los índices densos de parada de ArcIndex. Las aristas que
+// salen de la parada s ocupan [firstEdge(s), endEdge(s)) en arreglos paralelos de destino y arco
+// (índice denso del arco, con el que se leen longitudes, velocidades, etc.). Las entrantes tienen
+// su propio CSR para recorridos hacia atrás. Recorrer vecinos no asigna memoria:
+//   for (int e = g.firstEdge(s), end = g.endEdge(s); e < end; e++) { int t = g.target(e); ... }
+public final class ArcGraph {
+
+    private final int stopCount;
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] arcIds;
+    private final int[] inOffsets;
+    private final int[] sources;
+    private final int[] inArcIds;
+
+    // El arco i va de fromIdx[i] a toIdx[i]; dentro de cada parada las aristas quedan en orden de arco
+    public ArcGraph(int stopCount, int[] fromIdx, int[] toIdx) {
+        this.stopCount = stopCount;
+        int arcCount = fromIdx.length;
+        this.offsets = new int[stopCount + 1];
+        this.targets = new int[arcCount];
+        this.arcIds = new int[arcCount];
+        this.inOffsets = new int[stopCount + 1];
+        this.sources = new int[arcCount];
+        this.inArcIds = new int[arcCount];
+        for (int i = 0; i < arcCount; i++) {
+            offsets[fromIdx[i] + 1]++;
+            inOffsets[toIdx[i] + 1]++;
+        }
+        for (int s = 0; s < stopCount; s++) {
+            offsets[s + 1] += offsets[s];
+            inOffsets[s + 1] += inOffsets[s];
+        }
+        int[] next = offsets.clone();
+        int[] inNext = inOffsets.clone();
+        for (int i = 0; i < arcCount; i++) {
+            int e = next[fromIdx[i]]++;
+            targets[e] = toIdx[i];
+            arcIds[e] = i;
+            int in = inNext[toIdx[i]]++;
+            sources[in] = fromIdx[i];
+            inArcIds[in] = i;
+        }
+    }
+
+    public int stopCount() {
+        return stopCount;
+    }
+
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    public int firstEdge(int stop) {
+        return offsets[stop];
+    }
+
+    public int endEdge(int stop) {
+        return offsets[stop + 1];
+    }
+
+    public int outDegree(int stop) {
+        return offsets[stop + 1] - offsets[stop];
+    }
+
+    public int target(int edge) {
+        return targets[edge];
+    }
+
+    public int arcId(int edge) {
+        return arcIds[edge];
+    }
+
+    public int firstInEdge(int stop) {
+        return inOffsets[stop];
+    }
+
+    public int endInEdge(int stop) {
+        return inOffsets[stop + 1];
+    }
+
+    public int inDegree(int stop) {
+        return inOffsets[stop + 1] - inOffsets[stop];
+    }
+
+    public int source(int inEdge) {
+        return sources[inEdge];
+    }
+
+    public int inArcId(int inEdge) {
+        return inArcIds[inEdge];
+    }
+
+    // Arco de from a to, o -1 si no son vecinas (recorre solo la fila de from)
+    public int arcBetween(int from, int to) {
+        for (int e = offsets[from], end = offsets[from + 1]; e < end; e++) {
+            if (targets[e] == to) {
+                return arcIds[e];
+            }
+        }
+        return -1;
+    }
+
+    public int maxOutDegree() {
+        int max = 0;
+        for (int s = 0; s < stopCount; s++) {
+            max = Math.max(max, outDegree(s));
+        }
+        return max;
+    }
+}
@@ -0,0 +1,104 @@
+package com.mio.ingest;
+
+import java.util.*;
+
+// Índice denso de arcos: los arcos del grafo ocupan [0, G); un par de paradas fuera del grafo
+// recibe G + índice(origen) * S + índice(destino). Las búsquedas van por arreglos ordenados y la
+// fila CSR de la parada de origen, sin mapas ni boxing por datagrama
+public class ArcIndex {
+
+    private final int[] stopIds;
+    // stopIds ordenados y la posición de cada uno en stopIds, para buscar por id con búsqueda binaria
+    private final int[] sortedStopIds;
+    private final int[] sortedStopIdx;
+    private final int[] arcFrom;
+    private final int[] arcTo;
+    private final ArcGraph graph;
+
+    public ArcIndex(int[] stopIds, int[] arcFromStopIds, int[] arcToStopIds) {
+        this.stopIds = stopIds.clone();
+        Integer[] order = new Integer[stopIds.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> stopIds[i]));
+        this.sortedStopIds = new int[stopIds.length];
+        this.sortedStopIdx = new int[stopIds.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedStopIds[i] = stopIds[order[i]];
+            sortedStopIdx[i] = order[i];
+        }
+
+        int[] from = new int[arcFromStopIds.length];
+        int[] to = new int[arcFromStopIds.length];
+        int[] fromIdx = new int[arcFromStopIds.length];
+        int[] toIdx = new int[arcFromStopIds.length];
+        Set<Long> seen = new HashSet<>();
+        int count = 0;
+        for (int i = 0; i < arcFromStopIds.length; i++) {
+            int f = stopIndexOf(arcFromStopIds[i]);
+            int t = stopIndexOf(arcToStopIds[i]);
+            if (f < 0 || t < 0) {
+                continue;
+            }
+            if (seen.add(((long) f << 32) | t)) {
+                from[count] = arcFromStopIds[i];
+                to[count] = arcToStopIds[i];
+                fromIdx[count] = f;
+                toIdx[count] = t;
+                count++;
+            }
+        }
+        this.arcFrom = Arrays.copyOf(from, count);
+        this.arcTo = Arrays.copyOf(to, count);
+        this.graph = new ArcGraph(stopIds.length, Arrays.copyOf(fromIdx, count), Arrays.copyOf(toIdx, count));
+        if ((long) count + (long) stopIds.length * stopIds.length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Demasiadas paradas para el índice denso de arcos");
+        }
+    }
+
+    // -1 si alguna de las paradas no existe
+    public int indexOf(int fromStopId, int toStopId) {
+        int f = stopIndexOf(fromStopId);
+        int t = stopIndexOf(toStopId);
+        if (f < 0 || t < 0) {
+            return -1;
+        }
+        int arc = graph.arcBetween(f, t);
+        return arc >= 0 ? arc : arcFrom.length + f * stopIds.length + t;
+    }
+
+    public boolean isGraphArc(int arcIdx) {
+        return arcIdx >= 0 && arcIdx < arcFrom.length;
+    }
+
+    public int fromStop(int arcIdx) {
+        return isGraphArc(arcIdx) ? arcFrom[arcIdx] : stopIds[(arcIdx - arcFrom.length) / stopIds.length];
+    }
+
+    public int toStop(int arcIdx) {
+        return isGraphArc(arcIdx) ? arcTo[arcIdx] : stopIds[(arcIdx - arcFrom.length) % stopIds.length];
+    }
+
+    public int graphArcCount() {
+        return arcFrom.length;
+    }
+
+    public int stopCount() {
+        return stopIds.length;
+    }
+
+    public int stopIndexOf(int stopId) {
+        int pos = Arrays.binarySearch(sortedStopIds, stopId);
+        return pos >= 0 ? sortedStopIdx[pos] : -1;
+    }
+
+    public int stopIdAt(int stopIdx) {
+        return stopIds[stopIdx];
+    }
+
+    // Adyacencia CSR de los arcos del grafo; el arco de cada arista es su índice denso en este índice
+    public ArcGraph graph() {
+        return graph;
+    }
+}
@@ -1,16 +1,21 @@
-package com.mio.model;
+package com.mio.ingest;
 
 public class BusHistory {
     public Integer lastStopId;
     public double lastLat;
     public double lastLon;
     public long lastTimestamp;
+    // Última detección del bus en lastStopId: desde ahí corre el recorrido hasta la parada siguiente
+    public long lastStopTimestamp;
 
     public BusHistory(Integer stopId, double lat, double lon, long timestamp) {
         this.lastStopId = stopId;
         this.lastLat = lat;
         this.lastLon = lon;
         this.lastTimestamp = timestamp;
+        if (stopId != null) {
+            this.lastStopTimestamp = timestamp;
+        }
     }
 
     public void update(Integer stopId, double lat, double lon, long timestamp) {
@@ -18,5 +23,8 @@ public class BusHistory {
         this.lastLat = lat;
         this.lastLon = lon;
         this.lastTimestamp = timestamp;
+        if (stopId != null) {
+            this.lastStopTimestamp = timestamp;
+        }
     }
 }
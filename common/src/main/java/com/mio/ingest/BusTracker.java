@@ -0,0 +1,93 @@
+package com.mio.ingest;
+
+import java.util.*;
+
+public class BusTracker {
+
+    // Arco detectado: el bus pasó de una parada a otra distinta
+    public static class Transition {
+        public int busId;
+        public int fromStopId;
+        public int toStopId;
+        public double fromLat;
+        public double fromLon;
+        public double toLat;
+        public double toLon;
+        public long fromTimestamp;
+        public long toTimestamp;
+        // Última detección del bus en fromStopId; fromTimestamp es su registro previo, que puede ser
+        // posterior si el bus se movió sin llegar a otra parada
+        public long departureTimestamp;
+    }
+
+    // Primera detección de parada de un bus dentro de un slice (y el registro previo del bus, si lo hubo)
+    public static class Head {
+        public int stopId;
+        public double lat;
+        public double lon;
+        public long timestamp;
+        public boolean hasPrevious;
+        public double prevLat;
+        public double prevLon;
+        public long prevTimestamp;
+    }
+
+    private final Map<Integer, BusHistory> histories = new HashMap<>();
+    private final Map<Integer, Head> heads;
+
+    public BusTracker(boolean recordHeads) {
+        this.heads = recordHeads ? new HashMap<>() : null;
+    }
+
+    public boolean observe(int busId, int stopId, double lat, double lon, long timestamp, Transition out) {
+        BusHistory history = histories.get(busId);
+        boolean hasPrevious = history != null;
+        if (history == null) {
+            history = new BusHistory(null, 0, 0, 0);
+            histories.put(busId, history);
+        }
+
+        boolean arc = false;
+        if (stopId >= 0) {
+            if (history.lastStopId != null && history.lastStopId != stopId) {
+                out.busId = busId;
+                out.fromStopId = history.lastStopId;
+                out.toStopId = stopId;
+                out.fromLat = history.lastLat;
+                out.fromLon = history.lastLon;
+                out.toLat = lat;
+                out.toLon = lon;
+                out.fromTimestamp = history.lastTimestamp;
+                out.toTimestamp = timestamp;
+                out.departureTimestamp = history.lastStopTimestamp;
+                arc = true;
+            } else if (history.lastStopId == null && heads != null) {
+                Head head = new Head();
+                head.stopId = stopId;
+                head.lat = lat;
+                head.lon = lon;
+                head.timestamp = timestamp;
+                head.hasPrevious = hasPrevious;
+                head.prevLat = history.lastLat;
+                head.prevLon = history.lastLon;
+                head.prevTimestamp = history.lastTimestamp;
+                heads.put(busId, head);
+            }
+            history.lastStopId = stopId;
+            history.lastStopTimestamp = timestamp;
+        }
+
+        history.lastLat = lat;
+        history.lastLon = lon;
+        history.lastTimestamp = timestamp;
+        return arc;
+    }
+
+    public Map<Integer, BusHistory> getHistories() {
+        return histories;
+    }
+
+    public Map<Integer, Head> getHeads() {
+        return heads != null ? heads : Collections.emptyMap();
+    }
+}
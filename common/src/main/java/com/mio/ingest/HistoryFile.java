@@ -0,0 +1,127 @@
+package com.mio.ingest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+public class HistoryFile {
+
+    public interface LineHandler {
+        void onLine(String line);
+    }
+
+    // Rango de bytes de un slice: contiene las líneas que empiezan en [offset, offset + length)
+    public static class Range {
+        public final long offset;
+        public final long length;
+
+        public Range(long offset, long length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    // Divide los datos (sin encabezado) en numSlices rangos; con maxLines > 0 solo cubre las primeras maxLines líneas
+    public static List<Range> plan(String path, int numSlices, long maxLines) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long dataStart = offsetAfterLines(channel, 0, 1);
+            long end = size;
+            if (maxLines > 0 && size - dataStart > maxLines) {
+                end = offsetAfterLines(channel, dataStart, maxLines);
+            }
+
+            List<Range> ranges = new ArrayList<>();
+            long total = end - dataStart;
+            long chunk = Math.max(1, (total + numSlices - 1) / numSlices);
+            for (long offset = dataStart; offset < end; offset += chunk) {
+                ranges.add(new Range(offset, Math.min(chunk, end - offset)));
+            }
+            return ranges;
+        }
+    }
+
+    private static long offsetAfterLines(FileChannel channel, long start, long lines) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long position = start;
+        long seen = 0;
+        while (seen < lines) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                return channel.size();
+            }
+            byte[] bytes = buffer.array();
+            for (int i = 0; i < read; i++) {
+                if (bytes[i] == '\n' && ++seen == lines) {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return position;
+    }
+
+    // Lee las líneas que empiezan dentro del rango y retorna cuántas se entregaron al handler
+    public static long readSlice(String path, long offset, long length, LineHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            long end = Math.min(offset + length, channel.size());
+            long position = offset;
+            if (offset > 0) {
+                ByteBuffer previous = ByteBuffer.allocate(1);
+                channel.read(previous, offset - 1);
+                if (previous.get(0) != '\n') {
+                    position = offsetAfterLines(channel, offset, 1);
+                }
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            byte[] line = new byte[256];
+            int lineLength = 0;
+            long lineStart = position;
+            long linesRead = 0;
+
+            while (lineStart < end) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                byte[] bytes = buffer.array();
+                for (int i = 0; i < read && lineStart < end; i++) {
+                    byte b = bytes[i];
+                    if (b == '\n') {
+                        handler.onLine(toString(line, lineLength));
+                        linesRead++;
+                        lineLength = 0;
+                        lineStart = position + i + 1;
+                    } else {
+                        if (lineLength == line.length) {
+                            line = Arrays.copyOf(line, line.length * 2);
+                        }
+                        line[lineLength++] = b;
+                    }
+                }
+                position += read;
+            }
+            if (lineLength > 0 && lineStart < end) {
+                handler.onLine(toString(line, lineLength));
+                linesRead++;
+            }
+            return linesRead;
+        }
+    }
+
+    private static String toString(byte[] line, int length) {
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+}
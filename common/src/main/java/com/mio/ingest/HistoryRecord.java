@@ -0,0 +1,49 @@
+package com.mio.ingest;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
+public class HistoryRecord {
+    public int busId;
+    public double lat;
+    public double lon;
+    public long timestamp;
+    public String dateTime;
+
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+    // Parsea una línea del archivo de historia; false si está incompleta o fuera de rango
+    public boolean parse(String line) {
+        line = line.trim();
+        if (line.isEmpty()) {
+            return false;
+        }
+        String[] parts = line.split(",");
+        if (parts.length < 12) {
+            return false;
+        }
+        try {
+            lat = Double.parseDouble(parts[4]) / 1e7;
+            lon = Double.parseDouble(parts[5]) / 1e7;
+            busId = Integer.parseInt(parts[11]);
+            dateTime = parts[10];
+            timestamp = parseTimestamp(dateTime);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        return Math.abs(lat) <= 90 && Math.abs(lon) <= 180;
+    }
+
+    private long parseTimestamp(String value) {
+        try {
+            if (value.contains("-")) {
+                return dateFormat.parse(value).getTime();
+            }
+            return Long.parseLong(value);
+        } catch (ParseException | NumberFormatException e) {
+            System.err.println("[ERROR PARSE FECHA] No se pudo parsear: '" + value
+                    + "'. Usando System.currentTimeMillis(). Error: " + e.getMessage());
+            return System.currentTimeMillis();
+        }
+    }
+}
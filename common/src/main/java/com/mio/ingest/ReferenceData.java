@@ -0,0 +1,106 @@
+package com.mio.ingest;
+
+// Datos de referencia replicados en los workers (paradas, arcos y longitudes) bajo una versión del grafo
+public class ReferenceData {
+
+    private final long version;
+    private final int[] stopIds;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final ArcIndex arcs;
+    private final double[] arcLengthsKm;
+    private final StopLocator locator;
+
+    // Con arcLengthsKm null las longitudes de los arcos del grafo se calculan desde las paradas
+    public ReferenceData(long version, int[] stopIds, double[] latitudes, double[] longitudes,
+            int[] arcFromStopIds, int[] arcToStopIds, double[] arcLengthsKm) {
+        this.version = version;
+        this.stopIds = stopIds;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.arcs = new ArcIndex(stopIds, arcFromStopIds, arcToStopIds);
+        this.locator = new StopLocator(stopIds, latitudes, longitudes, StopLocator.DEFAULT_PROXIMITY_KM);
+        if (arcLengthsKm != null && arcLengthsKm.length == arcs.graphArcCount()) {
+            this.arcLengthsKm = arcLengthsKm;
+        } else {
+            this.arcLengthsKm = new double[arcs.graphArcCount()];
+            for (int i = 0; i < this.arcLengthsKm.length; i++) {
+                this.arcLengthsKm[i] = stopDistanceKm(arcs.fromStop(i), arcs.toStop(i));
+            }
+        }
+    }
+
+    // Versión derivada del contenido: reconstruir el mismo grafo no invalida las cachés de los workers
+    public static long versionOf(int[] stopIds, double[] latitudes, double[] longitudes, int[] arcFromStopIds,
+            int[] arcToStopIds) {
+        long h = 1125899906842597L;
+        for (int i = 0; i < stopIds.length; i++) {
+            h = 31 * h + stopIds[i];
+            h = 31 * h + Double.doubleToLongBits(latitudes[i]);
+            h = 31 * h + Double.doubleToLongBits(longitudes[i]);
+        }
+        for (int i = 0; i < arcFromStopIds.length; i++) {
+            h = 31 * h + arcFromStopIds[i];
+            h = 31 * h + arcToStopIds[i];
+        }
+        return h == 0 ? 1 : h;
+    }
+
+    private double stopDistanceKm(int fromStopId, int toStopId) {
+        int f = arcs.stopIndexOf(fromStopId);
+        int t = arcs.stopIndexOf(toStopId);
+        return StopLocator.haversine(latitudes[f], longitudes[f], latitudes[t], longitudes[t]);
+    }
+
+    public double arcLengthKm(int arcIdx) {
+        if (arcs.isGraphArc(arcIdx)) {
+            return arcLengthsKm[arcIdx];
+        }
+        return stopDistanceKm(arcs.fromStop(arcIdx), arcs.toStop(arcIdx));
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public ArcIndex getArcs() {
+        return arcs;
+    }
+
+    public StopLocator getLocator() {
+        return locator;
+    }
+
+    public int[] getStopIds() {
+        return stopIds;
+    }
+
+    public double[] getLatitudes() {
+        return latitudes;
+    }
+
+    public double[] getLongitudes() {
+        return longitudes;
+    }
+
+    // Arcos del grafo en orden de índice denso (para replicar el mismo índice en otro proceso)
+    public int[] getGraphArcFrom() {
+        int[] from = new int[arcs.graphArcCount()];
+        for (int i = 0; i < from.length; i++) {
+            from[i] = arcs.fromStop(i);
+        }
+        return from;
+    }
+
+    public int[] getGraphArcTo() {
+        int[] to = new int[arcs.graphArcCount()];
+        for (int i = 0; i < to.length; i++) {
+            to[i] = arcs.toStop(i);
+        }
+        return to;
+    }
+
+    public double[] getArcLengthsKm() {
+        return arcLengthsKm;
+    }
+}
@@ -0,0 +1,42 @@
+package com.mio.ingest;
+
+import java.io.IOException;
+
+public class SliceScanner {
+
+    public interface ArcHandler {
+        void onArc(BusTracker.Transition transition);
+    }
+
+    private final StopLocator locator;
+    private final BusTracker tracker = new BusTracker(true);
+    private long validLines;
+
+    public SliceScanner(StopLocator locator) {
+        this.locator = locator;
+    }
+
+    // Recorre las líneas del rango detectando arcos; los buses que cruzan el borde quedan en getTracker()
+    public long scan(String path, long offset, long length, ArcHandler handler) throws IOException {
+        HistoryRecord record = new HistoryRecord();
+        BusTracker.Transition transition = new BusTracker.Transition();
+        return HistoryFile.readSlice(path, offset, length, line -> {
+            if (!record.parse(line)) {
+                return;
+            }
+            validLines++;
+            int stopId = locator.nearestStop(record.lat, record.lon);
+            if (tracker.observe(record.busId, stopId, record.lat, record.lon, record.timestamp, transition)) {
+                handler.onArc(transition);
+            }
+        });
+    }
+
+    public BusTracker getTracker() {
+        return tracker;
+    }
+
+    public long getValidLines() {
+        return validLines;
+    }
+}
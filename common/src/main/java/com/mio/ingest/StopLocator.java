@@ -0,0 +1,94 @@
+package com.mio.ingest;
+
+import java.util.*;
+
+public class StopLocator {
+
+    public static final double DEFAULT_PROXIMITY_KM = 0.05;
+
+    private static final double EARTH_RADIUS_KM = 6371.0;
+    private static final int CELLS_PER_DEGREE = 200;
+
+    private final int[] stopIds;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final Map<Long, int[]> grid = new HashMap<>();
+    private final Map<Integer, double[]> coordinates = new HashMap<>();
+    private final double proximityKm;
+
+    public StopLocator(int[] stopIds, double[] latitudes, double[] longitudes, double proximityKm) {
+        this.stopIds = stopIds;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.proximityKm = proximityKm;
+        Map<Long, List<Integer>> cells = new LinkedHashMap<>();
+        for (int i = 0; i < stopIds.length; i++) {
+            coordinates.put(stopIds[i], new double[] { latitudes[i], longitudes[i] });
+            long key = cellKey((int) (latitudes[i] * CELLS_PER_DEGREE), (int) (longitudes[i] * CELLS_PER_DEGREE));
+            cells.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+        }
+        for (Map.Entry<Long, List<Integer>> entry : cells.entrySet()) {
+            grid.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    // Parada más cercana dentro del radio de proximidad (celda propia + 8 vecinas), -1 si no hay
+    public int nearestStop(double lat, double lon) {
+        int centerLat = (int) (lat * CELLS_PER_DEGREE);
+        int centerLon = (int) (lon * CELLS_PER_DEGREE);
+        double minDistance = Double.MAX_VALUE;
+        int nearest = -1;
+
+        for (int dLat = -1; dLat <= 1; dLat++) {
+            for (int dLon = -1; dLon <= 1; dLon++) {
+                int[] stopsInCell = grid.get(cellKey(centerLat + dLat, centerLon + dLon));
+                if (stopsInCell == null) {
+                    continue;
+                }
+                for (int idx : stopsInCell) {
+                    double distance = haversine(lat, lon, latitudes[idx], longitudes[idx]);
+                    if (distance < minDistance && distance <= proximityKm) {
+                        minDistance = distance;
+                        nearest = stopIds[idx];
+                    }
+                }
+            }
+        }
+        return nearest;
+    }
+
+    public double[] coordinatesOf(int stopId) {
+        return coordinates.get(stopId);
+    }
+
+    public int size() {
+        return stopIds.length;
+    }
+
+    public int cellCount() {
+        return grid.size();
+    }
+
+    public static String cellLabel(double lat, double lon) {
+        return (int) (lat * CELLS_PER_DEGREE) + "," + (int) (lon * CELLS_PER_DEGREE);
+    }
+
+    private static long cellKey(int latCell, int lonCell) {
+        return ((long) latCell << 32) ^ (lonCell & 0xffffffffL);
+    }
+
+    public static double haversine(double lat1, double lon1, double lat2, double lon2) {
+        double lat1Rad = Math.toRadians(lat1);
+        double lat2Rad = Math.toRadians(lat2);
+        double deltaLat = Math.toRadians(lat2 - lat1);
+        double deltaLon = Math.toRadians(lon2 - lon1);
+
+        double a = Math.sin(deltaLat / 2) * Math.sin(deltaLat / 2) +
+                Math.cos(lat1Rad) * Math.cos(lat2Rad) *
+                        Math.sin(deltaLon / 2) * Math.sin(deltaLon / 2);
+
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+
+        return EARTH_RADIUS_KM * c;
+    }
+}
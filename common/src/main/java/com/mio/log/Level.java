@@ -0,0 +1,16 @@
+package com.mio.log;
+
+public enum Level {
+    DEBUG, INFO, WARN, ERROR, OFF;
+
+    public static Level parse(String value, Level fallback) {
+        if (value == null || value.trim().isEmpty()) {
+            return fallback;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return fallback;
+        }
+    }
+}
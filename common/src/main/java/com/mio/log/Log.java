@@ -0,0 +1,228 @@
+package com.mio.log;
+
+import java.io.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Log asíncrono: las llamadas solo comprueban el nivel y encolan la plantilla con sus argumentos
+// en un buffer circular sin locks; un hilo de fondo formatea y escribe en consola. Si el buffer
+// se llena o un logger supera su límite de líneas por segundo, el mensaje se descarta y se
+// informa el total descartado. WARN y ERROR no se limitan por tasa.
+// En caminos calientes conviene guardar con isDebugEnabled() para no construir los argumentos
+public final class Log {
+
+    private static final int BUFFER_ENTRIES = 16_384;
+    private static final int DRAIN_BATCH = 1_024;
+    private static final long IDLE_NANOS = 2_000_000;
+
+    private static volatile int threshold = Level.INFO.ordinal();
+    private static volatile int maxLinesPerSecond;
+
+    private static final LogRing RING = new LogRing(BUFFER_ENTRIES);
+    private static final AtomicLong DROPPED = new AtomicLong();
+    private static final Writer WRITER = new Writer();
+
+    static {
+        WRITER.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(WRITER::close, "mio-log-shutdown"));
+    }
+
+    private final String name;
+    private final AtomicLong window = new AtomicLong();
+    private final AtomicInteger linesInWindow = new AtomicInteger();
+
+    private Log(String name) {
+        this.name = name;
+    }
+
+    public static Log get(String name) {
+        return new Log(name);
+    }
+
+    // maxLinesPerSecond <= 0: sin límite de tasa
+    public static void configure(Level level, int maxLinesPerSecond) {
+        Log.threshold = level.ordinal();
+        Log.maxLinesPerSecond = maxLinesPerSecond;
+    }
+
+    public static boolean isEnabled(Level level) {
+        return level.ordinal() >= threshold;
+    }
+
+    public boolean isDebugEnabled() {
+        return Level.DEBUG.ordinal() >= threshold;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void debug(String message) {
+        if (Level.DEBUG.ordinal() >= threshold) {
+            enqueue(Level.DEBUG, message, null);
+        }
+    }
+
+    public void debug(String template, Object... args) {
+        if (Level.DEBUG.ordinal() >= threshold) {
+            enqueue(Level.DEBUG, template, args);
+        }
+    }
+
+    public void info(String message) {
+        if (Level.INFO.ordinal() >= threshold) {
+            enqueue(Level.INFO, message, null);
+        }
+    }
+
+    public void info(String template, Object... args) {
+        if (Level.INFO.ordinal() >= threshold) {
+            enqueue(Level.INFO, template, args);
+        }
+    }
+
+    public void warn(String message) {
+        if (Level.WARN.ordinal() >= threshold) {
+            enqueue(Level.WARN, message, null);
+        }
+    }
+
+    public void warn(String template, Object... args) {
+        if (Level.WARN.ordinal() >= threshold) {
+            enqueue(Level.WARN, template, args);
+        }
+    }
+
+    public void error(String message) {
+        if (Level.ERROR.ordinal() >= threshold) {
+            enqueue(Level.ERROR, message, null);
+        }
+    }
+
+    // La traza se arma en el hilo que llama: los errores son raros y la excepción puede cambiar después
+    public void error(String message, Throwable error) {
+        if (Level.ERROR.ordinal() >= threshold) {
+            StringWriter trace = new StringWriter();
+            error.printStackTrace(new PrintWriter(trace));
+            enqueue(Level.ERROR, message + System.lineSeparator() + trace.toString().trim(), null);
+        }
+    }
+
+    private void enqueue(Level level, String template, Object[] args) {
+        if (level.ordinal() < Level.WARN.ordinal() && !withinRate()) {
+            DROPPED.incrementAndGet();
+            return;
+        }
+        if (!RING.offer(level, template, args)) {
+            DROPPED.incrementAndGet();
+        }
+    }
+
+    private boolean withinRate() {
+        int limit = maxLinesPerSecond;
+        if (limit <= 0) {
+            return true;
+        }
+        long second = System.currentTimeMillis() / 1000;
+        long current = window.get();
+        if (current != second && window.compareAndSet(current, second)) {
+            linesInWindow.set(0);
+        }
+        return linesInWindow.incrementAndGet() <= limit;
+    }
+
+    // Espera (acotada) a que el escritor vacíe el buffer, p. ej. antes de imprimir un reporte directo
+    public static void flush() {
+        long target = RING.reserved();
+        long deadline = System.nanoTime() + 1_000_000_000L;
+        while (WRITER.isAlive() && WRITER.flushed < target && System.nanoTime() < deadline) {
+            LockSupport.unpark(WRITER);
+            LockSupport.parkNanos(100_000);
+        }
+    }
+
+    // Muestreo por sitio de llamada: deja pasar los primeros `first` eventos y luego uno de cada `every`
+    public static final class Sampler {
+        private final long first;
+        private final long every;
+        private final AtomicLong seen = new AtomicLong();
+
+        private Sampler(long first, long every) {
+            this.first = first;
+            this.every = every;
+        }
+
+        public static Sampler first(long first) {
+            return new Sampler(first, 0);
+        }
+
+        public static Sampler every(long every) {
+            return new Sampler(0, every);
+        }
+
+        public static Sampler of(long first, long every) {
+            return new Sampler(first, every);
+        }
+
+        public boolean sample() {
+            long n = seen.getAndIncrement();
+            return n < first || (every > 0 && (n - first) % every == 0);
+        }
+    }
+
+    private static final class Writer extends Thread implements LogRing.Reader {
+        private final PrintStream out = new PrintStream(
+                new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+        private final PrintStream err = new PrintStream(
+                new BufferedOutputStream(new FileOutputStream(FileDescriptor.err), 1 << 12), false);
+        private volatile boolean closing;
+        private volatile long flushed;
+
+        Writer() {
+            super("mio-log-writer");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                if (RING.drain(this, DRAIN_BATCH) > 0) {
+                    continue;
+                }
+                long dropped = DROPPED.getAndSet(0);
+                if (dropped > 0) {
+                    out.println("[Log] " + dropped + " mensajes descartados (limite de tasa o buffer lleno)");
+                }
+                out.flush();
+                err.flush();
+                flushed = RING.consumed();
+                if (closing) {
+                    return;
+                }
+                LockSupport.parkNanos(this, IDLE_NANOS);
+            }
+        }
+
+        @Override
+        public void read(Level level, String template, Object[] args) {
+            String line;
+            try {
+                line = args == null ? template : String.format(template, args);
+            } catch (RuntimeException e) {
+                line = template + " (formato invalido: " + e.getMessage() + ")";
+            }
+            (level == Level.ERROR ? err : out).println(line);
+        }
+
+        void close() {
+            closing = true;
+            LockSupport.unpark(this);
+            try {
+                join(2_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.mio.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Buffer circular acotado, sin locks, de varios productores y un solo consumidor (el escritor).
+// Cada celda lleva un número de secuencia: el productor reserva una posición con CAS sobre tail y
+// la publica al escribir la secuencia; si el buffer está lleno offer retorna false en vez de bloquear
+final class LogRing {
+
+    static final class Entry {
+        Level level;
+        String template;
+        Object[] args;
+    }
+
+    private final Entry[] entries;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    LogRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        entries = new Entry[size];
+        sequences = new AtomicLongArray(size);
+        mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            entries[i] = new Entry();
+            sequences.set(i, i);
+        }
+    }
+
+    boolean offer(Level level, String template, Object[] args) {
+        long pos = tail.get();
+        while (true) {
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    Entry entry = entries[index];
+                    entry.level = level;
+                    entry.template = template;
+                    entry.args = args;
+                    sequences.set(index, pos + 1);
+                    return true;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+    }
+
+    // Posiciones reservadas hasta ahora (incluye las que aún se están escribiendo)
+    long reserved() {
+        return tail.get();
+    }
+
+    // Posiciones ya entregadas al lector
+    long consumed() {
+        return head;
+    }
+
+    interface Reader {
+        void read(Level level, String template, Object[] args);
+    }
+
+    // Solo desde el hilo escritor; retorna cuántas entradas consumió
+    int drain(Reader reader, int max) {
+        int read = 0;
+        while (read < max) {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) {
+                break;
+            }
+            Entry entry = entries[index];
+            Level level = entry.level;
+            String template = entry.template;
+            Object[] args = entry.args;
+            entry.template = null;
+            entry.args = null;
+            sequences.set(index, head + mask + 1);
+            head++;
+            reader.read(level, template, args);
+            read++;
+        }
+        return read;
+    }
+}
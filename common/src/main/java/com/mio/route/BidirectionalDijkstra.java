@@ -0,0 +1,97 @@
+package com.mio.route;
+
+import com.mio.ingest.ArcGraph;
+
+// Dijkstra bidireccional sobre el CSR del grafo: hacia adelante por las aristas salientes desde el
+// origen y hacia atrás por las entrantes desde el destino, avanzando siempre el lado con menor
+// clave. Termina cuando las dos claves suman al menos el mejor encuentro. Sin preprocesamiento:
+// sirve de respaldo de la jerarquía y para cambiar los pesos sin ningún costo
+public final class BidirectionalDijkstra {
+
+    private static final class Scratch {
+        final SearchSpace forward = new SearchSpace();
+        final SearchSpace backward = new SearchSpace();
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final ArcGraph graph;
+    private final double[] weights;
+
+    // weights por arco denso; un peso infinito o NaN deja el arco fuera de los caminos
+    public BidirectionalDijkstra(ArcGraph graph, double[] weights) {
+        this.graph = graph;
+        this.weights = weights;
+    }
+
+    public ShortestPath query(int from, int to) {
+        if (from == to) {
+            return new ShortestPath(0, new int[0]);
+        }
+        Scratch scratch = SCRATCH.get();
+        SearchSpace forward = scratch.forward;
+        SearchSpace backward = scratch.backward;
+        forward.reset(graph.stopCount());
+        backward.reset(graph.stopCount());
+        forward.relax(from, 0, -1, -1);
+        backward.relax(to, 0, -1, -1);
+
+        double best = SearchSpace.INF;
+        int meet = -1;
+        while (true) {
+            double forwardKey = forward.minKey();
+            double backwardKey = backward.minKey();
+            if (forwardKey + backwardKey >= best) {
+                break; // También cuando un lado se agotó (clave infinita)
+            }
+            if (forwardKey <= backwardKey) {
+                int stop = forward.poll();
+                for (int e = graph.firstEdge(stop), end = graph.endEdge(stop); e < end; e++) {
+                    int target = graph.target(e);
+                    int arc = graph.arcId(e);
+                    forward.relax(target, forwardKey + weights[arc], stop, arc);
+                    double through = forward.dist[target] + backward.dist[target];
+                    if (through < best) {
+                        best = through;
+                        meet = target;
+                    }
+                }
+            } else {
+                int stop = backward.poll();
+                for (int e = graph.firstInEdge(stop), end = graph.endInEdge(stop); e < end; e++) {
+                    int source = graph.source(e);
+                    int arc = graph.inArcId(e);
+                    backward.relax(source, backwardKey + weights[arc], stop, arc);
+                    double through = forward.dist[source] + backward.dist[source];
+                    if (through < best) {
+                        best = through;
+                        meet = source;
+                    }
+                }
+            }
+        }
+        if (meet < 0) {
+            return ShortestPath.NOT_FOUND;
+        }
+
+        // Origen..meet sale de los padres hacia adelante (en reversa); meet..destino, de los de atrás
+        int head = 0;
+        for (int s = meet; forward.parent[s] >= 0; s = forward.parent[s]) {
+            head++;
+        }
+        int length = head;
+        for (int s = meet; backward.parent[s] >= 0; s = backward.parent[s]) {
+            length++;
+        }
+        int[] arcs = new int[length];
+        int i = head;
+        for (int s = meet; forward.parent[s] >= 0; s = forward.parent[s]) {
+            arcs[--i] = forward.via[s];
+        }
+        i = head;
+        for (int s = meet; backward.parent[s] >= 0; s = backward.parent[s]) {
+            arcs[i++] = backward.via[s];
+        }
+        return new ShortestPath(best, arcs);
+    }
+}
@@ -0,0 +1,343 @@
+package com.mio.route;
+
+import com.mio.ingest.ArcGraph;
+import java.util.*;
+
+// Jerarquía de contracción personalizable. El preprocesamiento depende solo de la topología: ordena
+// las paradas por grado mínimo (contrayendo primero las de menos vecinos), agrega los atajos que
+// deja cada contracción y guarda los triángulos inferiores de cada arista. Los pesos se aplican
+// aparte con customize(): un recorrido lineal por los triángulos, sin volver a ordenar ni a buscar
+// atajos, así un cambio de velocidades cuesta milisegundos. Las consultas solo suben de rango desde
+// el origen y desde el destino y se encuentran en la parada más alta del camino
+public final class ContractionHierarchy {
+
+    private static final class Scratch {
+        final SearchSpace forward = new SearchSpace();
+        final SearchSpace backward = new SearchSpace();
+        int[] stack = new int[64];
+        int[] arcs = new int[64];
+        int arcCount;
+
+        void add(int arc) {
+            if (arcCount == arcs.length) {
+                arcs = Arrays.copyOf(arcs, arcCount * 2);
+            }
+            arcs[arcCount++] = arc;
+        }
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final int stopCount;
+    private final int arcCount;
+    private final int[] rank;
+    // Aristas de cada parada hacia vecinos de mayor rango, ordenadas por parada destino
+    private final int[] offsets;
+    private final int[] targets;
+    // Arista del CH que representa cada arco original (-1 en lazos) y si la recorre hacia arriba
+    private final int[] arcEdge;
+    private final boolean[] arcUpward;
+    // Triángulo t = (v, u, w) con rango v < u < w: aristas v-u, v-w y u-w, en orden creciente de v
+    private final int[] triangles;
+
+    public ContractionHierarchy(ArcGraph graph) {
+        this.stopCount = graph.stopCount();
+        this.arcCount = graph.edgeCount();
+        List<Set<Integer>> neighbors = new ArrayList<>(stopCount);
+        for (int s = 0; s < stopCount; s++) {
+            neighbors.add(new HashSet<>());
+        }
+        for (int s = 0; s < stopCount; s++) {
+            for (int e = graph.firstEdge(s), end = graph.endEdge(s); e < end; e++) {
+                int t = graph.target(e);
+                if (t != s) {
+                    neighbors.get(s).add(t);
+                    neighbors.get(t).add(s);
+                }
+            }
+        }
+
+        // Grado mínimo con relleno: al contraer v sus vecinos restantes quedan unidos entre sí
+        this.rank = new int[stopCount];
+        int[][] upward = new int[stopCount][];
+        boolean[] contracted = new boolean[stopCount];
+        PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0])
+                : Long.compare(a[1], b[1]));
+        for (int s = 0; s < stopCount; s++) {
+            queue.add(new long[] { neighbors.get(s).size(), s });
+        }
+        int next = 0;
+        while (!queue.isEmpty()) {
+            long[] entry = queue.poll();
+            int v = (int) entry[1];
+            if (contracted[v] || entry[0] != neighbors.get(v).size()) {
+                continue; // Entrada obsoleta: el grado cambió después de encolarla
+            }
+            contracted[v] = true;
+            rank[v] = next++;
+            int[] up = neighbors.get(v).stream().mapToInt(Integer::intValue).sorted().toArray();
+            upward[v] = up;
+            for (int u : up) {
+                Set<Integer> uNeighbors = neighbors.get(u);
+                uNeighbors.remove(v);
+                for (int w : up) {
+                    if (w != u) {
+                        uNeighbors.add(w);
+                    }
+                }
+            }
+            for (int u : up) {
+                queue.add(new long[] { neighbors.get(u).size(), u });
+            }
+            neighbors.get(v).clear();
+        }
+
+        this.offsets = new int[stopCount + 1];
+        for (int s = 0; s < stopCount; s++) {
+            offsets[s + 1] = offsets[s] + upward[s].length;
+        }
+        this.targets = new int[offsets[stopCount]];
+        for (int s = 0; s < stopCount; s++) {
+            System.arraycopy(upward[s], 0, targets, offsets[s], upward[s].length);
+        }
+
+        this.arcEdge = new int[arcCount];
+        this.arcUpward = new boolean[arcCount];
+        for (int s = 0; s < stopCount; s++) {
+            for (int e = graph.firstEdge(s), end = graph.endEdge(s); e < end; e++) {
+                int t = graph.target(e);
+                int arc = graph.arcId(e);
+                if (t == s) {
+                    arcEdge[arc] = -1;
+                } else if (rank[s] < rank[t]) {
+                    arcEdge[arc] = edge(s, t);
+                    arcUpward[arc] = true;
+                } else {
+                    arcEdge[arc] = edge(t, s);
+                }
+            }
+        }
+
+        // Los vecinos superiores de v forman una clique, así que la arista u-w siempre existe
+        int[] byRank = new int[stopCount];
+        for (int s = 0; s < stopCount; s++) {
+            byRank[rank[s]] = s;
+        }
+        int triangleCount = 0;
+        for (int s = 0; s < stopCount; s++) {
+            long degree = upward[s].length;
+            triangleCount = Math.toIntExact(triangleCount + degree * (degree - 1) / 2);
+        }
+        this.triangles = new int[Math.multiplyExact(triangleCount, 3)];
+        int t = 0;
+        for (int v : byRank) {
+            for (int i = offsets[v]; i < offsets[v + 1]; i++) {
+                for (int j = i + 1; j < offsets[v + 1]; j++) {
+                    int lower = rank[targets[i]] < rank[targets[j]] ? i : j;
+                    int upper = lower == i ? j : i;
+                    triangles[t++] = lower;
+                    triangles[t++] = upper;
+                    triangles[t++] = edge(targets[lower], targets[upper]);
+                }
+            }
+        }
+    }
+
+    // Arista de low hacia high (rank[low] < rank[high]); búsqueda binaria en la fila de low
+    private int edge(int low, int high) {
+        int e = Arrays.binarySearch(targets, offsets[low], offsets[low + 1], high);
+        if (e < 0) {
+            throw new IllegalStateException("Falta la arista " + low + "-" + high + " en la jerarquia");
+        }
+        return e;
+    }
+
+    public int stopCount() {
+        return stopCount;
+    }
+
+    // Aristas del CH, originales y atajos
+    public int edgeCount() {
+        return targets.length;
+    }
+
+    public int shortcutCount() {
+        int original = 0;
+        boolean[] seen = new boolean[targets.length];
+        for (int e : arcEdge) {
+            if (e >= 0 && !seen[e]) {
+                seen[e] = true;
+                original++;
+            }
+        }
+        return targets.length - original;
+    }
+
+    public int triangleCount() {
+        return triangles.length / 3;
+    }
+
+    // Pesos por arco denso (infinito o NaN: arco inutilizable). No modifica la jerarquía, así que
+    // varias métricas pueden convivir y las consultas en curso siguen con la suya
+    public Metric customize(double[] arcWeights) {
+        if (arcWeights.length != arcCount) {
+            throw new IllegalArgumentException("Se esperaban " + arcCount + " pesos, llegaron " + arcWeights.length);
+        }
+        int edges = targets.length;
+        double[] up = new double[edges];
+        double[] down = new double[edges];
+        int[] upVia = new int[edges];
+        int[] downVia = new int[edges];
+        Arrays.fill(up, SearchSpace.INF);
+        Arrays.fill(down, SearchSpace.INF);
+        for (int arc = 0; arc < arcCount; arc++) {
+            int e = arcEdge[arc];
+            double w = arcWeights[arc];
+            if (e < 0 || !(w < SearchSpace.INF)) {
+                continue;
+            }
+            if (arcUpward[arc] && w < up[e]) {
+                up[e] = w;
+                upVia[e] = arc;
+            } else if (!arcUpward[arc] && w < down[e]) {
+                down[e] = w;
+                downVia[e] = arc;
+            }
+        }
+
+        // up[e]: de la parada baja a la alta; down[e]: al revés. Un via negativo es -(t + 1) con t el
+        // triángulo cuyo vértice inferior da el atajo; uno no negativo, el arco original
+        for (int t = 0; t < triangles.length; t += 3) {
+            int lower = triangles[t];
+            int upper = triangles[t + 1];
+            int top = triangles[t + 2];
+            double through = down[lower] + up[upper];
+            if (through < up[top]) {
+                up[top] = through;
+                upVia[top] = -(t / 3 + 1);
+            }
+            through = down[upper] + up[lower];
+            if (through < down[top]) {
+                down[top] = through;
+                downVia[top] = -(t / 3 + 1);
+            }
+        }
+        return new Metric(up, down, upVia, downVia);
+    }
+
+    // Pesos ya personalizados sobre esta jerarquía; inmutable y seguro para consultas concurrentes
+    public final class Metric {
+
+        private final double[] up;
+        private final double[] down;
+        private final int[] upVia;
+        private final int[] downVia;
+
+        private Metric(double[] up, double[] down, int[] upVia, int[] downVia) {
+            this.up = up;
+            this.down = down;
+            this.upVia = upVia;
+            this.downVia = downVia;
+        }
+
+        public ShortestPath query(int from, int to) {
+            if (from == to) {
+                return new ShortestPath(0, new int[0]);
+            }
+            Scratch scratch = SCRATCH.get();
+            SearchSpace forward = scratch.forward;
+            SearchSpace backward = scratch.backward;
+            forward.reset(stopCount);
+            backward.reset(stopCount);
+            forward.relax(from, 0, -1, -1);
+            backward.relax(to, 0, -1, -1);
+
+            // Cada lado sigue hasta que su clave alcanza el mejor encuentro: en una búsqueda solo
+            // hacia arriba la parada de encuentro no tiene por qué asentarse primero
+            double best = SearchSpace.INF;
+            int meet = -1;
+            while (true) {
+                double forwardKey = forward.minKey();
+                double backwardKey = backward.minKey();
+                boolean forwardDone = forwardKey >= best;
+                boolean backwardDone = backwardKey >= best;
+                if (forwardDone && backwardDone) {
+                    break;
+                }
+                boolean stepForward = !forwardDone && (backwardDone || forwardKey <= backwardKey);
+                SearchSpace side = stepForward ? forward : backward;
+                SearchSpace other = stepForward ? backward : forward;
+                double[] weights = stepForward ? up : down;
+                double key = stepForward ? forwardKey : backwardKey;
+                int stop = side.poll();
+                double through = key + other.dist[stop];
+                if (through < best) {
+                    best = through;
+                    meet = stop;
+                }
+                for (int e = offsets[stop], end = offsets[stop + 1]; e < end; e++) {
+                    side.relax(targets[e], key + weights[e], stop, e);
+                }
+            }
+            if (meet < 0) {
+                return ShortestPath.NOT_FOUND;
+            }
+
+            scratch.arcCount = 0;
+            // Subida desde el origen: las aristas se recorren hacia arriba, de meet hacia atrás
+            int head = 0;
+            for (int s = meet; forward.parent[s] >= 0; s = forward.parent[s]) {
+                head++;
+            }
+            if (scratch.stack.length < head) {
+                scratch.stack = new int[head * 2];
+            }
+            int i = 0;
+            for (int s = meet; forward.parent[s] >= 0; s = forward.parent[s]) {
+                scratch.stack[i++] = forward.via[s];
+            }
+            int[] ascent = Arrays.copyOf(scratch.stack, head);
+            for (i = head - 1; i >= 0; i--) {
+                unpack(scratch, ascent[i], true);
+            }
+            // Bajada hacia el destino: cada arista de la búsqueda de atrás se recorre hacia abajo
+            for (int s = meet; backward.parent[s] >= 0; s = backward.parent[s]) {
+                unpack(scratch, backward.via[s], false);
+            }
+            return new ShortestPath(best, Arrays.copyOf(scratch.arcs, scratch.arcCount));
+        }
+
+        // Agrega los arcos originales de la arista e, en el sentido dado, a la salida del scratch
+        private void unpack(Scratch scratch, int e, boolean upward) {
+            int[] stack = scratch.stack;
+            int depth = 0;
+            stack[depth++] = e << 1 | (upward ? 1 : 0);
+            while (depth > 0) {
+                int entry = stack[--depth];
+                int edge = entry >>> 1;
+                boolean isUp = (entry & 1) != 0;
+                int via = isUp ? upVia[edge] : downVia[edge];
+                if (via >= 0) {
+                    scratch.add(via);
+                    continue;
+                }
+                // Atajo por el vértice inferior x del triángulo: bajo -> x -> alto, o alto -> x -> bajo
+                int t = (-via - 1) * 3;
+                int lower = triangles[t];
+                int upper = triangles[t + 1];
+                if (depth + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                    scratch.stack = stack;
+                }
+                // La pila es LIFO: primero se apila el tramo que va segundo
+                if (isUp) {
+                    stack[depth++] = upper << 1 | 1;
+                    stack[depth++] = lower << 1;
+                } else {
+                    stack[depth++] = lower << 1 | 1;
+                    stack[depth++] = upper << 1;
+                }
+            }
+        }
+    }
+}
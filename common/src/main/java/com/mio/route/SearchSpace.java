@@ -0,0 +1,112 @@
+package com.mio.route;
+
+import java.util.Arrays;
+
+// Estado de una búsqueda de Dijkstra en una dirección, reutilizado entre consultas del mismo hilo:
+// las distancias se reinician solo en los nodos tocados y el heap admite entradas repetidas (la
+// obsoleta se descarta al salir), así una consulta no asigna memoria
+final class SearchSpace {
+
+    static final double INF = Double.POSITIVE_INFINITY;
+
+    double[] dist = new double[0];
+    int[] parent = new int[0];      // Nodo desde el que se llegó (-1 en el origen)
+    int[] via = new int[0];         // Arista o arco usado para llegar
+    private int[] touched = new int[0];
+    private int touchedCount;
+    private int[] heapNodes = new int[64];
+    private double[] heapKeys = new double[64];
+    private int heapSize;
+
+    void reset(int nodeCount) {
+        if (dist.length < nodeCount) {
+            dist = new double[nodeCount];
+            Arrays.fill(dist, INF);
+            parent = new int[nodeCount];
+            via = new int[nodeCount];
+            touched = new int[nodeCount];
+        } else {
+            for (int i = 0; i < touchedCount; i++) {
+                dist[touched[i]] = INF;
+            }
+        }
+        touchedCount = 0;
+        heapSize = 0;
+    }
+
+    // false si d no mejora la distancia conocida de node
+    boolean relax(int node, double d, int from, int edge) {
+        if (!(d < dist[node])) {
+            return false;
+        }
+        if (dist[node] == INF) {
+            touched[touchedCount++] = node;
+        }
+        dist[node] = d;
+        parent[node] = from;
+        via[node] = edge;
+        push(node, d);
+        return true;
+    }
+
+    // Menor distancia pendiente de asentar, INF si no queda nada
+    double minKey() {
+        prune();
+        return heapSize > 0 ? heapKeys[0] : INF;
+    }
+
+    int poll() {
+        prune();
+        int node = heapNodes[0];
+        removeTop();
+        return node;
+    }
+
+    private void prune() {
+        while (heapSize > 0 && heapKeys[0] > dist[heapNodes[0]]) {
+            removeTop();
+        }
+    }
+
+    private void push(int node, double key) {
+        if (heapSize == heapNodes.length) {
+            heapNodes = Arrays.copyOf(heapNodes, heapSize * 2);
+            heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+        }
+        int i = heapSize++;
+        while (i > 0) {
+            int up = (i - 1) >>> 1;
+            if (heapKeys[up] <= key) {
+                break;
+            }
+            heapNodes[i] = heapNodes[up];
+            heapKeys[i] = heapKeys[up];
+            i = up;
+        }
+        heapNodes[i] = node;
+        heapKeys[i] = key;
+    }
+
+    private void removeTop() {
+        int node = heapNodes[--heapSize];
+        double key = heapKeys[heapSize];
+        int i = 0;
+        int half = heapSize >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+                child++;
+            }
+            if (key <= heapKeys[child]) {
+                break;
+            }
+            heapNodes[i] = heapNodes[child];
+            heapKeys[i] = heapKeys[child];
+            i = child;
+        }
+        if (heapSize > 0) {
+            heapNodes[i] = node;
+            heapKeys[i] = key;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.mio.route;
+
+// Camino encontrado: arcos densos en orden de recorrido y costo total (en las unidades de los pesos)
+public final class ShortestPath {
+
+    public static final ShortestPath NOT_FOUND = new ShortestPath(Double.POSITIVE_INFINITY, new int[0]);
+
+    private final double cost;
+    private final int[] arcs;
+
+    ShortestPath(double cost, int[] arcs) {
+        this.cost = cost;
+        this.arcs = arcs;
+    }
+
+    public boolean isFound() {
+        return cost != Double.POSITIVE_INFINITY;
+    }
+
+    public double getCost() {
+        return cost;
+    }
+
+    public int[] getArcs() {
+        return arcs;
+    }
+}
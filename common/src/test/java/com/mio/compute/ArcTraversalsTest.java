@@ -0,0 +1,85 @@
+package com.mio.compute;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+// Histogramas de recorrido por arco: la mediana cae en la cubeta del tiempo típico aunque haya
+// esperas largas, las pausas no cuentan y sumar slices por columnas da lo mismo que leerlo todo junto
+class ArcTraversalsTest {
+
+    private static final long MINUTE = 60_000L;
+
+    @Test
+    void medianIgnoresLongWaitsAndPauses() {
+        ArcTraversals traversals = new ArcTraversals(3);
+        long t = 1_527_724_800_000L;
+        for (int i = 0; i < 9; i++) {
+            traversals.add(0, t, t + 2 * MINUTE);
+        }
+        // Esperas largas pero reales: mueven el promedio, no la mediana
+        traversals.add(0, t, t + 40 * MINUTE);
+        traversals.add(0, t, t + 50 * MINUTE);
+        // Pausas, duraciones no positivas y arcos fuera del grafo se descartan
+        traversals.add(0, t, t + 3 * 24 * 60 * MINUTE);
+        traversals.add(0, t, t);
+        traversals.add(0, t + MINUTE, t);
+        traversals.add(-1, t, t + MINUTE);
+        traversals.add(3, t, t + MINUTE);
+
+        assertEquals(11, traversals.count(0));
+        assertEquals(120.0, traversals.medianSeconds(0), 120.0 * (ArcTraversals.GROWTH - 1));
+        assertEquals(0, traversals.count(1));
+        assertTrue(Double.isNaN(traversals.medianSeconds(1)));
+        assertTrue(Double.isNaN(traversals.medianSeconds(3)));
+    }
+
+    @Test
+    void bucketsCoverTheWholeRange() {
+        assertEquals(0, ArcTraversals.bucketOf(1));
+        assertEquals(ArcTraversals.BUCKETS - 1, ArcTraversals.bucketOf(ArcTraversals.MAX_TRAVERSAL_MS));
+        int previous = 0;
+        for (long ms = 1; ms <= ArcTraversals.MAX_TRAVERSAL_MS; ms += 997) {
+            int bucket = ArcTraversals.bucketOf(ms);
+            assertTrue(bucket >= previous, "cubetas no monotonas en " + ms);
+            previous = bucket;
+        }
+    }
+
+    @Test
+    void columnsAndMergeMatchASingleScan() {
+        Random rand = new Random(11);
+        int arcs = 50;
+        ArcTraversals whole = new ArcTraversals(arcs);
+        ArcTraversals[] slices = new ArcTraversals[4];
+        for (int s = 0; s < slices.length; s++) {
+            slices[s] = new ArcTraversals(arcs);
+        }
+        for (int i = 0; i < 5000; i++) {
+            int arc = rand.nextInt(arcs + 2) - 1;
+            long from = rand.nextInt(1_000_000);
+            long to = from + rand.nextInt((int) (3 * MINUTE * 60));
+            whole.add(arc, from, to);
+            slices[rand.nextInt(slices.length)].add(arc, from, to);
+        }
+
+        ArcTraversals merged = new ArcTraversals(arcs);
+        merged.merge(slices[0]);
+        for (int s = 1; s < slices.length; s++) {
+            int[][] columns = slices[s].toColumns();
+            merged.addColumns(columns[0], columns[1], columns[2]);
+        }
+        merged.addColumns(null, null, null);
+
+        for (int arc = 0; arc < arcs; arc++) {
+            assertEquals(whole.count(arc), merged.count(arc));
+            assertEquals(whole.medianSeconds(arc), merged.medianSeconds(arc), 0.0);
+        }
+        int[][] expected = whole.toColumns();
+        int[][] actual = merged.toColumns();
+        for (int c = 0; c < 3; c++) {
+            assertArrayEquals(expected[c], actual[c]);
+        }
+    }
+}
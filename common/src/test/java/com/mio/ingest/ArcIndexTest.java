@@ -0,0 +1,138 @@
+package com.mio.ingest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+// El índice sobre arreglos ordenados y CSR debe dar los mismos índices densos que la versión con
+// mapas a la que reemplazó; Reference es esa versión, tal cual
+class ArcIndexTest {
+
+    private static final class Reference {
+        final int[] stopIds;
+        final Map<Integer, Integer> stopIndex = new HashMap<>();
+        final Map<Long, Integer> graphArcs = new HashMap<>();
+        int graphArcCount;
+
+        Reference(int[] stopIds, int[] arcFromStopIds, int[] arcToStopIds) {
+            this.stopIds = stopIds.clone();
+            for (int i = 0; i < stopIds.length; i++) {
+                stopIndex.put(stopIds[i], i);
+            }
+            for (int i = 0; i < arcFromStopIds.length; i++) {
+                int f = arcFromStopIds[i];
+                int t = arcToStopIds[i];
+                if (stopIndex.containsKey(f) && stopIndex.containsKey(t)
+                        && graphArcs.putIfAbsent(key(f, t), graphArcCount) == null) {
+                    graphArcCount++;
+                }
+            }
+        }
+
+        static long key(int fromStopId, int toStopId) {
+            return ((long) fromStopId << 32) | (toStopId & 0xffffffffL);
+        }
+
+        int indexOf(int fromStopId, int toStopId) {
+            Integer arc = graphArcs.get(key(fromStopId, toStopId));
+            if (arc != null) {
+                return arc;
+            }
+            Integer f = stopIndex.get(fromStopId);
+            Integer t = stopIndex.get(toStopId);
+            if (f == null || t == null) {
+                return -1;
+            }
+            return graphArcCount + f * stopIds.length + t;
+        }
+
+        int stopIndexOf(int stopId) {
+            return stopIndex.getOrDefault(stopId, -1);
+        }
+    }
+
+    @Test
+    void matchesMapBasedIndexOnRandomGraphs() {
+        Random rand = new Random(7);
+        for (int round = 0; round < 200; round++) {
+            int stops = 1 + rand.nextInt(60);
+            int[] stopIds = randomStopIds(rand, stops);
+            int arcs = rand.nextInt(stops * 4);
+            int[] from = new int[arcs];
+            int[] to = new int[arcs];
+            for (int i = 0; i < arcs; i++) {
+                // Algunos arcos apuntan a paradas que no existen y se descartan; otros se repiten
+                from[i] = rand.nextInt(10) == 0 ? offGraphId(rand, stopIds) : stopIds[rand.nextInt(stops)];
+                to[i] = rand.nextInt(10) == 0 ? offGraphId(rand, stopIds) : stopIds[rand.nextInt(stops)];
+            }
+            ArcIndex index = new ArcIndex(stopIds, from, to);
+            Reference reference = new Reference(stopIds, from, to);
+            assertEquals(reference.graphArcCount, index.graphArcCount());
+            assertEquals(stops, index.stopCount());
+
+            for (int i = 0; i < arcs; i++) {
+                assertSameArc(index, reference, from[i], to[i]);
+            }
+            for (int i = 0; i < stops; i++) {
+                for (int j = 0; j < stops; j++) {
+                    assertSameArc(index, reference, stopIds[i], stopIds[j]);
+                }
+                assertEquals(reference.stopIndexOf(stopIds[i]), index.stopIndexOf(stopIds[i]));
+                assertEquals(stopIds[i], index.stopIdAt(index.stopIndexOf(stopIds[i])));
+            }
+            for (int i = 0; i < 50; i++) {
+                int offGraph = offGraphId(rand, stopIds);
+                int known = stopIds[rand.nextInt(stops)];
+                assertEquals(-1, index.stopIndexOf(offGraph));
+                assertEquals(-1, index.indexOf(offGraph, known));
+                assertEquals(-1, index.indexOf(known, offGraph));
+                assertEquals(-1, index.indexOf(offGraph, offGraph));
+            }
+        }
+    }
+
+    @Test
+    void graphArcsComeFirstInInputOrder() {
+        ArcIndex index = new ArcIndex(new int[] { 30, 10, 20 }, new int[] { 10, 20, 10, 99 },
+                new int[] { 20, 30, 20, 10 });
+        assertEquals(2, index.graphArcCount());
+        assertEquals(0, index.indexOf(10, 20));
+        assertEquals(1, index.indexOf(20, 30));
+        assertTrue(index.isGraphArc(index.indexOf(10, 20)));
+        // Fuera del grafo: G + índice(origen) * S + índice(destino)
+        assertEquals(2 + 0 * 3 + 1, index.indexOf(30, 10));
+        assertFalse(index.isGraphArc(index.indexOf(30, 10)));
+        assertEquals(-1, index.indexOf(10, 99));
+    }
+
+    private static void assertSameArc(ArcIndex index, Reference reference, int fromStopId, int toStopId) {
+        int arc = index.indexOf(fromStopId, toStopId);
+        assertEquals(reference.indexOf(fromStopId, toStopId), arc, fromStopId + " -> " + toStopId);
+        if (arc >= 0) {
+            assertEquals(fromStopId, index.fromStop(arc));
+            assertEquals(toStopId, index.toStop(arc));
+        }
+    }
+
+    // Ids únicos y dispersos, incluso negativos, para que el orden por id no coincida con la posición
+    private static int[] randomStopIds(Random rand, int count) {
+        Set<Integer> ids = new LinkedHashSet<>();
+        while (ids.size() < count) {
+            ids.add(rand.nextInt(2_000_000) - 1_000_000);
+        }
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int offGraphId(Random rand, int[] stopIds) {
+        Set<Integer> known = new HashSet<>();
+        for (int id : stopIds) {
+            known.add(id);
+        }
+        int id;
+        do {
+            id = rand.nextInt();
+        } while (known.contains(id));
+        return id;
+    }
+}
@@ -0,0 +1,119 @@
+package com.mio.route;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import com.mio.ingest.ArcGraph;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+// La jerarquía de contracción y el Dijkstra bidireccional contra un Dijkstra ingenuo sobre la lista
+// de arcos, en grafos aleatorios con arcos repetidos, lazos, pesos NaN y paradas inalcanzables
+class ShortestPathTest {
+
+    private static final double EPS = 1e-6;
+
+    @Test
+    void matchesNaiveDijkstraOnRandomGraphs() {
+        Random rand = new Random(7);
+        for (int round = 0; round < 300; round++) {
+            int stops = 2 + rand.nextInt(round < 250 ? 40 : 400);
+            int arcs = rand.nextInt(stops * 3 + 1);
+            int[] from = new int[arcs];
+            int[] to = new int[arcs];
+            double[] weights = new double[arcs];
+            for (int i = 0; i < arcs; i++) {
+                from[i] = rand.nextInt(stops);
+                // Mayormente hacia paradas cercanas, como en una ruta; algunos lazos y saltos largos
+                if (rand.nextInt(10) == 0) {
+                    to[i] = from[i];
+                } else if (rand.nextBoolean()) {
+                    to[i] = Math.min(stops - 1, from[i] + 1 + rand.nextInt(3));
+                } else {
+                    to[i] = rand.nextInt(stops);
+                }
+                weights[i] = rand.nextInt(20) == 0 ? Double.NaN : rand.nextInt(50) + rand.nextDouble();
+            }
+            ArcGraph graph = new ArcGraph(stops, from, to);
+            ContractionHierarchy hierarchy = new ContractionHierarchy(graph);
+
+            // La misma jerarquía se re-personaliza con pesos nuevos sin rearmarse
+            for (int metric = 0; metric < 2; metric++) {
+                if (metric == 1) {
+                    for (int i = 0; i < arcs; i++) {
+                        weights[i] = rand.nextInt(30) + 1;
+                    }
+                }
+                ContractionHierarchy.Metric customized = hierarchy.customize(weights);
+                BidirectionalDijkstra dijkstra = new BidirectionalDijkstra(graph, weights);
+                for (int query = 0; query < 30; query++) {
+                    int source = rand.nextInt(stops);
+                    int target = rand.nextInt(stops);
+                    double expected = naive(stops, from, to, weights, source, target);
+                    assertPath(customized.query(source, target), expected, from, to, weights, source, target);
+                    assertPath(dijkstra.query(source, target), expected, from, to, weights, source, target);
+                }
+            }
+        }
+    }
+
+    @Test
+    void sameStopAndUnreachableStop() {
+        ArcGraph graph = new ArcGraph(3, new int[] { 0 }, new int[] { 1 });
+        double[] weights = { 5 };
+        ContractionHierarchy.Metric metric = new ContractionHierarchy(graph).customize(weights);
+        BidirectionalDijkstra dijkstra = new BidirectionalDijkstra(graph, weights);
+        for (ShortestPath path : new ShortestPath[] { metric.query(1, 1), dijkstra.query(1, 1) }) {
+            assertTrue(path.isFound());
+            assertEquals(0, path.getCost(), EPS);
+            assertEquals(0, path.getArcs().length);
+        }
+        assertFalse(metric.query(1, 0).isFound());
+        assertFalse(dijkstra.query(0, 2).isFound());
+    }
+
+    // Costo igual al del Dijkstra ingenuo y arcos que forman un camino continuo de source a target
+    private static void assertPath(ShortestPath path, double expected, int[] from, int[] to, double[] weights,
+            int source, int target) {
+        if (expected == Double.POSITIVE_INFINITY) {
+            assertFalse(path.isFound(), source + " -> " + target);
+            return;
+        }
+        assertTrue(path.isFound(), source + " -> " + target);
+        assertEquals(expected, path.getCost(), EPS, source + " -> " + target);
+        int at = source;
+        double sum = 0;
+        for (int arc : path.getArcs()) {
+            assertEquals(at, from[arc], "camino discontinuo " + source + " -> " + target);
+            at = to[arc];
+            sum += weights[arc];
+        }
+        assertEquals(target, at);
+        assertEquals(expected, sum, EPS);
+    }
+
+    // Dijkstra cuadrático sobre la lista de arcos; un peso NaN nunca mejora una distancia
+    private static double naive(int stops, int[] from, int[] to, double[] weights, int source, int target) {
+        double[] dist = new double[stops];
+        boolean[] done = new boolean[stops];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        dist[source] = 0;
+        for (int step = 0; step < stops; step++) {
+            int next = -1;
+            for (int i = 0; i < stops; i++) {
+                if (!done[i] && (next < 0 || dist[i] < dist[next])) {
+                    next = i;
+                }
+            }
+            if (next < 0 || dist[next] == Double.POSITIVE_INFINITY) {
+                break;
+            }
+            done[next] = true;
+            for (int i = 0; i < from.length; i++) {
+                if (from[i] == next && dist[next] + weights[i] < dist[to[i]]) {
+                    dist[to[i]] = dist[next] + weights[i];
+                }
+            }
+        }
+        return dist[target];
+    }
+}
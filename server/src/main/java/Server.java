@@ -1,6 +1,8 @@
 import com.zeroc.Ice.*;
 import server.MIOServiceI;
 import server.MasterI;
+import com.mio.log.Level;
+import com.mio.log.Log;
 
 public class Server {
 
@@ -23,11 +25,16 @@ public class Server {
                     "Archivo 'config.properties' no encontrado. Usando configuracion por defecto (0.0.0.0:9888).");
             initData.properties.setProperty("MIOService.Endpoints", "tcp -h 0.0.0.0 -p 9888");
             initData.properties.setProperty("Ice.MessageSizeMax", "500000");
+            initData.properties.setProperty("Ice.ThreadPool.Server.Size", "4");
+            initData.properties.setProperty("Ice.ThreadPool.Server.SizeMax", "32");
         }
 
         MasterI master = null;
+        MIOServiceI mioService = null;
 
         try (Communicator communicator = Util.initialize(args, initData)) {
+            Log.configure(Level.parse(communicator.getProperties().getProperty("Log.Level"), Level.INFO),
+                    communicator.getProperties().getPropertyAsIntWithDefault("Log.MaxLinesPerSecond", 2000));
 
             System.out.println("=".repeat(80));
             System.out.println("Iniciando servidor del Sistema MIO con ZeroICE...");
@@ -36,10 +43,10 @@ public class Server {
 
             ObjectAdapter adapter = communicator.createObjectAdapter("MIOService");
 
-            master = new MasterI(NUM_THREADS);
+            master = new MasterI(NUM_THREADS, communicator.getProperties());
             adapter.add(master, Util.stringToIdentity("Master"));
 
-            MIOServiceI mioService = new MIOServiceI();
+            mioService = new MIOServiceI(communicator.getProperties());
             mioService.setMaster(master);
             adapter.add(mioService, Util.stringToIdentity("MIOService"));
 
@@ -70,6 +77,9 @@ public class Server {
             e.printStackTrace();
             System.exit(1);
         } finally {
+            if (mioService != null) {
+                mioService.shutdown();
+            }
             if (master != null) {
                 master.shutdown();
             }
@@ -11,6 +11,8 @@ public class GraphBuilder {
     private Map<Integer, Stop> stops;
     private List<LineStop> lineStops;
     private List<Arc> arcs;
+    // Vista ruta -> orientación -> variante, armada una vez por construcción del grafo
+    private Map<Integer, Map<Integer, Map<Integer, List<Arc>>>> arcsByRoute;
 
     public GraphBuilder(List<Route> routes, Map<Integer, Stop> stops, List<LineStop> lineStops) {
         this.routes = routes;
@@ -21,7 +23,8 @@ public class GraphBuilder {
 
 
     public void buildGraph() {
-   
+        arcsByRoute = null;
+
         Map<String, List<LineStop>> groupedStops = groupLineStops();
         
         for (Map.Entry<String, List<LineStop>> entry : groupedStops.entrySet()) {
@@ -70,6 +73,9 @@ public class GraphBuilder {
 
    
     public Map<Integer, Map<Integer, Map<Integer, List<Arc>>>> getArcsByRouteAndVariant() {
+        if (this.arcsByRoute != null) {
+            return this.arcsByRoute;
+        }
         Map<Integer, Map<Integer, Map<Integer, List<Arc>>>> arcsByRoute = new TreeMap<>();
         
         for (Arc arc : arcs) {
@@ -92,6 +98,7 @@ public class GraphBuilder {
             arcsByRoute.get(lineId).get(orientation).get(variant).add(arc);
         }
         
+        this.arcsByRoute = arcsByRoute;
         return arcsByRoute;
     }
 
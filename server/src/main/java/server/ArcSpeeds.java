@@ -0,0 +1,73 @@
+package server;
+
+import com.mio.compute.ArcTraversals;
+import com.mio.compute.SpeedKernel;
+import com.mio.ingest.ReferenceData;
+
+// Velocidad de cada arco del grafo a partir de la mediana de sus tiempos de recorrido entre paradas
+// en una consolidación completa, atada a la versión del grafo de sus índices densos. Inmutable: el router arma sus pesos con una sola lectura, y la
+// entrada de la caché guarda la misma instancia para volver a publicarla en un acierto
+public final class ArcSpeeds {
+
+    private final long graphVersion;
+    private final double[] speeds;
+
+    public ArcSpeeds(long graphVersion, double[] speeds) {
+        this.graphVersion = graphVersion;
+        this.speeds = speeds;
+    }
+
+    public static ArcSpeeds of(ArcTraversals traversals, ReferenceData ref) {
+        double[] lengths = ref.getArcLengthsKm();
+        double[] speeds = new double[ref.getArcs().graphArcCount()];
+        for (int arc = 0; arc < speeds.length; arc++) {
+            double seconds = arc < traversals.graphArcCount() ? traversals.medianSeconds(arc) : Double.NaN;
+            speeds[arc] = medianSpeed(arc < lengths.length ? lengths[arc] : 0, seconds);
+        }
+        return new ArcSpeeds(ref.getVersion(), speeds);
+    }
+
+    // NaN si el tramo es demasiado corto o no tiene recorridos para dar una velocidad confiable
+    static double medianSpeed(double distanceKm, double medianSeconds) {
+        if (distanceKm >= SpeedKernel.MIN_DISTANCE_KM && medianSeconds > 0) {
+            return Math.min(distanceKm / (medianSeconds / 3600.0), SpeedKernel.MAX_SPEED_KMH);
+        }
+        return Double.NaN;
+    }
+
+    public long getGraphVersion() {
+        return graphVersion;
+    }
+
+    public int size() {
+        return speeds.length;
+    }
+
+    // NaN si el arco no se observó, se descartó o está fuera del grafo
+    public double speed(int arcIdx) {
+        return arcIdx >= 0 && arcIdx < speeds.length ? speeds[arcIdx] : Double.NaN;
+    }
+
+    // Texto para la copia en disco de la caché: una velocidad por arco, vacía si es NaN
+    String encode() {
+        StringBuilder text = new StringBuilder(speeds.length * 6);
+        for (int i = 0; i < speeds.length; i++) {
+            if (i > 0) {
+                text.append(',');
+            }
+            if (!Double.isNaN(speeds[i])) {
+                text.append(speeds[i]);
+            }
+        }
+        return text.toString();
+    }
+
+    static ArcSpeeds decode(long graphVersion, String text) {
+        String[] parts = text.split(",", -1);
+        double[] speeds = new double[text.isEmpty() ? 0 : parts.length];
+        for (int i = 0; i < speeds.length; i++) {
+            speeds[i] = parts[i].isEmpty() ? Double.NaN : Double.parseDouble(parts[i]);
+        }
+        return new ArcSpeeds(graphVersion, speeds);
+    }
+}
@@ -0,0 +1,157 @@
+package server;
+
+import MIO.*;
+import com.mio.ingest.ArcIndex;
+import com.mio.ingest.ReferenceData;
+import java.util.*;
+
+// Conversión entre DatagramList (arreglo de structs) y DatagramBatch (columnar con diccionario de arcos)
+public final class DatagramBatches {
+
+    private DatagramBatches() {
+    }
+
+    public static DatagramBatch encode(SpeedDatagram[] datagrams, boolean delta) {
+        return encode(datagrams, 0, datagrams.length, delta);
+    }
+
+    public static DatagramBatch encode(SpeedDatagram[] datagrams, int from, int to, boolean delta) {
+        int n = to - from;
+        Map<Integer, Integer> dictionary = new HashMap<>();
+        int[] arcIds = new int[Math.min(n, 16)];
+        int[] arcStops = new int[arcIds.length * 2];
+        double[] arcCoords = new double[arcIds.length * 4];
+        int[] arcIdx = new int[n];
+        long[] timestamps = new long[n];
+
+        for (int i = 0; i < n; i++) {
+            SpeedDatagram dg = datagrams[from + i];
+            Integer idx = dictionary.get(dg.arcId);
+            if (idx == null) {
+                idx = dictionary.size();
+                dictionary.put(dg.arcId, idx);
+                if (idx == arcIds.length) {
+                    arcIds = Arrays.copyOf(arcIds, idx * 2);
+                    arcStops = Arrays.copyOf(arcStops, idx * 4);
+                    arcCoords = Arrays.copyOf(arcCoords, idx * 8);
+                }
+                arcIds[idx] = dg.arcId;
+                arcStops[idx * 2] = dg.fromStopId;
+                arcStops[idx * 2 + 1] = dg.toStopId;
+                arcCoords[idx * 4] = dg.fromLat;
+                arcCoords[idx * 4 + 1] = dg.fromLon;
+                arcCoords[idx * 4 + 2] = dg.toLat;
+                arcCoords[idx * 4 + 3] = dg.toLon;
+            }
+            arcIdx[i] = idx;
+            timestamps[i] = dg.timestamp;
+        }
+
+        int arcs = dictionary.size();
+        DatagramBatch batch = new DatagramBatch();
+        batch.arcIds = Arrays.copyOf(arcIds, arcs);
+        batch.arcStops = Arrays.copyOf(arcStops, arcs * 2);
+        batch.arcCoords = Arrays.copyOf(arcCoords, arcs * 4);
+        batch.arcIdx = arcIdx;
+        batch.baseTimestamp = n > 0 ? timestamps[0] : 0;
+        batch.timestampDeltas = delta ? deltas(timestamps, batch.baseTimestamp) : null;
+        batch.deltaEncoded = batch.timestampDeltas != null;
+        batch.timestamps = batch.deltaEncoded ? new long[0] : timestamps;
+        if (!batch.deltaEncoded) {
+            batch.timestampDeltas = new int[0];
+        }
+        return batch;
+    }
+
+    // Sin diccionario: arcIdx lleva el índice denso global y el worker resuelve paradas y longitudes en su caché
+    public static DatagramBatch encodeIndexed(SpeedDatagram[] datagrams, int from, int to) {
+        int n = to - from;
+        int[] arcIdx = new int[n];
+        long[] timestamps = new long[n];
+        for (int i = 0; i < n; i++) {
+            arcIdx[i] = datagrams[from + i].arcId;
+            timestamps[i] = datagrams[from + i].timestamp;
+        }
+        DatagramBatch batch = new DatagramBatch();
+        batch.arcIds = new int[0];
+        batch.arcStops = new int[0];
+        batch.arcCoords = new double[0];
+        batch.arcIdx = arcIdx;
+        batch.baseTimestamp = n > 0 ? timestamps[0] : 0;
+        batch.timestampDeltas = deltas(timestamps, batch.baseTimestamp);
+        batch.deltaEncoded = batch.timestampDeltas != null;
+        batch.timestamps = batch.deltaEncoded ? new long[0] : timestamps;
+        if (!batch.deltaEncoded) {
+            batch.timestampDeltas = new int[0];
+        }
+        return batch;
+    }
+
+    // null si algún salto entre timestamps consecutivos no cabe en un int
+    private static int[] deltas(long[] timestamps, long base) {
+        int[] deltas = new int[timestamps.length];
+        long previous = base;
+        for (int i = 0; i < timestamps.length; i++) {
+            long d = timestamps[i] - previous;
+            if (d > Integer.MAX_VALUE || d < Integer.MIN_VALUE) {
+                return null;
+            }
+            deltas[i] = (int) d;
+            previous = timestamps[i];
+        }
+        return deltas;
+    }
+
+    public static int size(DatagramBatch batch) {
+        return batch == null || batch.arcIdx == null ? 0 : batch.arcIdx.length;
+    }
+
+    public static SpeedDatagram[] decode(DatagramBatch batch, ReferenceData reference) {
+        int n = size(batch);
+        boolean indexed = batch.arcIds.length == 0;
+        if (indexed && n > 0 && reference == null) {
+            throw new IllegalStateException("Lote con indices globales sin datos de referencia");
+        }
+        SpeedDatagram[] datagrams = new SpeedDatagram[n];
+        long timestamp = batch.baseTimestamp;
+        for (int i = 0; i < n; i++) {
+            int arc = batch.arcIdx[i];
+            timestamp = batch.deltaEncoded ? timestamp + batch.timestampDeltas[i] : batch.timestamps[i];
+            SpeedDatagram dg = new SpeedDatagram();
+            dg.timestamp = timestamp;
+            datagrams[i] = dg;
+            if (indexed) {
+                ArcIndex arcs = reference.getArcs();
+                int f = arcs.stopIndexOf(arcs.fromStop(arc));
+                int t = arcs.stopIndexOf(arcs.toStop(arc));
+                dg.arcId = arc;
+                dg.fromStopId = arcs.fromStop(arc);
+                dg.toStopId = arcs.toStop(arc);
+                dg.fromLat = reference.getLatitudes()[f];
+                dg.fromLon = reference.getLongitudes()[f];
+                dg.toLat = reference.getLatitudes()[t];
+                dg.toLon = reference.getLongitudes()[t];
+                continue;
+            }
+            dg.arcId = batch.arcIds[arc];
+            dg.fromStopId = batch.arcStops[arc * 2];
+            dg.toStopId = batch.arcStops[arc * 2 + 1];
+            dg.fromLat = batch.arcCoords[arc * 4];
+            dg.fromLon = batch.arcCoords[arc * 4 + 1];
+            dg.toLat = batch.arcCoords[arc * 4 + 2];
+            dg.toLon = batch.arcCoords[arc * 4 + 3];
+        }
+        return datagrams;
+    }
+
+    // Copia de la tarea lista para enviar en formato columnar (graphVersion != 0: índices globales)
+    public static Task toWire(Task task, boolean delta, long graphVersion) {
+        Task wire = new Task();
+        wire.taskId = task.taskId;
+        wire.datagrams = new SpeedDatagram[0];
+        wire.graphVersion = graphVersion;
+        wire.batch = graphVersion != 0 ? encodeIndexed(task.datagrams, 0, task.datagrams.length)
+                : encode(task.datagrams, delta);
+        return wire;
+    }
+}
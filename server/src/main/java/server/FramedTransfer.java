@@ -0,0 +1,125 @@
+package server;
+
+import MIO.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Envia una tarea como openTask + N appendFrame (con varios frames en vuelo) + sealTask
+public class FramedTransfer {
+
+    // list: DatagramList | batch: columnar con diccionario | indexed: columnar con índices densos globales
+    public enum WireFormat {
+        LIST, BATCH, INDEXED
+    }
+
+    private final int frameDatagrams;
+    private final int framesInFlight;
+    private final WireFormat format;
+    private volatile long graphVersion;
+
+    public FramedTransfer(int frameDatagrams, int framesInFlight, WireFormat format) {
+        this.frameDatagrams = frameDatagrams;
+        this.framesInFlight = Math.max(1, framesInFlight);
+        this.format = format;
+    }
+
+    public void setGraphVersion(long graphVersion) {
+        this.graphVersion = graphVersion;
+    }
+
+    public boolean isEnabled() {
+        return frameDatagrams > 0;
+    }
+
+    public int getFrameDatagrams() {
+        return frameDatagrams;
+    }
+
+    public int getFramesInFlight() {
+        return framesInFlight;
+    }
+
+    public WireFormat getFormat() {
+        return format;
+    }
+
+    // Sin version del grafo todavia, el formato indexado se degrada a columnar con diccionario
+    private long wireVersion() {
+        return format == WireFormat.INDEXED ? graphVersion : 0;
+    }
+
+    // Tarea tal como viaja al worker segun Master.WireFormat
+    public Task prepare(Task task) {
+        return format == WireFormat.LIST ? task : DatagramBatches.toWire(task, true, wireVersion());
+    }
+
+    // Tamaño aproximado en el cable: struct completo en list, indice + delta de timestamp en columnar
+    public long estimatedBytes(Task task) {
+        return (long) task.datagrams.length * (format == WireFormat.LIST ? 52 : 8);
+    }
+
+    public CompletableFuture<PartialResult[]> sendBatch(WorkerPrx worker, List<Task> tasks) {
+        Task[] wire = new Task[tasks.size()];
+        for (int i = 0; i < wire.length; i++) {
+            wire[i] = prepare(tasks.get(i));
+        }
+        return worker.processTasksAsync(wire);
+    }
+
+    // Tareas que caben en un frame se envian en un solo processTask
+    public CompletableFuture<PartialResult> send(WorkerPrx worker, Task task) {
+        if (!isEnabled() || task.datagrams.length <= frameDatagrams) {
+            return worker.processTaskAsync(prepare(task));
+        }
+        return sendFramed(worker, task);
+    }
+
+    public CompletableFuture<PartialResult> sendFramed(WorkerPrx worker, Task task) {
+        int size = Math.max(1, frameDatagrams);
+        int frameCount = Math.max(1, (task.datagrams.length + size - 1) / size);
+        long version = wireVersion();
+        return worker.openTaskAsync(task.taskId, frameCount, version)
+                .thenCompose(v -> sendFrames(worker, task, frameCount, size, version))
+                .thenCompose(v -> worker.sealTaskAsync(task.taskId));
+    }
+
+    private CompletableFuture<Void> sendFrames(WorkerPrx worker, Task task, int frameCount, int size,
+            long version) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger acked = new AtomicInteger();
+        for (int i = 0; i < Math.min(framesInFlight, frameCount); i++) {
+            sendNext(worker, task, frameCount, size, version, next, acked, done);
+        }
+        return done;
+    }
+
+    private void sendNext(WorkerPrx worker, Task task, int frameCount, int size, long version,
+            AtomicInteger next, AtomicInteger acked, CompletableFuture<Void> done) {
+        int frame = next.getAndIncrement();
+        if (frame >= frameCount || done.isDone()) {
+            return;
+        }
+        int from = frame * size;
+        int to = Math.min(from + size, task.datagrams.length);
+        CompletableFuture<Void> ack;
+        if (format == WireFormat.LIST) {
+            ack = worker.appendFrameAsync(task.taskId, frame, Arrays.copyOfRange(task.datagrams, from, to));
+        } else {
+            DatagramBatch batch = version != 0 ? DatagramBatches.encodeIndexed(task.datagrams, from, to)
+                    : DatagramBatches.encode(task.datagrams, from, to, true);
+            ack = worker.appendBatchAsync(task.taskId, frame, batch);
+        }
+        ack.whenComplete((v, ex) -> {
+            if (ex != null) {
+                done.completeExceptionally(ex);
+            } else if (acked.incrementAndGet() == frameCount) {
+                done.complete(null);
+            } else {
+                sendNext(worker, task, frameCount, size, version, next, acked, done);
+            }
+        });
+    }
+}
@@ -0,0 +1,142 @@
+package server;
+
+import MIO.ArcInfo;
+import MIO.RouteInfo;
+import MIO.StopInfo;
+import com.mio.model.Arc;
+import com.mio.model.Route;
+import com.mio.model.Stop;
+import java.util.*;
+
+// Vista de solo lectura del grafo para las consultas de MIOService: se arma una vez en buildGraph
+// con los arreglos ICE ya convertidos, de modo que cada consulta es un lookup sin copiar ni filtrar.
+// Los arreglos devueltos son compartidos entre llamadas y no deben modificarse
+public final class GraphIndex {
+
+    private static final ArcInfo[] NO_ARCS = new ArcInfo[0];
+
+    private final StopInfo[] stops;
+    private final Map<Integer, StopInfo> stopsById;
+    private final RouteInfo[] routes;
+    private final Map<Integer, RouteInfo> routesById;
+    private final ArcInfo[] arcs;
+    // (ruta, orientación) -> arcos de ese recorrido, cortados de los arcos ordenados por ruta
+    private final Map<Long, ArcInfo[]> arcsByRoute;
+    private final String statistics;
+
+    public GraphIndex(Map<Integer, Stop> stops, List<Route> routes, List<Arc> arcs) {
+        this.stops = new StopInfo[stops.size()];
+        this.stopsById = new HashMap<>(stops.size() * 2);
+        int i = 0;
+        for (Stop stop : new TreeMap<>(stops).values()) {
+            StopInfo info = convertStop(stop);
+            this.stops[i++] = info;
+            stopsById.put(info.stopId, info);
+        }
+
+        this.routes = new RouteInfo[routes.size()];
+        this.routesById = new HashMap<>(routes.size() * 2);
+        for (i = 0; i < routes.size(); i++) {
+            RouteInfo info = convertRoute(routes.get(i));
+            this.routes[i] = info;
+            // Como en la búsqueda lineal anterior, gana la primera ruta con el mismo id
+            routesById.putIfAbsent(info.routeId, info);
+        }
+
+        this.arcs = new ArcInfo[arcs.size()];
+        int ida = 0;
+        int vuelta = 0;
+        for (i = 0; i < arcs.size(); i++) {
+            this.arcs[i] = convertArc(arcs.get(i));
+            if (this.arcs[i].orientation == 0) {
+                ida++;
+            } else if (this.arcs[i].orientation == 1) {
+                vuelta++;
+            }
+        }
+        // Orden estable: dentro de cada recorrido se conserva el orden de construcción del grafo
+        ArcInfo[] sorted = this.arcs.clone();
+        Arrays.sort(sorted, Comparator.comparingInt((ArcInfo a) -> a.routeId).thenComparingInt(a -> a.orientation));
+        this.arcsByRoute = new HashMap<>();
+        for (int from = 0; from < sorted.length;) {
+            int to = from + 1;
+            while (to < sorted.length && sorted[to].routeId == sorted[from].routeId
+                    && sorted[to].orientation == sorted[from].orientation) {
+                to++;
+            }
+            arcsByRoute.put(routeKey(sorted[from].routeId, sorted[from].orientation),
+                    Arrays.copyOfRange(sorted, from, to));
+            from = to;
+        }
+
+        StringBuilder stats = new StringBuilder();
+        stats.append("=== Estadisticas del Sistema MIO ===\n");
+        stats.append(String.format("Total de paradas: %d\n", stops.size()));
+        stats.append(String.format("Total de rutas: %d\n", routes.size()));
+        stats.append(String.format("Total de arcos: %d\n", arcs.size()));
+        stats.append(String.format("Arcos IDA: %d\n", ida));
+        stats.append(String.format("Arcos VUELTA: %d\n", vuelta));
+        this.statistics = stats.toString();
+    }
+
+    private static long routeKey(int routeId, int orientation) {
+        return ((long) routeId << 32) | (orientation & 0xFFFFFFFFL);
+    }
+
+    public StopInfo stop(int stopId) {
+        return stopsById.get(stopId);
+    }
+
+    public StopInfo[] stops() {
+        return stops;
+    }
+
+    public RouteInfo route(int routeId) {
+        return routesById.get(routeId);
+    }
+
+    public RouteInfo[] routes() {
+        return routes;
+    }
+
+    public ArcInfo[] arcs() {
+        return arcs;
+    }
+
+    public ArcInfo[] arcsByRoute(int routeId, int orientation) {
+        return arcsByRoute.getOrDefault(routeKey(routeId, orientation), NO_ARCS);
+    }
+
+    public String statistics() {
+        return statistics;
+    }
+
+    private static StopInfo convertStop(Stop stop) {
+        StopInfo info = new StopInfo();
+        info.stopId = stop.getStopId();
+        info.stopName = stop.getLongName();
+        info.latitude = stop.getDecimalLatit();
+        info.longitude = stop.getDecimalLong();
+        return info;
+    }
+
+    private static RouteInfo convertRoute(Route route) {
+        RouteInfo info = new RouteInfo();
+        info.routeId = route.getLineId();
+        info.routeName = route.getShortName();
+        info.variant = route.getDescription();
+        info.orientation = 0; // La clase Route no tiene orientación
+        return info;
+    }
+
+    private static ArcInfo convertArc(Arc arc) {
+        ArcInfo info = new ArcInfo();
+        info.fromStopId = arc.getFromStopId();
+        info.toStopId = arc.getToStopId();
+        info.routeId = arc.getLineId();
+        info.routeName = ""; // No disponible directamente
+        info.orientation = arc.getOrientation();
+        info.sequenceOrder = arc.getSequenceFrom();
+        return info;
+    }
+}
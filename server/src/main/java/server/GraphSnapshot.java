@@ -0,0 +1,99 @@
+package server;
+
+import com.mio.ingest.ReferenceData;
+import com.mio.log.Log;
+import com.mio.model.Arc;
+import com.mio.model.LineStop;
+import com.mio.model.Route;
+import com.mio.model.Stop;
+import com.mio.util.CSVReader;
+import com.mio.util.GraphBuilder;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+// Resultado completo de una construcción del grafo: índice de consultas y datos de referencia,
+// más la identidad de los CSV de los que salió. No cambia después de construido; una
+// reconstrucción arma otro snapshot aparte y MIOService lo publica reemplazando la referencia
+public final class GraphSnapshot {
+
+    private static final Log LOG = Log.get("MIOService");
+
+    private final String inputs;
+    private final GraphIndex index;
+    private final ReferenceData reference;
+
+    private GraphSnapshot(String inputs, GraphIndex index, ReferenceData reference) {
+        this.inputs = inputs;
+        this.index = index;
+        this.reference = reference;
+    }
+
+    // Identidad de los archivos de entrada (ruta, tamaño y fecha de modificación) sin leerlos
+    public static String inputsOf(String... paths) throws IOException {
+        StringBuilder inputs = new StringBuilder();
+        for (String path : paths) {
+            File file = new File(path).getCanonicalFile();
+            if (!file.isFile()) {
+                throw new IOException("Archivo no encontrado: " + path);
+            }
+            inputs.append(file.getPath()).append(':').append(file.length()).append(':')
+                    .append(file.lastModified()).append('\n');
+        }
+        return inputs.toString();
+    }
+
+    public static GraphSnapshot build(String inputs, String linesPath, String stopsPath, String lineStopsPath)
+            throws IOException {
+        List<Route> routes = CSVReader.readRoutes(linesPath);
+        LOG.info("  - Rutas leidas: %d", routes.size());
+
+        Map<Integer, Stop> stops = CSVReader.readStops(stopsPath);
+        LOG.info("  - Paradas leidas: %d", stops.size());
+
+        List<LineStop> lineStops = CSVReader.readLineStops(lineStopsPath);
+        LOG.info("  - Paradas por ruta leidas: %d", lineStops.size());
+
+        GraphBuilder graphBuilder = new GraphBuilder(routes, stops, lineStops);
+        graphBuilder.buildGraph();
+        List<Arc> arcs = graphBuilder.getArcs();
+        LOG.info("  - Arcos construidos: %d", arcs.size());
+
+        return new GraphSnapshot(inputs, new GraphIndex(stops, routes, arcs), referenceData(stops, arcs));
+    }
+
+    private static ReferenceData referenceData(Map<Integer, Stop> stops, List<Arc> arcs) {
+        int[] stopIds = stops.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        double[] latitudes = new double[stopIds.length];
+        double[] longitudes = new double[stopIds.length];
+        for (int i = 0; i < stopIds.length; i++) {
+            Stop stop = stops.get(stopIds[i]);
+            latitudes[i] = stop.getDecimalLatit();
+            longitudes[i] = stop.getDecimalLong();
+        }
+        int[] arcFrom = new int[arcs.size()];
+        int[] arcTo = new int[arcs.size()];
+        for (int i = 0; i < arcs.size(); i++) {
+            arcFrom[i] = arcs.get(i).getFromStopId();
+            arcTo[i] = arcs.get(i).getToStopId();
+        }
+        long version = ReferenceData.versionOf(stopIds, latitudes, longitudes, arcFrom, arcTo);
+        return new ReferenceData(version, stopIds, latitudes, longitudes, arcFrom, arcTo, null);
+    }
+
+    public String getInputs() {
+        return inputs;
+    }
+
+    public GraphIndex index() {
+        return index;
+    }
+
+    public ReferenceData reference() {
+        return reference;
+    }
+
+    public long getVersion() {
+        return reference.getVersion();
+    }
+}
@@ -0,0 +1,47 @@
+package server;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// Envío de un arreglo grande como lotes de tamaño fijo a un callback del cliente. Se mantienen a
+// lo sumo `window` lotes en vuelo, así ni el servidor ni el cliente retienen el resultado completo
+public class GraphStreamer {
+
+    public interface BatchSender<T> {
+        CompletableFuture<Void> send(T[] batch, int offset, int total);
+    }
+
+    private final ExecutorService executor;
+    private final int window;
+
+    public GraphStreamer(int window) {
+        this.window = Math.max(1, window);
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "graph-stream");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Completa al confirmar el último lote; el primer fallo del callback corta el envío
+    public <T> CompletableFuture<Void> stream(T[] items, int batchSize, BatchSender<T> sender) {
+        int size = Math.max(1, batchSize);
+        return CompletableFuture.runAsync(() -> {
+            Deque<CompletableFuture<Void>> inFlight = new ArrayDeque<>();
+            for (int offset = 0; offset < items.length; offset += size) {
+                if (inFlight.size() >= window) {
+                    inFlight.poll().join();
+                }
+                inFlight.add(sender.send(Arrays.copyOfRange(items, offset, Math.min(items.length, offset + size)),
+                        offset, items.length));
+            }
+            for (CompletableFuture<Void> pending : inFlight) {
+                pending.join();
+            }
+        }, executor);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,149 @@
+package server;
+
+import MIO.JobProgress;
+import com.mio.compute.ArcTraversals;
+import com.mio.ingest.ReferenceData;
+import com.mio.log.Log;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+
+// Estado de un cálculo en curso, propio de cada trabajo para que los que corren a la vez no se
+// mezclen: muestreo del log de depuración, cancelación
+// cooperativa y último avance. También es la clave de su carril en el JobScheduler
+public class JobContext {
+
+    private final long jobId;
+    private final boolean tracked;
+    private final Log.Sampler arcSample = Log.Sampler.first(20);
+    private final Log.Sampler csvSample = Log.Sampler.first(10);
+    private final Log.Sampler stopSample = Log.Sampler.first(40);
+    private final List<Runnable> cancelHooks = new ArrayList<>();
+    private volatile boolean cancelled;
+    private volatile JobProgress progress;
+    private long lastPublishMs;
+    private volatile boolean incomplete;
+    private ArcTraversals traversals;
+    private ReferenceData reference;
+
+    public JobContext(long jobId) {
+        this(jobId, true);
+    }
+
+    private JobContext(long jobId, boolean tracked) {
+        this.jobId = jobId;
+        this.tracked = tracked;
+    }
+
+    // Contexto de una llamada directa (sin SpeedJobs): aislado, pero sin cancelación ni avance
+    public static JobContext untracked() {
+        return new JobContext(0, false);
+    }
+
+    public long getJobId() {
+        return jobId;
+    }
+
+    public boolean isTracked() {
+        return tracked;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public void checkCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Trabajo " + jobId + " cancelado");
+        }
+    }
+
+    // Ejecuta los hooks registrados una sola vez; los que se registren después corren en el acto
+    public void cancel() {
+        List<Runnable> hooks;
+        synchronized (this) {
+            if (!tracked || cancelled) {
+                return;
+            }
+            cancelled = true;
+            hooks = new ArrayList<>(cancelHooks);
+            cancelHooks.clear();
+        }
+        hooks.forEach(Runnable::run);
+    }
+
+    // Acción para cortar trabajo en vuelo (p. ej. cancelar los futures de las tareas despachadas)
+    public void onCancel(Runnable hook) {
+        synchronized (this) {
+            if (!tracked) {
+                return;
+            }
+            if (!cancelled) {
+                cancelHooks.add(hook);
+                return;
+            }
+        }
+        hook.run();
+    }
+
+    public void reportProgress(JobProgress progress) {
+        if (tracked) {
+            this.progress = progress;
+        }
+    }
+
+    public JobProgress getProgress() {
+        return progress;
+    }
+
+    // Turno de publicar el avance a los listeners: uno por intervalo en cada trabajo, salvo force
+    public synchronized boolean claimPublish(long now, int intervalMs, boolean force) {
+        if (!force && now - lastPublishMs < intervalMs) {
+            return false;
+        }
+        lastPublishMs = now;
+        return true;
+    }
+
+    // Alguna tarea no entregó su resultado: el cálculo terminó, pero no debe guardarse en la cache
+    public void markIncomplete() {
+        incomplete = true;
+    }
+
+    public boolean isComplete() {
+        return !incomplete;
+    }
+
+    // Tiempos de recorrido por arco que junta la carga del historial, sobre el grafo del trabajo;
+    // quien lanzó el trabajo decide si alimentan el ruteo. Solo lo escribe el hilo del trabajo
+    public synchronized ArcTraversals traversals(ReferenceData ref) {
+        if (traversals == null) {
+            traversals = new ArcTraversals(ref.getArcs().graphArcCount());
+        }
+        return traversals;
+    }
+
+    public synchronized ArcTraversals getTraversals() {
+        return traversals;
+    }
+
+    // Grafo con el que corre el trabajo: queda fijo en el primer uso, así una reconstrucción a mitad
+    // del cálculo no mezcla versiones entre la carga y la consolidación
+    public synchronized ReferenceData reference(ReferenceData current) {
+        if (reference == null) {
+            reference = current;
+        }
+        return reference;
+    }
+
+    public Log.Sampler arcSample() {
+        return arcSample;
+    }
+
+    public Log.Sampler csvSample() {
+        return csvSample;
+    }
+
+    public Log.Sampler stopSample() {
+        return stopSample;
+    }
+}
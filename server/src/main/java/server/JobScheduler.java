@@ -0,0 +1,110 @@
+package server;
+
+import com.mio.log.Log;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+// Pool local compartido por los trabajos en curso. Cada trabajo encola en su propio carril y los
+// hilos toman una tarea de cada carril por turno: un cálculo con muchas tareas encoladas no deja
+// esperando a los que llegan después, y cada trabajo recibe una parte pareja de los hilos
+public class JobScheduler {
+
+    private static final Log LOG = Log.get("JobScheduler");
+
+    // Carriles con tareas pendientes, en orden de turno (el primero es el siguiente en ser atendido)
+    private final LinkedHashMap<Object, Deque<Runnable>> lanes = new LinkedHashMap<>();
+    private final Thread[] threads;
+    private final Object sharedLane = new Object();
+    private boolean shutdown;
+
+    public JobScheduler(int threads) {
+        this.threads = new Thread[Math.max(1, threads)];
+        for (int i = 0; i < this.threads.length; i++) {
+            this.threads[i] = new Thread(this::runLoop, "master-pool-" + i);
+            this.threads[i].setDaemon(true);
+            this.threads[i].start();
+        }
+    }
+
+    public int getThreadCount() {
+        return threads.length;
+    }
+
+    // Carril del trabajo: todas las tareas enviadas con la misma clave comparten turno
+    public Executor lane(Object key) {
+        return task -> enqueue(key, task);
+    }
+
+    // Carril para el trabajo que no pertenece a un cálculo (benchmarks, tareas huérfanas)
+    public Executor shared() {
+        return lane(sharedLane);
+    }
+
+    private synchronized void enqueue(Object key, Runnable task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Pool del Master detenido");
+        }
+        lanes.computeIfAbsent(key, k -> new ArrayDeque<>()).addLast(task);
+        notify();
+    }
+
+    private synchronized Runnable take() throws InterruptedException {
+        while (lanes.isEmpty()) {
+            if (shutdown) {
+                return null;
+            }
+            wait();
+        }
+        Iterator<Map.Entry<Object, Deque<Runnable>>> it = lanes.entrySet().iterator();
+        Map.Entry<Object, Deque<Runnable>> next = it.next();
+        it.remove();
+        Runnable task = next.getValue().pollFirst();
+        if (!next.getValue().isEmpty()) {
+            lanes.put(next.getKey(), next.getValue()); // Vuelve al final del turno
+        }
+        return task;
+    }
+
+    private void runLoop() {
+        try {
+            Runnable task;
+            while ((task = take()) != null) {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    LOG.error("Tarea local fallida", e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public synchronized int pendingCount() {
+        int pending = 0;
+        for (Deque<Runnable> lane : lanes.values()) {
+            pending += lane.size();
+        }
+        return pending;
+    }
+
+    // Termina las tareas ya encoladas y espera hasta timeoutMs; después interrumpe lo que siga corriendo
+    public void shutdown(long timeoutMs) {
+        synchronized (this) {
+            shutdown = true;
+            notifyAll();
+        }
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        try {
+            for (Thread thread : threads) {
+                thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+}
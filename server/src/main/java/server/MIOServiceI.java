@@ -1,228 +1,367 @@
 package server;
 
 import com.zeroc.Ice.*;
-import com.mio.model.*;
-import com.mio.util.*;
+import com.zeroc.Ice.Properties;
+import com.mio.compute.ArcTraversals;
+import com.mio.ingest.ReferenceData;
+import com.mio.log.Log;
 import MIO.*;
 import java.util.*;
+import java.util.concurrent.CompletionStage;
 
 public class MIOServiceI implements MIOService {
 
-    private Map<Integer, com.mio.model.Stop> stops;
-    private List<com.mio.model.Route> routes;
-    private List<com.mio.model.Arc> arcs;
-    private GraphBuilder graphBuilder;
-    private boolean isGraphBuilt = false;
+    private static final Log LOG = Log.get("MIOService");
 
-    private MasterI master;
+    // Tamaño de página / lote por defecto y máximo para las consultas masivas
+    private static final int DEFAULT_PAGE = 1000;
+    private static final int MAX_PAGE = 10000;
+    private static final int STREAM_WINDOW = 4;
+
+    private static final String LINES_PATH = "/home/swarch/proyecto-mio/MIO/lines-241.csv";
+    private static final String STOPS_PATH = "/home/swarch/proyecto-mio/MIO/stops-241.csv";
+    private static final String LINE_STOPS_PATH = "/home/swarch/proyecto-mio/MIO/linestops-241.csv";
 
-    public MIOServiceI() {
-        this.stops = new HashMap<>();
-        this.routes = new ArrayList<>();
-        this.arcs = new ArrayList<>();
+    // Grafo publicado: cada consulta lee la referencia una vez y trabaja sobre ese snapshot, así
+    // una reconstrucción en curso nunca se ve a medias ni bloquea a los lectores
+    private volatile GraphSnapshot graph;
+    // Serializa las construcciones; una llamada que espera encuentra el grafo ya al día
+    private final java.lang.Object buildLock = new java.lang.Object();
+
+    private MasterI master;
+    private final GraphStreamer streamer = new GraphStreamer(STREAM_WINDOW);
+    private final SpeedJobs jobs;
+    private final TravelTimeRouter router;
+
+    public MIOServiceI(Properties properties) {
+        this.jobs = new SpeedJobs(this::computeAverageSpeed,
+                properties.getPropertyAsIntWithDefault("Jobs.Threads", 2),
+                properties.getPropertyAsIntWithDefault("Jobs.MaxQueued", 16),
+                properties.getPropertyAsIntWithDefault("Jobs.Retained", 64));
+        this.router = new TravelTimeRouter(
+                !"dijkstra".equalsIgnoreCase(properties.getPropertyWithDefault("Routing.Algorithm", "ch")),
+                Double.parseDouble(properties.getPropertyWithDefault("Routing.DefaultSpeedKmh", "20")));
     }
 
     public void setMaster(MasterI master) {
         this.master = master;
     }
 
+    // Sin cambios en los CSV (ruta, tamaño, fecha) es un no-op; si cambiaron, el nuevo grafo se
+    // arma aparte y se publica de una vez
     @Override
     public void buildGraph(Current current) {
         try {
-            System.out.println("Construyendo grafo del SITM-MIO...");
-
-            String linesPath = "/home/swarch/proyecto-mio/MIO/lines-241.csv";
-            String stopsPath = "/home/swarch/proyecto-mio/MIO/stops-241.csv";
-            String lineStopsPath = "/home/swarch/proyecto-mio/MIO/linestops-241.csv";
-
-            this.routes = CSVReader.readRoutes(linesPath);
-            System.out.printf("  - Rutas leidas: %d%n", routes.size());
-
-            this.stops = CSVReader.readStops(stopsPath);
-            System.out.printf("  - Paradas leidas: %d%n", stops.size());
-
-            List<LineStop> lineStops = CSVReader.readLineStops(lineStopsPath);
-            System.out.printf("  - Paradas por ruta leidas: %d%n", lineStops.size());
-
-            this.graphBuilder = new GraphBuilder(routes, stops, lineStops);
-            this.graphBuilder.buildGraph();
-            this.arcs = graphBuilder.getArcs();
+            synchronized (buildLock) {
+                String inputs = GraphSnapshot.inputsOf(LINES_PATH, STOPS_PATH, LINE_STOPS_PATH);
+                GraphSnapshot published = graph;
+                if (published != null && published.getInputs().equals(inputs)) {
+                    LOG.info("Grafo del SITM-MIO al dia (version %016x), sin reconstruir", published.getVersion());
+                    return;
+                }
 
-            System.out.printf("  - Arcos construidos: %d%n", arcs.size());
-            this.isGraphBuilt = true;
+                LOG.info("Construyendo grafo del SITM-MIO...");
+                GraphSnapshot built = GraphSnapshot.build(inputs, LINES_PATH, STOPS_PATH, LINE_STOPS_PATH);
+                ReferenceData reference = built.reference();
+                LOG.info("  - Version del grafo: %016x (%d arcos indexados)", reference.getVersion(),
+                        reference.getArcs().graphArcCount());
 
-            if (master != null) {
-                StopInfo[] stopInfos = new StopInfo[stops.size()];
-                int i = 0;
-                for (com.mio.model.Stop stop : stops.values()) {
-                    stopInfos[i++] = convertStop(stop);
+                if (master != null) {
+                    master.setReferenceData(reference);
+                    master.setStops(built.index().stops());
                 }
-                master.setStops(stopInfos);
+                graph = built;
             }
-
         } catch (java.lang.Exception e) {
-            System.err.println("Error construyendo el grafo: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error construyendo el grafo: " + e.getMessage(), e);
             throw new RuntimeException("Error construyendo el grafo: " + e.getMessage());
         }
     }
 
     @Override
     public StopInfo getStop(int stopId, Current current) {
-        checkGraphBuilt();
-
-        com.mio.model.Stop stop = stops.get(stopId);
+        GraphIndex index = currentGraph().index();
+        StopInfo stop = index.stop(stopId);
         if (stop == null) {
             throw new RuntimeException("Parada no encontrada: " + stopId);
         }
-
-        return convertStop(stop);
+        return stop;
     }
 
     @Override
     public StopInfo[] getAllStops(Current current) {
-        checkGraphBuilt();
-
-        StopInfo[] result = new StopInfo[stops.size()];
-        int i = 0;
-        for (com.mio.model.Stop stop : stops.values()) {
-            result[i++] = convertStop(stop);
-        }
-        return result;
+        return currentGraph().index().stops();
     }
 
     @Override
     public RouteInfo getRoute(int routeId, Current current) {
-        checkGraphBuilt();
-
-        for (com.mio.model.Route route : routes) {
-            if (route.getLineId() == routeId) {
-                return convertRoute(route);
-            }
+        GraphIndex index = currentGraph().index();
+        RouteInfo route = index.route(routeId);
+        if (route == null) {
+            throw new RuntimeException("Ruta no encontrada: " + routeId);
         }
-        throw new RuntimeException("Ruta no encontrada: " + routeId);
+        return route;
     }
 
     @Override
     public RouteInfo[] getAllRoutes(Current current) {
-        checkGraphBuilt();
-
-        RouteInfo[] result = new RouteInfo[routes.size()];
-        for (int i = 0; i < routes.size(); i++) {
-            result[i] = convertRoute(routes.get(i));
-        }
-        return result;
+        return currentGraph().index().routes();
     }
 
     @Override
     public ArcInfo[] getAllArcs(Current current) {
-        checkGraphBuilt();
-
-        ArcInfo[] result = new ArcInfo[arcs.size()];
-        for (int i = 0; i < arcs.size(); i++) {
-            result[i] = convertArc(arcs.get(i));
-        }
-        return result;
+        return currentGraph().index().arcs();
     }
 
     @Override
     public ArcInfo[] getArcsByRoute(int routeId, int orientation, Current current) {
-        checkGraphBuilt();
+        return currentGraph().index().arcsByRoute(routeId, orientation);
+    }
 
-        List<ArcInfo> filtered = new ArrayList<>();
-        for (com.mio.model.Arc arc : arcs) {
-            if (arc.getLineId() == routeId && arc.getOrientation() == orientation) {
-                filtered.add(convertArc(arc));
-            }
+    @Override
+    public int getStopCount(Current current) {
+        return currentGraph().index().stops().length;
+    }
+
+    @Override
+    public int getArcCount(Current current) {
+        return currentGraph().index().arcs().length;
+    }
+
+    @Override
+    public StopPage getStopsPage(int cursor, int limit, Current current) {
+        GraphSnapshot graph = currentGraph();
+        StopInfo[] all = graph.index().stops();
+        int to = pageEnd(all.length, cursor, limit);
+        return new StopPage(Arrays.copyOfRange(all, Math.min(cursor, to), to), to < all.length ? to : -1,
+                all.length, graph.getVersion());
+    }
+
+    @Override
+    public ArcPage getArcsPage(int cursor, int limit, Current current) {
+        GraphSnapshot graph = currentGraph();
+        ArcInfo[] all = graph.index().arcs();
+        int to = pageEnd(all.length, cursor, limit);
+        return new ArcPage(Arrays.copyOfRange(all, Math.min(cursor, to), to), to < all.length ? to : -1,
+                all.length, graph.getVersion());
+    }
+
+    private static int pageEnd(int total, int cursor, int limit) {
+        if (cursor < 0) {
+            throw new RuntimeException("Cursor invalido: " + cursor);
         }
+        return (int) Math.min(total, (long) cursor + pageSize(limit));
+    }
 
-        return filtered.toArray(new ArcInfo[0]);
+    private static int pageSize(int limit) {
+        return limit <= 0 ? DEFAULT_PAGE : Math.min(limit, MAX_PAGE);
     }
 
     @Override
-    public String getStatistics(Current current) {
-        checkGraphBuilt();
+    public CompletionStage<Void> streamStopsAsync(GraphStreamListenerPrx listener, int batchSize,
+            Current current) {
+        GraphIndex index = currentGraph().index();
+        LOG.info("Streaming de paradas a un cliente (lotes de %d)", pageSize(batchSize));
+        return streamer.stream(index.stops(), pageSize(batchSize),
+                (batch, offset, total) -> listener.stopBatchAsync(batch, offset, total));
+    }
 
-        StringBuilder stats = new StringBuilder();
-        stats.append("=== Estadisticas del Sistema MIO ===\n");
-        stats.append(String.format("Total de paradas: %d\n", stops.size()));
-        stats.append(String.format("Total de rutas: %d\n", routes.size()));
-        stats.append(String.format("Total de arcos: %d\n", arcs.size()));
+    @Override
+    public CompletionStage<Void> streamArcsAsync(GraphStreamListenerPrx listener, int batchSize,
+            Current current) {
+        GraphIndex index = currentGraph().index();
+        LOG.info("Streaming de arcos a un cliente (lotes de %d)", pageSize(batchSize));
+        return streamer.stream(index.arcs(), pageSize(batchSize),
+                (batch, offset, total) -> listener.arcBatchAsync(batch, offset, total));
+    }
 
-        long arcosIda = arcs.stream()
-                .filter(a -> a.getOrientation() == 0)
-                .count();
-        long arcosVuelta = arcs.stream()
-                .filter(a -> a.getOrientation() == 1)
-                .count();
+    @Override
+    public String getStatistics(Current current) {
+        return currentGraph().index().statistics();
+    }
 
-        stats.append(String.format("Arcos IDA: %d\n", arcosIda));
-        stats.append(String.format("Arcos VUELTA: %d\n", arcosVuelta));
+    @Override
+    public void addProgressListener(ProgressListenerPrx listener, Current current) {
+        if (master == null) {
+            throw new RuntimeException("Master no está disponible");
+        }
+        master.addProgressListener(listener, ProgressPublisher.ALL_JOBS);
+        LOG.info("Cliente suscrito al avance de los calculos");
+    }
 
-        return stats.toString();
+    @Override
+    public void addJobProgressListener(long jobId, ProgressListenerPrx listener, Current current) {
+        if (master == null) {
+            throw new RuntimeException("Master no está disponible");
+        }
+        if (jobId == ProgressPublisher.ALL_JOBS) {
+            throw new RuntimeException("Trabajo invalido: " + jobId);
+        }
+        master.addProgressListener(listener, jobId);
+        LOG.info("Cliente suscrito al avance del trabajo " + jobId);
     }
 
     @Override
-    public GlobalResult calculateAverageSpeed(String csvPath, int maxDatagrams, Current current) {
-        checkGraphBuilt();
-        
+    public void removeProgressListener(ProgressListenerPrx listener, Current current) {
+        if (master != null) {
+            master.removeProgressListener(listener);
+        }
+    }
+
+    private void checkCalculationAvailable() {
+        currentGraph();
         if (master == null) {
             throw new RuntimeException("Master no está disponible");
         }
+    }
+
+    // Pasa por la misma cola de trabajos que submitSpeedJob y responde cuando el trabajo termina,
+    // sin bloquear el hilo de despacho mientras tanto
+    @Override
+    public CompletionStage<GlobalResult> calculateAverageSpeedAsync(String csvPath, int maxDatagrams,
+            Current current) {
+        checkCalculationAvailable();
+        return jobs.result(jobs.submit(csvPath, maxDatagrams));
+    }
+
+    @Override
+    public long submitSpeedJob(String csvPath, int maxDatagrams, Current current) {
+        checkCalculationAvailable();
+        return jobs.submit(csvPath, maxDatagrams);
+    }
+
+    @Override
+    public JobStatus getJobStatus(long jobId, Current current) {
+        return jobs.status(jobId);
+    }
+
+    @Override
+    public CompletionStage<GlobalResult> getJobResultAsync(long jobId, Current current) {
+        return jobs.result(jobId);
+    }
+
+    @Override
+    public boolean cancelJob(long jobId, Current current) {
+        return jobs.cancel(jobId);
+    }
+
+    // Los pesos salen de las velocidades publicadas por el último cálculo sobre el historial completo
+    // (ver MasterI.getArcSpeeds); si cambiaron desde la consulta anterior se re-personalizan antes de responder
+    @Override
+    public TravelRoute findFastestPath(int fromStopId, int toStopId, Current current) {
+        return router.weights(currentGraph().reference(), master.getArcSpeeds()).route(fromStopId, toStopId);
+    }
+
+    @Override
+    public TravelRoute[] findFastestPaths(StopPair[] pairs, Current current) {
+        if (pairs.length > MAX_PAGE) {
+            throw new RuntimeException("Demasiados pares en un lote: " + pairs.length + " (maximo " + MAX_PAGE + ")");
+        }
+        TravelTimeRouter.Weights weights = router.weights(currentGraph().reference(), master.getArcSpeeds());
+        TravelRoute[] routes = new TravelRoute[pairs.length];
+        for (int i = 0; i < pairs.length; i++) {
+            routes[i] = weights.route(pairs[i].fromStopId, pairs[i].toStopId);
+        }
+        return routes;
+    }
+
+    public void shutdown() {
+        jobs.shutdown();
+        streamer.shutdown();
+    }
+
+    // Cuerpo de un trabajo de SpeedJobs; context se consulta en la carga y en el despacho
+    private GlobalResult computeAverageSpeed(String csvPath, int maxDatagrams, JobContext context) {
+        LOG.info("Cliente solicitó cálculo de velocidad promedio (trabajo %d)", context.getJobId());
+        LOG.info("  - CSV: " + csvPath);
+        LOG.info("  - Max datagramas: " + maxDatagrams);
         
-        System.out.println("Cliente solicitó cálculo de velocidad promedio");
-        System.out.println("  - CSV: " + csvPath);
-        System.out.println("  - Max datagramas: " + maxDatagrams);
-        
+        int numTasks = Runtime.getRuntime().availableProcessors() * 2;
+        // El trabajo queda atado al grafo publicado al empezar, aunque se reconstruya en el camino
+        GraphSnapshot graph = currentGraph();
+        context.reference(graph.reference());
+
+        ResultCache cache = master.getResultCache();
+        ResultCache.Key key = null;
+        if (cache.isEnabled()) {
+            try {
+                key = cache.keyFor(csvPath, MasterI.lineLimit(maxDatagrams), graph.getVersion());
+                GlobalResult cached = cache.lookup(key);
+                if (cached != null) {
+                    cached.loadCsvTimeMs = 0;
+                    LOG.info("Cálculo respondido desde la cache: %.2f km/h", cached.globalAvgSpeed);
+                    master.publishArcSpeeds(cache.arcSpeeds(key), context.getJobId());
+                    return cached;
+                }
+            } catch (java.io.IOException e) {
+                LOG.warn("  - No se pudo identificar " + csvPath + " para la cache: " + e.getMessage());
+            }
+        }
+
+        if (master.isDataLocal()) {
+            GlobalResult result = master.processHistoryFile(csvPath, maxDatagrams, numTasks, context);
+            result.loadCsvTimeMs = 0;
+            LOG.info("Cálculo completado: %.2f km/h", result.globalAvgSpeed);
+            ArcSpeeds speeds = routingSpeeds(context, maxDatagrams <= 0);
+            if (key != null && context.isComplete()) {
+                cache.put(key, result, key.getLineLimit(), false, Collections.emptyMap(), speeds);
+            }
+            return result;
+        }
+
         long loadStart = System.currentTimeMillis();
-        SpeedDatagram[] datagrams = master.loadDatagramsFromCSV(csvPath, maxDatagrams, null);
+        int[] cutLines = key != null ? cache.checkpointLines(key.getLineLimit()) : new int[0];
+        MasterI.HistoryLoad load = master.loadHistory(csvPath, maxDatagrams, cutLines, context);
         long loadTime = System.currentTimeMillis() - loadStart;
         
-        System.out.println("  - Carga completada: " + datagrams.length + " datagramas en " + loadTime + " ms");
-        
-        int numTasks = Runtime.getRuntime().availableProcessors() * 2;
+        LOG.info("  - Carga completada: " + load.datagrams.length + " datagramas en " + loadTime + " ms");
         
-        GlobalResult result = master.processDatagrams(datagrams, numTasks, null);
+        Map<Integer, GlobalResult> byOffset = new HashMap<>();
+        GlobalResult result = master.processDatagrams(load.datagrams, numTasks, load.cutOffsets, byOffset, context);
         
         result.loadCsvTimeMs = loadTime;
         
-        System.out.println("Cálculo completado: " + String.format("%.2f", result.globalAvgSpeed) + " km/h");
+        LOG.info("Cálculo completado: %.2f km/h", result.globalAvgSpeed);
+
+        ArcSpeeds speeds = routingSpeeds(context, !load.failed && (maxDatagrams <= 0 || load.endOfFile));
+        if (key != null && !load.failed && context.isComplete()) {
+            Map<Integer, GlobalResult> byLine = new HashMap<>();
+            for (int i = 0; i < load.cutLines.length; i++) {
+                GlobalResult checkpoint = byOffset.get(load.cutOffsets[i]);
+                if (checkpoint != null) {
+                    byLine.put(load.cutLines[i], checkpoint);
+                }
+            }
+            cache.put(key, result, load.linesRead, load.endOfFile, byLine, speeds);
+        }
         
         return result;
     }
 
-    private void checkGraphBuilt() {
-        if (!isGraphBuilt) {
-            throw new RuntimeException("El grafo no ha sido construido. Llame a buildGraph() primero.");
-        }
+    // Solo un cálculo completo sobre el historial entero alimenta el ruteo; null en los demás
+    private ArcSpeeds routingSpeeds(JobContext context, boolean fullHistory) {
+        ArcTraversals traversals = fullHistory && context.isComplete() ? context.getTraversals() : null;
+        ArcSpeeds speeds = traversals != null ? ArcSpeeds.of(traversals, context.reference(null)) : null;
+        master.publishArcSpeeds(speeds, context.getJobId());
+        return speeds;
     }
 
-    private StopInfo convertStop(com.mio.model.Stop stop) {
-        StopInfo info = new StopInfo();
-        info.stopId = stop.getStopId();
-        info.stopName = stop.getLongName();
-        info.latitude = stop.getDecimalLatit();
-        info.longitude = stop.getDecimalLong();
-        return info;
-    }
-
-    private RouteInfo convertRoute(com.mio.model.Route route) {
-        RouteInfo info = new RouteInfo();
-        info.routeId = route.getLineId();
-        info.routeName = route.getShortName();
-        info.variant = route.getDescription();
-        info.orientation = 0; // La clase Route no tiene orientación
-        return info;
-    }
-
-    private ArcInfo convertArc(com.mio.model.Arc arc) {
-        ArcInfo info = new ArcInfo();
-        info.fromStopId = arc.getFromStopId();
-        info.toStopId = arc.getToStopId();
-        info.routeId = arc.getLineId();
-        info.routeName = ""; // No disponible directamente
-        info.orientation = arc.getOrientation();
-        info.sequenceOrder = arc.getSequenceFrom();
-        return info;
+    @Override
+    public long getGraphVersion(Current current) {
+        GraphSnapshot snapshot = graph;
+        return snapshot != null ? snapshot.getVersion() : 0;
+    }
+
+    @Override
+    public ReferenceTables getReferenceTables(Current current) {
+        return MasterI.referenceTables(currentGraph().reference());
+    }
+
+    private GraphSnapshot currentGraph() {
+        GraphSnapshot snapshot = graph;
+        if (snapshot == null) {
+            throw new RuntimeException("El grafo no ha sido construido. Llame a buildGraph() primero.");
+        }
+        return snapshot;
     }
 }
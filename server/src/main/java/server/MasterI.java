@@ -2,287 +2,531 @@ package server;
 
 import MIO.*;
 import com.zeroc.Ice.Current;
-import com.mio.model.ArcState;
-import com.mio.model.BusHistory;
+import com.zeroc.Ice.Properties;
+import com.mio.compute.ArcCounter;
+import com.mio.compute.ArcTable;
+import com.mio.compute.ArcTraversals;
+import com.mio.compute.SpeedKernel;
+import com.mio.compute.SpeedTotals;
+import com.mio.compute.SortedArcs;
+import com.mio.ingest.ArcIndex;
+import com.mio.ingest.BusTracker;
+import com.mio.ingest.HistoryFile;
+import com.mio.ingest.ReferenceData;
+import com.mio.ingest.StopLocator;
+import com.mio.log.Log;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.io.*;
 import java.text.SimpleDateFormat;
 
 public class MasterI implements Master {
-    private int arcDebugCounter = 0;
+    private static final Log LOG = Log.get("Master");
 
-    private final ExecutorService threadPool;
-    private final List<WorkerPrx> registeredWorkers;
-    private final Map<Integer, WorkerPrx> workerMap;
-    private int workerIdCounter = 0;
+    private final JobScheduler threadPool;
+    private final WorkerRegistry workerRegistry;
     private final int numThreads;
-
-    private Map<Integer, double[]> stopsMap = new HashMap<>();
-
-    private Map<String, List<Integer>> stopGrid = new HashMap<>();
-
-    private Map<Integer, ArcState> arcStates = new ConcurrentHashMap<>();
-
-    private static final double STOP_PROXIMITY_THRESHOLD = 0.05;
-
-    private static final double EARTH_RADIUS_KM = 6371.0;
-
-    private int debugCounter = 0;
-
-    public MasterI(int numThreads) {
+    private final boolean pullMode;
+    private final boolean dataLocal;
+    private final TaskQueue taskQueue;
+    private final TaskDispatcher taskDispatcher;
+    private final FramedTransfer framedTransfer;
+    private final TreeAggregator treeAggregator;
+    private final ProgressPublisher progressPublisher;
+
+    private volatile Map<Integer, double[]> stopsMap = new HashMap<>();
+
+    private volatile StopLocator stopLocator;
+    private volatile ReferenceData reference;
+    private volatile ReferenceTables referenceTables;
+    private volatile ArcSpeeds arcSpeeds;
+    private long arcSpeedsJob = -1;
+    private final ResultCache resultCache;
+
+    // Ids de tarea únicos entre trabajos: los resultados, la cola pull y los frames de los workers
+    // se identifican por taskId
+    private final AtomicInteger nextTaskId = new AtomicInteger();
+
+    private static final double STOP_PROXIMITY_THRESHOLD = StopLocator.DEFAULT_PROXIMITY_KM;
+
+    public MasterI(int numThreads, Properties properties) {
         this.numThreads = numThreads;
-        this.threadPool = Executors.newFixedThreadPool(numThreads);
-        this.registeredWorkers = new CopyOnWriteArrayList<>();
-        this.workerMap = new ConcurrentHashMap<>();
-
-        System.out.println("[Master] Inicializado con ThreadPool de " + numThreads + " threads");
+        this.threadPool = new JobScheduler(numThreads);
+        this.workerRegistry = new WorkerRegistry(
+                properties.getPropertyAsIntWithDefault("Master.HeartbeatIntervalMs", 2000),
+                properties.getPropertyAsIntWithDefault("Master.HeartbeatMisses", 3));
+        TaskTimings timings = new TaskTimings(256,
+                properties.getPropertyAsIntWithDefault("Master.SpeculativePercentile", 90) / 100.0,
+                properties.getPropertyAsIntWithDefault("Master.SpeculativeFactorPercent", 150) / 100.0,
+                properties.getPropertyAsIntWithDefault("Master.SpeculativeMinMs", 2000), 3);
+        this.pullMode = "pull".equalsIgnoreCase(properties.getPropertyWithDefault("Master.DispatchMode", "push"));
+        this.dataLocal = properties.getPropertyAsIntWithDefault("Master.DataLocal", 0) > 0;
+        this.taskQueue = new TaskQueue(properties.getPropertyAsIntWithDefault("Master.LeaseTimeoutMs", 30000),
+                timings);
+        this.framedTransfer = new FramedTransfer(
+                properties.getPropertyAsIntWithDefault("Master.FrameDatagrams", 50000),
+                properties.getPropertyAsIntWithDefault("Master.FramesInFlight", 4),
+                FramedTransfer.WireFormat.valueOf(
+                        properties.getPropertyWithDefault("Master.WireFormat", "list").toUpperCase()));
+        this.taskDispatcher = new TaskDispatcher(threadPool.shared(), workerRegistry, timings,
+                properties.getPropertyAsIntWithDefault("Master.InFlightPerWorker", 2), framedTransfer,
+                properties.getPropertyAsIntWithDefault("Master.BatchBytes", 4194304));
+        this.treeAggregator = new TreeAggregator(workerRegistry, framedTransfer,
+                properties.getPropertyAsIntWithDefault("Master.AggregationFanIn", 0),
+                properties.getPropertyAsIntWithDefault("Master.AggregationTimeoutMs", 120000));
+        this.progressPublisher = new ProgressPublisher(
+                properties.getPropertyAsIntWithDefault("Master.ProgressIntervalMs", 500));
+        String cacheDir = properties.getPropertyWithDefault("Master.ResultCacheDir", "");
+        this.resultCache = new ResultCache(properties.getPropertyAsIntWithDefault("Master.ResultCacheEntries", 16),
+                cacheDir.isEmpty() ? null : new File(cacheDir));
+        workerRegistry.addRemovalListener(this::onWorkerRemoved);
+
+        LOG.info("[Master] Inicializado con ThreadPool de " + numThreads + " threads");
+        LOG.info("[Master] Modo de despacho: " + (pullMode ? "PULL (cola de tareas)" : "PUSH"));
+        LOG.info("[Master] Formato de datagramas: " + framedTransfer.getFormat());
+        if (framedTransfer.isEnabled()) {
+            LOG.info("[Master] Tareas grandes por frames de " + framedTransfer.getFrameDatagrams()
+                    + " datagramas (" + framedTransfer.getFramesInFlight() + " en vuelo)");
+        }
+        if (dataLocal) {
+            LOG.info("[Master] Lectura del historico en los workers (Master.DataLocal=1)");
+        }
+        if (treeAggregator.isEnabled() && !pullMode) {
+            LOG.info("[Master] Agregacion en arbol con fan-in " + treeAggregator.getFanIn());
+        }
     }
 
     public void shutdown() {
-        threadPool.shutdown();
-        try {
-            if (!threadPool.awaitTermination(60, TimeUnit.SECONDS)) {
-                threadPool.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            threadPool.shutdownNow();
-        }
+        workerRegistry.shutdown();
+        taskDispatcher.shutdown();
+        taskQueue.shutdown();
+        threadPool.shutdown(60_000);
     }
 
+    // Se publica un mapa nuevo en lugar de modificar el actual; los benchmarks toman el mapa y la
+    // referencia una vez al empezar, así uno en curso no mezcla el grafo anterior con el nuevo
     public void setStops(StopInfo[] stops) {
-        stopsMap.clear();
-        stopGrid.clear();
-
+        Map<Integer, double[]> byId = new HashMap<>();
         for (StopInfo stop : stops) {
-            stopsMap.put(stop.stopId, new double[] { stop.latitude, stop.longitude });
-
-            String gridCell = getGridCell(stop.latitude, stop.longitude);
-            stopGrid.computeIfAbsent(gridCell, k -> new ArrayList<>()).add(stop.stopId);
+            byId.put(stop.stopId, new double[] { stop.latitude, stop.longitude });
         }
+        stopsMap = byId;
 
-        System.out.println("[Master] Paradas del grafo registradas: " + stopsMap.size());
-        System.out.println("[Master] Indice espacial construido: " + stopGrid.size() + " celdas");
+        LOG.info("[Master] Paradas del grafo registradas: " + byId.size());
 
         if (stops.length > 0) {
-            System.out.println("[DEBUG] Ejemplo parada 0: ID=" + stops[0].stopId + " Lat=" + stops[0].latitude + " Lon="
+            LOG.debug("[DEBUG] Ejemplo parada 0: ID=" + stops[0].stopId + " Lat=" + stops[0].latitude + " Lon="
                     + stops[0].longitude);
-            System.out.println("[DEBUG] Cell para parada 0: " + getGridCell(stops[0].latitude, stops[0].longitude));
+            LOG.debug("[DEBUG] Cell para parada 0: " + StopLocator.cellLabel(stops[0].latitude, stops[0].longitude));
         }
     }
 
-    private String getGridCell(double lat, double lon) {
-        int latCell = (int) (lat * 200);
-        int lonCell = (int) (lon * 200);
-        return latCell + "," + lonCell;
+    // Paradas, indice denso de arcos y version del grafo; los workers replican la misma version
+    public void setReferenceData(ReferenceData reference) {
+        ReferenceTables tables = referenceTables(reference);
+        this.referenceTables = tables;
+        this.reference = reference;
+        this.stopLocator = reference.getLocator();
+        framedTransfer.setGraphVersion(reference.getVersion());
+        for (RemoteWorker worker : workerRegistry.active()) {
+            pushReference(worker, tables);
+        }
+        LOG.info("[Master] Indice espacial construido: " + stopLocator.cellCount() + " celdas");
+        LOG.info("[Master] Indice de arcos: " + reference.getArcs().graphArcCount()
+                + " arcos del grafo, version " + Long.toHexString(reference.getVersion()));
     }
 
-    private Integer findNearestStop(double lat, double lon) {
-        String centerCell = getGridCell(lat, lon);
-        double minDistance = Double.MAX_VALUE;
-        Integer nearestStopId = null;
+    public static ReferenceTables referenceTables(ReferenceData data) {
+        ReferenceTables tables = new ReferenceTables();
+        tables.version = data.getVersion();
+        tables.stopIds = data.getStopIds();
+        tables.latitudes = data.getLatitudes();
+        tables.longitudes = data.getLongitudes();
+        tables.arcFromStopIds = data.getGraphArcFrom();
+        tables.arcToStopIds = data.getGraphArcTo();
+        tables.arcLengthsKm = data.getArcLengthsKm();
+        return tables;
+    }
 
-        String[] parts = centerCell.split(",");
-        int centerLat = Integer.parseInt(parts[0]);
-        int centerLon = Integer.parseInt(parts[1]);
+    // Envío asíncrono: el worker no vuelve a llamar al Master desde una tarea para obtenerlos, así
+    // ninguna tarea depende de que un hilo de despacho del Master esté libre
+    private void pushReference(RemoteWorker worker, ReferenceTables tables) {
+        worker.getProxy().loadReferenceAsync(tables).whenComplete((v, ex) -> {
+            if (ex != null) {
+                LOG.warn("[Master] No se pudieron enviar los datos de referencia al worker %d: %s",
+                        worker.getWorkerId(), ex);
+            }
+        });
+    }
 
-        for (int dLat = -1; dLat <= 1; dLat++) {
-            for (int dLon = -1; dLon <= 1; dLon++) {
-                String cell = (centerLat + dLat) + "," + (centerLon + dLon);
-                List<Integer> stopsInCell = stopGrid.get(cell);
+    @Override
+    public int registerWorker(WorkerPrx worker, WorkerCapabilities capabilities, Current current) {
+        RemoteWorker registered = workerRegistry.register(worker, capabilities);
+        ReferenceTables tables = referenceTables;
+        if (tables != null) {
+            pushReference(registered, tables);
+        }
+        LOG.info("[Master] Worker " + registered.getWorkerId() + " registrado (" + capabilities.hostname
+                + ", " + capabilities.cores + " cores, heap " + (capabilities.maxHeapBytes / (1024 * 1024))
+                + " MB, kernel " + String.format("%.1f", capabilities.kernelSpeed) + " datagramas/ms). Total workers: "
+                + workerRegistry.size());
+        return registered.getWorkerId();
+    }
 
-                if (stopsInCell != null) {
-                    for (Integer stopId : stopsInCell) {
-                        double[] stopCoords = stopsMap.get(stopId);
-                        double distance = haversineDistance(lat, lon, stopCoords[0], stopCoords[1]);
+    @Override
+    public void unregisterWorker(int workerId, Current current) {
+        if (workerRegistry.unregister(workerId) != null) {
+            LOG.info("[Master] Worker " + workerId + " desregistrado");
+        }
+    }
 
-                        if (distance < minDistance && distance <= STOP_PROXIMITY_THRESHOLD) {
-                            minDistance = distance;
-                            nearestStopId = stopId;
-                        }
-                    }
+    private void onWorkerRemoved(RemoteWorker worker) {
+        taskQueue.requeueWorker(worker.getWorkerId());
+        if (workerRegistry.isEmpty()) {
+            Map<TaskQueue.Lane, List<Task>> orphaned = taskQueue.drain();
+            int count = 0;
+            for (List<Task> tasks : orphaned.values()) {
+                count += tasks.size();
+            }
+            if (count > 0) {
+                LOG.warn("[Master] [WARNING] Sin workers remotos. " + count
+                        + " tareas en cola se procesan en el ThreadPool LOCAL.");
+            }
+            // Cada tarea vuelve al carril de su trabajo, así conserva su turno en el pool local
+            for (Map.Entry<TaskQueue.Lane, List<Task>> lane : orphaned.entrySet()) {
+                ReferenceData ref = lane.getKey().reference;
+                for (Task task : lane.getValue()) {
+                    lane.getKey().executor.execute(
+                            () -> taskQueue.complete(-1, new WorkerI(task.taskId, ref).processTask(task, null)));
                 }
             }
         }
+    }
 
-        return nearestStopId;
+    @Override
+    public int getWorkerCount(Current current) {
+        return workerRegistry.size();
     }
 
-    private double haversineDistance(double lat1, double lon1, double lat2, double lon2) {
-        double lat1Rad = Math.toRadians(lat1);
-        double lat2Rad = Math.toRadians(lat2);
-        double deltaLat = Math.toRadians(lat2 - lat1);
-        double deltaLon = Math.toRadians(lon2 - lon1);
+    @Override
+    public WorkerStatus[] getWorkers(Current current) {
+        return workerRegistry.statuses();
+    }
 
-        double a = Math.sin(deltaLat / 2) * Math.sin(deltaLat / 2) +
-                Math.cos(lat1Rad) * Math.cos(lat2Rad) *
-                        Math.sin(deltaLon / 2) * Math.sin(deltaLon / 2);
+    @Override
+    public Task requestTask(int workerId, Current current) {
+        workerRegistry.markAlive(workerId);
+        Task task = workerRegistry.isActive(workerId) ? taskQueue.poll(workerId) : null;
+        if (task == null) {
+            Task empty = new Task();
+            empty.taskId = -1;
+            empty.datagrams = new SpeedDatagram[0];
+            return empty;
+        }
+        LOG.debug("[Master] Task %d entregada a Worker %d (pull)", task.taskId, workerId);
+        return framedTransfer.prepare(task);
+    }
 
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    @Override
+    public void submitResult(int workerId, PartialResult result, Current current) {
+        workerRegistry.markAlive(workerId);
+        taskQueue.complete(workerId, result);
+    }
 
-        return EARTH_RADIUS_KM * c;
+    @Override
+    public GlobalResult processDatagrams(SpeedDatagram[] datagrams, int numTasks, Current current) {
+        return processDatagrams(datagrams, numTasks, new int[0], null, JobContext.untracked());
     }
 
-    private void updateArcState(int fromStopId, int toStopId,
-            double fromLat, double fromLon,
-            double toLat, double toLon,
-            long t0, long t1) {
-        int arcId = fromStopId * 10000 + toStopId;
+    // cutOffsets: posiciones (en datagramas) donde además se cortan tareas; si checkpoints no es null y
+    // cada resultado corresponde a una tarea, se llena con el resultado del prefijo hasta cada corte
+    public GlobalResult processDatagrams(SpeedDatagram[] datagrams, int numTasks, int[] cutOffsets,
+            Map<Integer, GlobalResult> checkpoints, JobContext context) {
+        long startTime = System.currentTimeMillis();
+        context.checkCancelled();
+
+        LOG.info("\n[Master] ========================================");
+        LOG.info("[Master] Iniciando procesamiento distribuido");
+        LOG.info("[Master] Total datagramas: " + datagrams.length);
+        LOG.info("[Master] Numero de tareas: " + numTasks);
+        LOG.info("[Master] Threads disponibles: " + numThreads);
+        LOG.info("[Master] Workers remotos registrados: " + workerRegistry.size());
+        LOG.info("[Master] ========================================\n");
+
+        long separationTime;
+        long distributionTime;
+        List<CompletableFuture<PartialResult>> futures;
+        int[] bounds = taskBounds(datagrams.length, numTasks, cutOffsets);
+        int taskBase = allocateTaskIds(bounds.length - 1);
+        Executor lane = threadPool.lane(context);
+        // Con agregación en árbol los resultados son por subárbol y no por tarea
+        boolean perTask = workerRegistry.isEmpty() || pullMode
+                || !(treeAggregator.isEnabled() && workerRegistry.size() > 1);
+        if (workerRegistry.isEmpty()) {
+            separationTime = 0;
+            long distributionStart = System.currentTimeMillis();
+            futures = launchLocal(datagrams, bounds, taskBase, context);
+            distributionTime = System.currentTimeMillis() - distributionStart;
+        } else {
+            long separationStart = System.currentTimeMillis();
+            List<Task> tasks = separateDependencies(datagrams, bounds, taskBase);
+            separationTime = System.currentTimeMillis() - separationStart;
+
+            context.checkCancelled();
+            long distributionStart = System.currentTimeMillis();
+            futures = launchWorkers(tasks, lane, context.reference(reference));
+            distributionTime = System.currentTimeMillis() - distributionStart;
+        }
 
-        double distance = haversineDistance(fromLat, fromLon, toLat, toLon);
-        double timeHours = (t1 - t0) / (1000.0 * 3600.0);
+        long consolidationStart = System.currentTimeMillis();
+        GlobalResult globalResult = processResults(futures, startTime, taskBase,
+                perTask && checkpoints != null ? bounds : null, cutOffsets, checkpoints, context);
+        long consolidationTime = System.currentTimeMillis() - consolidationStart;
+        
+        globalResult.separationTimeMs = separationTime;
+        globalResult.distributionTimeMs = distributionTime;
+        globalResult.consolidationTimeMs = consolidationTime;
+        globalResult.activeWorkers = workerRegistry.size();
 
-        if (arcDebugCounter < 20) {
-            double speed = (timeHours > 0.0001) ? distance / timeHours : 0.0;
-            System.out.println("[ARC DEBUG] fromStop=" + fromStopId + " toStop=" + toStopId +
-                    " dist=" + String.format("%.3f", distance) + "km time=" + String.format("%.3f", timeHours)
-                    + "h speed=" + String.format("%.2f", speed) + "km/h");
-            arcDebugCounter++;
-        }
+        LOG.info("\n[Master] ========================================");
+        LOG.info("[Master] Procesamiento completado");
+        LOG.info("[Master] Velocidad promedio global: " +
+                String.format("%.2f", globalResult.globalAvgSpeed) + " km/h");
+        LOG.info("[Master] Tiempo total: " + globalResult.totalProcessingTimeMs + " ms");
+        LOG.info("[Master]   - Separación: " + globalResult.separationTimeMs + " ms");
+        LOG.info("[Master]   - Distribución: " + globalResult.distributionTimeMs + " ms");
+        LOG.info("[Master]   - Consolidación: " + globalResult.consolidationTimeMs + " ms");
+        LOG.info("[Master] Workers activos: " + globalResult.activeWorkers);
+        LOG.info("[Master] ========================================\n");
 
-        if (timeHours > 0.0001 && distance > 0.001) {
-            ArcState state = arcStates.computeIfAbsent(arcId,
-                    k -> new ArcState(fromStopId, toStopId));
-            state.updateSpeed(distance, timeHours);
-        }
+        return globalResult;
     }
 
-    @Override
-    public void registerWorker(WorkerPrx worker, Current current) {
-        registeredWorkers.add(worker);
-        int workerId = workerIdCounter++;
-        workerMap.put(workerId, worker);
-        System.out.println("[Master] Worker registrado. Total workers: " + registeredWorkers.size());
+    public ResultCache getResultCache() {
+        return resultCache;
     }
 
-    @Override
-    public void unregisterWorker(int workerId, Current current) {
-        WorkerPrx worker = workerMap.remove(workerId);
-        if (worker != null) {
-            registeredWorkers.remove(worker);
-            System.out.println("[Master] Worker " + workerId + " desregistrado");
+    // Velocidades por arco que usa el router: longitud del arco sobre la mediana de los recorridos de
+    // los buses entre sus paradas en el último cálculo completo sobre el historial entero, por orden de pedido. Los cálculos con límite de líneas, las llamadas directas a
+    // processDatagrams (pruebas y benchmarks) y los resultados incompletos no las publican; un acierto
+    // de la caché vuelve a publicar las que se guardaron con la entrada. null si aún no hay
+    public ArcSpeeds getArcSpeeds() {
+        return arcSpeeds;
+    }
+
+    // Un trabajo pedido antes que el publicado no lo reemplaza aunque termine después
+    public synchronized void publishArcSpeeds(ArcSpeeds speeds, long jobId) {
+        if (speeds != null && jobId >= arcSpeedsJob) {
+            arcSpeeds = speeds;
+            arcSpeedsJob = jobId;
+            LOG.info("[Master] Velocidades por arco del trabajo %d publicadas para el ruteo (%d arcos)", jobId,
+                    speeds.size());
         }
     }
 
-    @Override
-    public int getWorkerCount(Current current) {
-        return registeredWorkers.size();
+    // Velocidad de un arco en las velocidades publicadas, NaN si no se observó o se descartó
+    public double getArcSpeed(int arcIdx) {
+        ArcSpeeds speeds = arcSpeeds;
+        return speeds != null ? speeds.speed(arcIdx) : Double.NaN;
     }
 
-    @Override
-    public GlobalResult processDatagrams(SpeedDatagram[] datagrams, int numTasks, Current current) {
+    public boolean isDataLocal() {
+        return dataLocal && !workerRegistry.isEmpty();
+    }
+
+    // Cada worker lee su rango de bytes del historico; el master solo une los arcos que cruzan entre slices
+    public GlobalResult processHistoryFile(String csvPath, int maxCount, int numTasks, JobContext context) {
         long startTime = System.currentTimeMillis();
+        context.checkCancelled();
+        ReferenceData ref = context.reference(reference);
+        if (ref == null) {
+            throw new RuntimeException("Paradas no registradas en el Master");
+        }
 
-        System.out.println("\n[Master] ========================================");
-        System.out.println("[Master] Iniciando procesamiento distribuido");
-        System.out.println("[Master] Total datagramas: " + datagrams.length);
-        System.out.println("[Master] Numero de tareas: " + numTasks);
-        System.out.println("[Master] Threads disponibles: " + numThreads);
-        System.out.println("[Master] Workers remotos registrados: " + registeredWorkers.size());
-        System.out.println("[Master] ========================================\n");
+        LOG.info("\n[Master] ========================================");
+        LOG.info("[Master] Procesamiento con lectura local en workers");
+        LOG.info("[Master] Archivo: " + csvPath);
+        LOG.info("[Master] Numero de slices: " + numTasks);
+        LOG.info("[Master] Workers remotos registrados: " + workerRegistry.size());
+        LOG.info("[Master] ========================================\n");
 
         long separationStart = System.currentTimeMillis();
-        List<Task> tasks = separateDependencies(datagrams, numTasks);
+        List<HistoryFile.Range> ranges;
+        try {
+            long limit = maxCount > 0 ? Math.min(maxCount, 100_000_000) : 100_000_000;
+            ranges = HistoryFile.plan(csvPath, numTasks, limit);
+        } catch (IOException e) {
+            throw new RuntimeException("Error dividiendo " + csvPath + ": " + e.getMessage(), e);
+        }
+        int taskBase = allocateTaskIds(ranges.size() + 1);
+        List<TaskDispatcher.Work<SliceResult>> work = new ArrayList<>(ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            FileSlice slice = new FileSlice();
+            slice.taskId = taskBase + i;
+            slice.graphVersion = ref.getVersion();
+            slice.filePath = csvPath;
+            slice.offset = ranges.get(i).offset;
+            slice.length = ranges.get(i).length;
+            work.add(new TaskDispatcher.Work<>(slice.taskId, w -> w.processSliceAsync(slice),
+                    () -> new WorkerI(slice.taskId, ref).processSlice(slice, null)));
+            LOG.debug("[Master] Slice %d: bytes [%d, %d)", i, slice.offset, slice.offset + slice.length);
+        }
         long separationTime = System.currentTimeMillis() - separationStart;
 
         long distributionStart = System.currentTimeMillis();
-        List<Future<PartialResult>> futures = launchWorkers(tasks);
+        Executor lane = threadPool.lane(context);
+        List<CompletableFuture<SliceResult>> sliceFutures = taskDispatcher.dispatchWork(work, lane);
+        context.onCancel(() -> sliceFutures.forEach(f -> f.cancel(false)));
+        List<CompletableFuture<PartialResult>> futures = new ArrayList<>(sliceFutures.size() + 1);
+        for (CompletableFuture<SliceResult> future : sliceFutures) {
+            futures.add(future.thenApply(r -> r.result));
+        }
+
+        // Las fronteras se unen en orden de archivo, asi que se espera cada slice en secuencia
+        SliceStitcher stitcher = new SliceStitcher(ref.getArcs());
+        ArcTraversals traversals = context.isTracked() ? context.traversals(ref) : null;
+        List<SpeedDatagram> crossing = new ArrayList<>();
+        long linesRead = 0;
+        for (CompletableFuture<SliceResult> future : sliceFutures) {
+            try {
+                SliceResult sliceResult = future.get();
+                stitcher.append(sliceResult.boundaries, crossing, traversals);
+                if (traversals != null) {
+                    ArcAggregation.mergeInto(traversals, sliceResult.traversals);
+                }
+                linesRead += sliceResult.linesRead;
+            } catch (InterruptedException | ExecutionException e) {
+                // Sin sus fronteras faltan los arcos que cruzan al slice vecino
+                context.markIncomplete();
+                LOG.error("[Master] Error leyendo slice en un worker", e);
+            }
+        }
+        LOG.info("[Master] Lineas leidas por los workers: " + linesRead);
+        LOG.info("[Master] Arcos entre slices unidos en el Master: " + crossing.size());
+
+        if (!crossing.isEmpty()) {
+            Task stitchTask = new Task();
+            stitchTask.taskId = taskBase + ranges.size();
+            stitchTask.datagrams = crossing.toArray(new SpeedDatagram[0]);
+            context.checkCancelled();
+            futures.addAll(taskDispatcher.dispatch(Collections.singletonList(stitchTask),
+                    taskDispatcher.getBatchBytes(), lane, ref));
+        }
         long distributionTime = System.currentTimeMillis() - distributionStart;
 
         long consolidationStart = System.currentTimeMillis();
-        GlobalResult globalResult = processResults(futures, startTime);
-        long consolidationTime = System.currentTimeMillis() - consolidationStart;
-        
+        GlobalResult globalResult = processResults(futures, startTime, taskBase, null, new int[0], null, context);
         globalResult.separationTimeMs = separationTime;
         globalResult.distributionTimeMs = distributionTime;
-        globalResult.consolidationTimeMs = consolidationTime;
-        globalResult.activeWorkers = registeredWorkers.size();
+        globalResult.consolidationTimeMs = System.currentTimeMillis() - consolidationStart;
+        globalResult.activeWorkers = workerRegistry.size();
 
-        System.out.println("\n[Master] ========================================");
-        System.out.println("[Master] Procesamiento completado");
-        System.out.println("[Master] Velocidad promedio global: " +
+        LOG.info("[Master] Velocidad promedio global: " +
                 String.format("%.2f", globalResult.globalAvgSpeed) + " km/h");
-        System.out.println("[Master] Tiempo total: " + globalResult.totalProcessingTimeMs + " ms");
-        System.out.println("[Master]   - Separación: " + globalResult.separationTimeMs + " ms");
-        System.out.println("[Master]   - Distribución: " + globalResult.distributionTimeMs + " ms");
-        System.out.println("[Master]   - Consolidación: " + globalResult.consolidationTimeMs + " ms");
-        System.out.println("[Master] Workers activos: " + globalResult.activeWorkers);
-        System.out.println("[Master] ========================================\n");
-
+        LOG.info("[Master] Tiempo total: " + globalResult.totalProcessingTimeMs + " ms");
         return globalResult;
     }
 
-    private List<Task> separateDependencies(SpeedDatagram[] datagrams, int numTasks) {
-        System.out.println("[Master] Separando dependencias...");
+    // Límites de tarea: numTasks rangos iguales más los cortes pedidos (ordenados, sin repetir)
+    private static int[] taskBounds(int totalDatagrams, int numTasks, int[] cutOffsets) {
+        int chunkSize = Math.max(1, (int) Math.ceil((double) totalDatagrams / Math.max(1, numTasks)));
+        TreeSet<Integer> bounds = new TreeSet<>();
+        for (int start = 0; start < totalDatagrams; start += chunkSize) {
+            bounds.add(start);
+        }
+        for (int cut : cutOffsets) {
+            if (cut > 0 && cut < totalDatagrams) {
+                bounds.add(cut);
+            }
+        }
+        bounds.add(totalDatagrams);
+        return bounds.stream().mapToInt(Integer::intValue).toArray();
+    }
 
-        List<Task> tasks = new ArrayList<>();
-        int totalDatagrams = datagrams.length;
-        int chunkSize = (int) Math.ceil((double) totalDatagrams / numTasks);
+    // Reserva count ids consecutivos; vuelve a 0 antes de desbordar
+    private int allocateTaskIds(int count) {
+        int end = nextTaskId.updateAndGet(last -> (last > Integer.MAX_VALUE - count ? 0 : last) + count);
+        return end - count;
+    }
 
-        for (int i = 0; i < numTasks; i++) {
-            int startIdx = i * chunkSize;
-            int endIdx = Math.min(startIdx + chunkSize, totalDatagrams);
+    private List<Task> separateDependencies(SpeedDatagram[] datagrams, int numTasks) {
+        int[] bounds = taskBounds(datagrams.length, numTasks, new int[0]);
+        return separateDependencies(datagrams, bounds, allocateTaskIds(bounds.length - 1));
+    }
 
-            if (startIdx >= totalDatagrams)
-                break;
+    private List<Task> separateDependencies(SpeedDatagram[] datagrams, int[] bounds, int taskBase) {
+        LOG.info("[Master] Separando dependencias...");
 
-            SpeedDatagram[] taskDatagrams = Arrays.copyOfRange(datagrams, startIdx, endIdx);
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            SpeedDatagram[] taskDatagrams = Arrays.copyOfRange(datagrams, bounds[i], bounds[i + 1]);
 
             Task task = new Task();
-            task.taskId = i;
+            task.taskId = taskBase + i;
             task.datagrams = taskDatagrams;
             tasks.add(task);
 
-            System.out.println("[Master] Task " + i + " creada con " + taskDatagrams.length + " datagramas");
+            LOG.debug("[Master] Task %d creada con %d datagramas", task.taskId, taskDatagrams.length);
         }
 
-        System.out.println("[Master] Total tareas creadas: " + tasks.size());
+        LOG.info("[Master] Total tareas creadas: " + tasks.size());
         return tasks;
     }
 
-    private List<Future<PartialResult>> launchWorkers(List<Task> tasks) {
-        System.out.println("[Master] Lanzando workers...");
+    // Sin workers remotos cada hilo calcula sobre su rango del arreglo original, sin copiarlo a un Task
+    private List<CompletableFuture<PartialResult>> launchLocal(SpeedDatagram[] datagrams, int[] bounds, int taskBase,
+            JobContext context) {
+        LOG.warn("[Master] [WARNING] No hay workers remotos registrados. Usando ThreadPool LOCAL ("
+                + numThreads + " threads).");
+        List<CompletableFuture<PartialResult>> futures = new ArrayList<>();
+        ReferenceData ref = context.reference(reference);
+        Executor lane = threadPool.lane(context);
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            int taskId = taskBase + i;
+            int from = bounds[i];
+            int to = bounds[i + 1];
+            futures.add(CompletableFuture.supplyAsync(
+                    () -> new WorkerI(taskId, ref).processRange(taskId, datagrams, from, to), lane));
+        }
+        return futures;
+    }
 
-        List<Future<PartialResult>> futures = new ArrayList<>();
+    private List<CompletableFuture<PartialResult>> launchWorkers(List<Task> tasks, Executor lane,
+            ReferenceData ref) {
+        LOG.info("[Master] Lanzando workers...");
 
-        if (registeredWorkers.isEmpty()) {
-            System.out.println("[Master] [WARNING] No hay workers remotos registrados. Usando ThreadPool LOCAL.");
+        List<CompletableFuture<PartialResult>> futures = new ArrayList<>();
+
+        if (workerRegistry.isEmpty()) {
+            LOG.warn("[Master] [WARNING] No hay workers remotos registrados. Usando ThreadPool LOCAL.");
             for (Task task : tasks) {
-                Future<PartialResult> future = threadPool.submit(() -> {
-                    WorkerI worker = new WorkerI(task.taskId);
-                    return worker.processTask(task, null);
-                });
-                futures.add(future);
+                futures.add(CompletableFuture.supplyAsync(() -> new WorkerI(task.taskId, ref).processTask(task, null),
+                        lane));
             }
+        } else if (pullMode) {
+            LOG.info("[Master] [OK] Encolando " + tasks.size() + " tareas para " + workerRegistry.size()
+                    + " workers REMOTOS (pull)");
+            futures.addAll(taskQueue.submit(tasks, new TaskQueue.Lane(lane, ref)));
+        } else if (treeAggregator.isEnabled() && workerRegistry.size() > 1) {
+            LOG.info("[Master] [OK] Distribuyendo tareas a " + workerRegistry.size()
+                    + " workers REMOTOS (agregacion en arbol, fan-in " + treeAggregator.getFanIn() + ")");
+            futures.addAll(treeAggregator.aggregate(tasks, lane, ref));
         } else {
-            System.out.println("[Master] [OK] Distribuyendo tareas a " + registeredWorkers.size() + " workers REMOTOS");
-
-            for (int i = 0; i < tasks.size(); i++) {
-                Task task = tasks.get(i);
-                final int workerIndex = i % registeredWorkers.size();
-
-                WorkerPrx remoteWorker = registeredWorkers.get(workerIndex);
-
-                Future<PartialResult> future = threadPool.submit(() -> {
-                    try {
-                        System.out.println("[Master] Enviando Task " + task.taskId + " a Worker remoto " + workerIndex);
-                        return remoteWorker.processTask(task);
-                    } catch (Exception e) {
-                        System.err.println("[Master] Error procesando Task " + task.taskId + " en worker remoto: " +
-                                e.getMessage());
-                        WorkerI localWorker = new WorkerI(task.taskId);
-                        return localWorker.processTask(task, null);
-                    }
-                });
-                futures.add(future);
-            }
+            LOG.info("[Master] [OK] Distribuyendo tareas a " + workerRegistry.size()
+                    + " workers REMOTOS (asincrono, " + taskDispatcher.getInFlightPerWorker() + " en vuelo por worker)");
+            futures.addAll(taskDispatcher.dispatch(tasks, taskDispatcher.getBatchBytes(), lane, ref));
         }
 
         return futures;
     }
 
-    private GlobalResult processResults(List<Future<PartialResult>> futures, long startTime) {
-        System.out.println("[Master] Procesando resultados...");
+    // taskBounds != null: el resultado con taskId taskBase + i es el de la tarea [taskBounds[i], taskBounds[i + 1]).
+    // Al cancelarse el trabajo se cancelan los futures pendientes: el despacho deja de enviar sus
+    // tareas y la consolidación termina con CancellationException
+    private GlobalResult processResults(List<CompletableFuture<PartialResult>> futures, long startTime, int taskBase,
+            int[] taskBounds, int[] cutOffsets, Map<Integer, GlobalResult> checkpoints, JobContext context) {
+        LOG.info("[Master] Procesando resultados...");
 
         GlobalResult globalResult = new GlobalResult();
         globalResult.globalAvgSpeed = 0;
@@ -294,29 +538,67 @@ public class MasterI implements Master {
 
         double filteredSpeedSum = 0;
         int filteredCount = 0;
-        Set<Integer> uniqueArcs = new HashSet<>();
-
-        for (Future<PartialResult> future : futures) {
+        Set<Integer> countedTasks = new HashSet<>();
+        PartialResult[] byTask = taskBounds != null ? new PartialResult[taskBounds.length - 1] : null;
+        ReferenceData ref = context.reference(reference);
+        ArcTable arcs = new ArcTable(ref != null ? ref.getArcs().graphArcCount() : 1024);
+        boolean exact = ref != null;
+        ArcCounter uniqueArcs = new ArcCounter(ref != null ? ref.getArcs().graphArcCount() : 0, false);
+
+        // Se consolida en orden de llegada: una tarea lenta al inicio no retiene a las que ya terminaron
+        BlockingQueue<CompletableFuture<PartialResult>> completed = new LinkedBlockingQueue<>();
+        for (CompletableFuture<PartialResult> future : futures) {
+            future.whenComplete((r, ex) -> completed.add(future));
+        }
+        context.onCancel(() -> futures.forEach(f -> f.cancel(false)));
+        for (int taken = 0; taken < futures.size(); taken++) {
             try {
-                PartialResult partial = future.get();
+                PartialResult partial = completed.take().join();
+                if (!countedTasks.add(partial.taskId)) {
+                    LOG.debug("[Master] Task %d ya consolidada, resultado ignorado", partial.taskId);
+                    continue;
+                }
                 globalResult.totalDatagrams += partial.datagramCount;
+                int index = partial.taskId - taskBase;
+                if (byTask != null && index >= 0 && index < byTask.length) {
+                    byTask[index] = partial;
+                }
 
                 filteredSpeedSum += partial.filteredSpeedSum;
                 filteredCount += partial.filteredCount;
-
-                if (partial instanceof WorkerI.PartialResultWithDatagrams) {
-                    SpeedDatagram[] datagrams = ((WorkerI.PartialResultWithDatagrams) partial).datagrams;
-                    for (SpeedDatagram dg : datagrams) {
-                        if (dg != null && dg.arcId > 0) {
-                            uniqueArcs.add(dg.arcId);
-                        }
-                    }
+                if (ArcAggregation.hasStats(partial)) {
+                    ArcAggregation.mergeInto(arcs, partial.arcStats);
+                } else {
+                    exact = false;
                 }
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
+
+                ArcAggregation.mergeInto(uniqueArcs, partial.arcPresence);
+                // El avance cuenta tareas consolidadas: ni duplicados ni fallidas lo adelantan
+                publishProgress(context, countedTasks.size(), futures.size(), globalResult.totalDatagrams,
+                        filteredSpeedSum, filteredCount, startTime);
+            } catch (CompletionException e) {
+                LOG.error("[Master] Error en resultado parcial", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Consolidacion interrumpida", e);
             }
         }
 
+        // Una tarea fallida deja el resultado parcial: no es exacto, no se publica ni se guarda en cache
+        if (countedTasks.size() < futures.size()) {
+            exact = false;
+            context.markIncomplete();
+            LOG.warn("[Master] %d de %d resultados parciales faltan: resultado incompleto",
+                    futures.size() - countedTasks.size(), futures.size());
+        }
+
+        // Con agregados por arco de todas las tareas la velocidad no depende de cómo se cortaron
+        if (exact) {
+            SpeedTotals totals = SpeedKernel.totals(null, arcs, SpeedKernel.graphDistance(ref));
+            filteredSpeedSum = totals.filteredSpeedSum;
+            filteredCount = totals.filteredCount;
+            LOG.info("[Master] Consolidacion exacta por arco: " + arcs.size() + " arcos");
+        }
         if (filteredCount > 0) {
             globalResult.globalAvgSpeed = filteredSpeedSum / filteredCount;
         } else {
@@ -324,20 +606,112 @@ public class MasterI implements Master {
         }
 
         globalResult.totalProcessingTimeMs = System.currentTimeMillis() - startTime;
-        globalResult.totalArcs = uniqueArcs.size();
+        globalResult.totalArcs = (int) uniqueArcs.count();
+        globalResult.totalArcsApproximate = uniqueArcs.isApproximate();
 
-        System.out.println("[Master] Arcos procesados: " + filteredCount);
-        System.out.println("[Master] Velocidad promedio calculada: "
+        if (exact && byTask != null) {
+            checkpointResults(byTask, taskBounds, cutOffsets, ref, checkpoints);
+        }
+
+        JobProgress finalProgress = new JobProgress(context.getJobId(), futures.size(), futures.size(), 100.0,
+                globalResult.totalDatagrams, globalResult.globalAvgSpeed, globalResult.totalProcessingTimeMs);
+        context.reportProgress(finalProgress);
+        progressPublisher.publish(context, finalProgress, true);
+
+        LOG.info("[Master] Arcos procesados: " + filteredCount);
+        LOG.info("[Master] Velocidad promedio calculada: "
                 + String.format("%.2f", globalResult.globalAvgSpeed) + " km/h");
         return globalResult;
     }
 
+    // Resultado de cada prefijo que termina en un corte, mezclando las tareas en orden de posición
+    private void checkpointResults(PartialResult[] byTask, int[] taskBounds, int[] cutOffsets, ReferenceData ref,
+            Map<Integer, GlobalResult> checkpoints) {
+        Set<Integer> cuts = new HashSet<>();
+        for (int cut : cutOffsets) {
+            cuts.add(cut);
+        }
+        ArcTable prefix = new ArcTable(ref.getArcs().graphArcCount());
+        long datagrams = 0;
+        for (int i = 0; i < byTask.length; i++) {
+            if (byTask[i] == null || !ArcAggregation.hasStats(byTask[i])) {
+                return;
+            }
+            ArcAggregation.mergeInto(prefix, byTask[i].arcStats);
+            datagrams += byTask[i].datagramCount;
+            if (!cuts.contains(taskBounds[i + 1])) {
+                continue;
+            }
+            SpeedTotals totals = SpeedKernel.totals(null, prefix, SpeedKernel.graphDistance(ref));
+            GlobalResult checkpoint = new GlobalResult();
+            checkpoint.totalArcs = prefix.size();
+            checkpoint.totalDatagrams = datagrams;
+            checkpoint.globalAvgSpeed = totals.filteredCount > 0 ? totals.filteredSpeedSum / totals.filteredCount : 0;
+            checkpoint.workerCount = numThreads;
+            checkpoint.taskCount = i + 1;
+            checkpoint.activeWorkers = workerRegistry.size();
+            checkpoints.put(taskBounds[i + 1], checkpoint);
+        }
+    }
+
+    private void publishProgress(JobContext context, int completed, int total, long datagrams,
+            double filteredSpeedSum, long filteredCount, long startTime) {
+        boolean listeners = progressPublisher.hasListeners(context.getJobId());
+        if ((!listeners && !context.isTracked()) || completed == total) {
+            return;
+        }
+        JobProgress progress = new JobProgress(context.getJobId(), completed, total, completed * 100.0 / total, datagrams,
+                filteredCount > 0 ? filteredSpeedSum / filteredCount : 0, System.currentTimeMillis() - startTime);
+        context.reportProgress(progress);
+        if (listeners) {
+            progressPublisher.publish(context, progress, false);
+        }
+    }
+
+    // jobId ProgressPublisher.ALL_JOBS suscribe al avance de todos los cálculos
+    public void addProgressListener(ProgressListenerPrx listener, long jobId) {
+        progressPublisher.add(listener, jobId);
+    }
+
+    public void removeProgressListener(ProgressListenerPrx listener) {
+        progressPublisher.remove(listener);
+    }
+
+    // Datagramas cargados del CSV; cutOffsets[i] es la cantidad de datagramas al terminar la línea cutLines[i]
+    public static class HistoryLoad {
+        public SpeedDatagram[] datagrams;
+        public int linesRead;
+        public boolean endOfFile;
+        public int[] cutLines;
+        public int[] cutOffsets;
+        public boolean failed;
+    }
+
+    private static final int MAX_CSV_LINES = 100_000_000;
+    // Cada cuántas líneas la carga revisa si el trabajo fue cancelado
+    private static final int CANCEL_CHECK_LINES = 10_000;
+
+    // Límite efectivo de líneas para un maxCount de calculateAverageSpeed (<= 0: sin límite propio)
+    public static int lineLimit(int maxCount) {
+        return (maxCount > 0 && maxCount < MAX_CSV_LINES) ? maxCount : MAX_CSV_LINES;
+    }
+
     @Override
     public SpeedDatagram[] loadDatagramsFromCSV(String filePath, int maxCount, Current current) {
-        System.out.println("[Master] Cargando datagramas desde: " + filePath);
+        return loadHistory(filePath, maxCount, new int[0], JobContext.untracked()).datagrams;
+    }
+
+    // cutLines en orden creciente; las que no se alcanzan quedan fuera de cutOffsets
+    public HistoryLoad loadHistory(String filePath, int maxCount, int[] cutLines, JobContext context) {
+        LOG.info("[Master] Cargando datagramas desde: " + filePath);
         List<SpeedDatagram> datagrams = new ArrayList<>();
+        HistoryLoad load = new HistoryLoad();
+        int[] cutOffsets = new int[cutLines.length];
+        int cutsReached = 0;
 
-        Map<Integer, BusHistory> busHistories = new HashMap<>();
+        BusTracker busTracker = new BusTracker(false);
+        ReferenceData ref = context.reference(reference);
+        ArcTraversals traversals = context.isTracked() ? context.traversals(ref) : null;
 
         String filterDay = "31-MAY-18";
         int detectedStops = 0;
@@ -347,13 +721,19 @@ public class MasterI implements Master {
             int lineCount = 0;
             br.readLine(); // Skip header
 
-            int maxLines = 100_000_000;
-            int limit = (maxCount > 0 && maxCount < maxLines) ? maxCount : maxLines;
+            int limit = lineLimit(maxCount);
 
-            while ((line = br.readLine()) != null && lineCount < limit) {
+            while (lineCount < limit && (line = br.readLine()) != null) {
+                // Datagramas acumulados al terminar la línea de corte anterior
+                if (cutsReached < cutLines.length && lineCount == cutLines[cutsReached]) {
+                    cutOffsets[cutsReached++] = datagrams.size();
+                }
                 lineCount++;
+                if (lineCount % CANCEL_CHECK_LINES == 0) {
+                    context.checkCancelled();
+                }
                 if (lineCount % 100000 == 0) {
-                    System.out.println("[Master] Procesadas " + lineCount + " lineas. Datagramas validos (arcos): "
+                    LOG.info("[Master] Procesadas " + lineCount + " lineas. Datagramas validos (arcos): "
                             + datagrams.size());
                 }
 
@@ -361,7 +741,7 @@ public class MasterI implements Master {
                 if (parts.length < 12)
                     continue;
 
-                SpeedDatagram dg = parseLine(line.getBytes(), line.length(), busHistories);
+                SpeedDatagram dg = parseLine(line.getBytes(), line.length(), busTracker, ref, traversals, context);
                 if (dg != null) {
                     datagrams.add(dg);
                     detectedStops++;
@@ -369,17 +749,27 @@ public class MasterI implements Master {
                     undetectedStops++;
                 }
             }
-            System.out.println("[Master] Carga completada. Total datagramas validos (arcos): " + datagrams.size());
-            System.out.println("[Master] Datagramas con parada detectada: " + detectedStops);
-            System.out.println("[Master] Datagramas sin parada detectada: " + undetectedStops);
+            if (cutsReached < cutLines.length && lineCount == cutLines[cutsReached]) {
+                cutOffsets[cutsReached++] = datagrams.size();
+            }
+            load.linesRead = lineCount;
+            load.endOfFile = lineCount < limit;
+            LOG.info("[Master] Carga completada. Total datagramas validos (arcos): " + datagrams.size());
+            LOG.info("[Master] Datagramas con parada detectada: " + detectedStops);
+            LOG.info("[Master] Datagramas sin parada detectada: " + undetectedStops);
         } catch (IOException e) {
-            e.printStackTrace();
+            LOG.error("[Master] Error leyendo " + filePath, e);
+            load.failed = true;
         }
 
-        return datagrams.toArray(new SpeedDatagram[0]);
+        load.datagrams = datagrams.toArray(new SpeedDatagram[0]);
+        load.cutLines = Arrays.copyOf(cutLines, cutsReached);
+        load.cutOffsets = Arrays.copyOf(cutOffsets, cutsReached);
+        return load;
     }
 
-    private SpeedDatagram parseLine(byte[] buffer, int len, Map<Integer, BusHistory> busHistories) {
+    private SpeedDatagram parseLine(byte[] buffer, int len, BusTracker busTracker, ReferenceData ref,
+            ArcTraversals traversals, JobContext context) {
         try {
             String line = new String(buffer, 0, len).trim();
             if (line.isEmpty())
@@ -394,54 +784,39 @@ public class MasterI implements Master {
             int busId = Integer.parseInt(parts[11]);
             long timestamp = parseDateTimeToTimestamp(parts[10]);
 
-            if (debugCounter < 10) {
-                System.out.println("[VALIDACION CSV] lat=" + lat + " lon=" + lon + " busId=" + busId + " datagramDate="
+            if (LOG.isDebugEnabled() && context.csvSample().sample()) {
+                LOG.debug("[VALIDACION CSV] lat=" + lat + " lon=" + lon + " busId=" + busId + " datagramDate="
                         + parts[10]);
-                debugCounter++;
             }
 
             if (Math.abs(lat) > 90 || Math.abs(lon) > 180)
                 return null;
 
-            Integer currentStopId = findNearestStop(lat, lon);
+            int currentStopId = ref.getLocator().nearestStop(lat, lon);
 
-            if (currentStopId != null && debugCounter < 50) {
-                System.out.println("[DEBUG] Bus " + busId + " detectado en parada " + currentStopId + " (Lat: " + lat
+            if (currentStopId >= 0 && LOG.isDebugEnabled() && context.stopSample().sample()) {
+                LOG.debug("[DEBUG] Bus " + busId + " detectado en parada " + currentStopId + " (Lat: " + lat
                         + ", Lon: " + lon + ")");
-                debugCounter++;
             }
 
-            BusHistory history = busHistories.computeIfAbsent(busId, k -> new BusHistory(null, 0, 0, 0));
-
-            SpeedDatagram result = null;
-
-            if (currentStopId != null) {
-                if (history.lastStopId != null && !history.lastStopId.equals(currentStopId)) {
-                    updateArcState(history.lastStopId, currentStopId,
-                                history.lastLat, history.lastLon,
-                            lat, lon,
-                            history.lastTimestamp, timestamp);
-
-                    result = new SpeedDatagram();
-                        result.fromStopId = history.lastStopId;
-                        result.toStopId = currentStopId;
-                        result.timestamp = timestamp;
-                        result.fromLat = history.lastLat;
-                        result.fromLon = history.lastLon;
-                        result.toLat = lat;
-                        result.toLon = lon;
-                        result.arcId = result.fromStopId * 10000 + result.toStopId;
-                    return result;
-                }
-
-                history.lastStopId = currentStopId;
+            BusTracker.Transition arc = new BusTracker.Transition();
+            if (!busTracker.observe(busId, currentStopId, lat, lon, timestamp, arc)) {
+                return null;
             }
 
-            history.lastLat = lat;
-            history.lastLon = lon;
-            history.lastTimestamp = timestamp;
-
-            return result;
+            // La velocidad del arco la calcula el kernel en la consolidación; aquí solo se muestrea el log
+            if (LOG.isDebugEnabled() && context.arcSample().sample()) {
+                double distance = StopLocator.haversine(arc.fromLat, arc.fromLon, arc.toLat, arc.toLon);
+                double timeHours = (arc.toTimestamp - arc.fromTimestamp) / (1000.0 * 3600.0);
+                double speed = (timeHours > 0.0001) ? distance / timeHours : 0.0;
+                LOG.debug("[ARC DEBUG] fromStop=%d toStop=%d dist=%.3fkm time=%.3fh speed=%.2fkm/h", arc.fromStopId,
+                        arc.toStopId, distance, timeHours, speed);
+            }
+            SpeedDatagram dg = SliceStitcher.toDatagram(arc, ref.getArcs());
+            if (traversals != null) {
+                traversals.add(dg.arcId, arc.departureTimestamp, arc.toTimestamp);
+            }
+            return dg;
 
         } catch (Exception e) {
             return null;
@@ -457,7 +832,7 @@ public class MasterI implements Master {
                 return Long.parseLong(dateTimeStr);
             }
         } catch (Exception e) {
-            System.err.println("[ERROR PARSE FECHA] No se pudo parsear: '" + dateTimeStr
+            LOG.error("[ERROR PARSE FECHA] No se pudo parsear: '" + dateTimeStr
                     + "'. Usando System.currentTimeMillis(). Error: " + e.getMessage());
             return System.currentTimeMillis();
         }
@@ -491,8 +866,8 @@ public class MasterI implements Master {
                     continue;
                 }
 
-                Integer stopId = findNearestStop(lat, lon);
-                if (stopId != null) {
+                int stopId = stopLocator.nearestStop(lat, lon);
+                if (stopId >= 0) {
                     BusEvent event = new BusEvent(busId, stopId, lat, lon, timestamp);
                     busEvents.computeIfAbsent(busId, k -> new ArrayList<>()).add(event);
                 }
@@ -515,16 +890,14 @@ public class MasterI implements Master {
                     BusEvent fromEv = events.get(i);
                     BusEvent toEv = events.get(i + 1);
                     if (fromEv.stopId == fromStop && toEv.stopId == toStop && toEv.timestamp > fromEv.timestamp) {
-                        double distance = haversineDistance(fromEv.lat, fromEv.lon, toEv.lat, toEv.lon);
+                        double distance = StopLocator.haversine(fromEv.lat, fromEv.lon, toEv.lat, toEv.lon);
                         double timeHours = (toEv.timestamp - fromEv.timestamp) / (1000.0 * 3600.0);
                         double speed = (timeHours > 0.0001 && distance > 0.001) ? distance / timeHours : 0.0;
                         speeds.add(speed);
                         trayectos++;
                         if (trayectos <= 5) {
-                            System.out.println("[BENCHMARK DEBUG] arco=" + fromStop + "->" + toStop + " bus="
-                                    + entry.getKey() + " dist=" + String.format("%.3f", distance) + "km time="
-                                    + String.format("%.3f", timeHours) + "h speed=" + String.format("%.2f", speed)
-                                    + "km/h");
+                            LOG.debug("[BENCHMARK DEBUG] arco=%d->%d bus=%d dist=%.3fkm time=%.3fh speed=%.2fkm/h",
+                                    fromStop, toStop, entry.getKey(), distance, timeHours, speed);
                         }
                     }
                 }
@@ -532,9 +905,330 @@ public class MasterI implements Master {
             double avgSpeed = speeds.isEmpty() ? 0 : speeds.stream().mapToDouble(d -> d).average().orElse(0);
             report.append("Arco " + fromStop + "->" + toStop + ": " + String.format("%.2f", avgSpeed) + " km/h ("
                     + trayectos + " trayectos)\n");
-            System.out.println("[BENCHMARK ARCO] " + fromStop + "->" + toStop + " promedio="
-                    + String.format("%.2f", avgSpeed) + "km/h trayectos=" + trayectos);
+            LOG.info("[BENCHMARK ARCO] %d->%d promedio=%.2fkm/h trayectos=%d", fromStop, toStop, avgSpeed,
+                    trayectos);
+        }
+        return report.toString();
+    }
+
+    @Override
+    public String runTransferBenchmark(int datagramCount, Current current) {
+        List<RemoteWorker> workers = workerRegistry.active();
+        if (workers.isEmpty()) {
+            return "Benchmark de transferencia: no hay workers remotos registrados";
+        }
+        ReferenceData ref = reference;
+        SpeedDatagram[] datagrams = generateTestDatagrams(datagramCount, null, null);
+        if (datagrams.length == 0 || ref == null) {
+            return "Benchmark de transferencia: paradas no registradas en el Master";
+        }
+        Task task = new Task();
+        task.taskId = -2;
+        task.datagrams = datagrams;
+
+        RemoteWorker worker = workers.get(0);
+        StringBuilder report = new StringBuilder();
+        report.append("Benchmark de transferencia (Worker " + worker.getWorkerId() + ", "
+                + datagramCount + " datagramas, frames de " + framedTransfer.getFrameDatagrams() + ", "
+                + framedTransfer.getFramesInFlight() + " en vuelo):\n");
+        report.append(String.format("%-14s %-10s %12s %14s%n", "Modo", "Compresion", "Mejor (ms)", "Datagramas/s"));
+
+        FramedTransfer transfer = new FramedTransfer(Math.max(1, framedTransfer.getFrameDatagrams()),
+                framedTransfer.getFramesInFlight(), framedTransfer.getFormat());
+        transfer.setGraphVersion(ref.getVersion());
+        for (boolean compress : new boolean[] { false, true }) {
+            WorkerPrx proxy = worker.getProxy().ice_compress(compress);
+            for (boolean framed : new boolean[] { false, true }) {
+                String mode = framed ? "frames" : "un mensaje";
+                long best = Long.MAX_VALUE;
+                String error = null;
+                for (int run = 0; run < 4 && error == null; run++) {
+                    long start = System.nanoTime();
+                    try {
+                        (framed ? transfer.sendFramed(proxy, task) : proxy.processTaskAsync(transfer.prepare(task))).join();
+                    } catch (CompletionException e) {
+                        error = e.getCause() != null ? e.getCause().getClass().getSimpleName() : e.getMessage();
+                        break;
+                    }
+                    long elapsed = (System.nanoTime() - start) / 1_000_000;
+                    // La primera corrida calienta la conexion y el JIT del worker
+                    if (run > 0) {
+                        best = Math.min(best, elapsed);
+                    }
+                }
+                if (error != null) {
+                    report.append(String.format("%-14s %-10s %12s %14s%n", mode, compress ? "on" : "off",
+                            "error", error));
+                } else {
+                    report.append(String.format("%-14s %-10s %12d %14.0f%n", mode, compress ? "on" : "off", best,
+                            datagramCount * 1000.0 / Math.max(1, best)));
+                }
+                LOG.info("[Master] Transferencia " + mode + " compresion=" + compress + ": "
+                        + (error != null ? error : best + " ms"));
+            }
+        }
+        report.append("(La compresion requiere bzip2 en el classpath de Ice; sin el, los mensajes viajan sin comprimir)\n");
+        return report.toString();
+    }
+
+    @Override
+    public String runWireFormatBenchmark(int datagramCount, Current current) {
+        Map<Integer, double[]> stops = stopsMap;
+        ReferenceData ref = reference;
+        List<Integer> stopIds = new ArrayList<>(stops.keySet());
+        if (stopIds.size() < 2 || ref == null) {
+            return "Benchmark de formato: paradas no registradas en el Master";
+        }
+        ArcIndex arcIndex = ref.getArcs();
+        com.zeroc.Ice.Communicator communicator = current.adapter.getCommunicator();
+
+        // Datagramas sobre un conjunto acotado de arcos, como en el historico real
+        Random rand = new Random(42);
+        int arcPool = Math.min(2000, stopIds.size());
+        SpeedDatagram[] datagrams = new SpeedDatagram[datagramCount];
+        long timestamp = System.currentTimeMillis();
+        for (int i = 0; i < datagramCount; i++) {
+            int fromIdx = rand.nextInt(arcPool);
+            int from = stopIds.get(fromIdx);
+            int to = stopIds.get((fromIdx + 1) % stopIds.size());
+            double[] c1 = stops.get(from);
+            double[] c2 = stops.get(to);
+            timestamp += rand.nextInt(2000);
+            SpeedDatagram dg = new SpeedDatagram();
+            dg.arcId = arcIndex.indexOf(from, to);
+            dg.fromStopId = from;
+            dg.toStopId = to;
+            dg.timestamp = timestamp;
+            dg.fromLat = c1[0];
+            dg.fromLon = c1[1];
+            dg.toLat = c2[0];
+            dg.toLon = c2[1];
+            datagrams[i] = dg;
+        }
+
+        StringBuilder report = new StringBuilder();
+        report.append("Benchmark de formato de datagramas (" + datagramCount + " datagramas, " + arcPool
+                + " arcos):\n");
+        report.append(String.format("%-22s %12s %16s %18s%n", "Formato", "Bytes/dg", "Serializar ns/dg",
+                "Deserializar ns/dg"));
+        String[] names = { "DatagramList", "DatagramBatch", "DatagramBatch + delta", "DatagramBatch indexado" };
+        for (int format = 0; format < names.length; format++) {
+            String name = names[format];
+            long bestWrite = Long.MAX_VALUE;
+            long bestRead = Long.MAX_VALUE;
+            int bytes = 0;
+            for (int run = 0; run < 8; run++) {
+                long start = System.nanoTime();
+                com.zeroc.Ice.OutputStream out = new com.zeroc.Ice.OutputStream(communicator);
+                if (format == 0) {
+                    DatagramListHelper.write(out, datagrams);
+                } else {
+                    DatagramBatch.ice_write(out, format == 3
+                            ? DatagramBatches.encodeIndexed(datagrams, 0, datagrams.length)
+                            : DatagramBatches.encode(datagrams, format == 2));
+                }
+                byte[] data = out.finished();
+                long written = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                com.zeroc.Ice.InputStream in = new com.zeroc.Ice.InputStream(communicator, data);
+                if (format == 0) {
+                    DatagramListHelper.read(in);
+                } else {
+                    DatagramBatch.ice_read(in);
+                }
+                long read = System.nanoTime() - start;
+
+                // Las primeras corridas calientan el JIT
+                if (run >= 3) {
+                    bestWrite = Math.min(bestWrite, written);
+                    bestRead = Math.min(bestRead, read);
+                }
+                bytes = data.length;
+            }
+            report.append(String.format("%-22s %12.1f %16.1f %18.1f%n", name, (double) bytes / datagramCount,
+                    (double) bestWrite / datagramCount, (double) bestRead / datagramCount));
+        }
+        report.append("(Serializar DatagramBatch incluye la construccion del diccionario de arcos)\n");
+        LOG.info(report.toString().stripTrailing());
+        return report.toString();
+    }
+
+    @Override
+    public String runAggregationBenchmark(int datagramCount, Current current) {
+        List<RemoteWorker> workers = workerRegistry.active();
+        if (workers.isEmpty()) {
+            return "Benchmark de agregacion: no hay workers remotos registrados";
+        }
+        SpeedDatagram[] datagrams = generateTestDatagrams(datagramCount, null, null);
+        if (datagrams.length == 0) {
+            return "Benchmark de agregacion: paradas no registradas en el Master";
+        }
+
+        StringBuilder report = new StringBuilder();
+        report.append("Benchmark de agregacion (" + datagramCount + " datagramas, 4 tareas por worker):\n");
+        report.append(String.format("%-8s %-8s %12s %16s %18s%n", "Workers", "Fan-in", "Total (ms)",
+                "Merge Master (us)", "Parciales Master"));
+        List<Integer> sizes = new ArrayList<>();
+        for (int w = 1; w < workers.size(); w *= 2) {
+            sizes.add(w);
+        }
+        sizes.add(workers.size());
+        for (int w : sizes) {
+            List<RemoteWorker> subset = workers.subList(0, w);
+            List<Task> tasks = separateDependencies(datagrams, w * 4);
+            for (int fanIn : new int[] { 0, 2, 4, 8 }) {
+                // Fan-in 0: cada worker es su propia raiz, todos los parciales llegan al Master
+                if (fanIn >= w) {
+                    continue;
+                }
+                long best = Long.MAX_VALUE;
+                long bestMerge = Long.MAX_VALUE;
+                int partials = 0;
+                String error = null;
+                for (int run = 0; run < 4 && error == null; run++) {
+                    long start = System.nanoTime();
+                    List<PartialResult> results = new ArrayList<>();
+                    try {
+                        for (CompletableFuture<PartialResult> f : treeAggregator.aggregate(tasks, subset,
+                                fanIn == 0 ? w : fanIn, threadPool.shared(), reference)) {
+                            results.add(f.join());
+                        }
+                    } catch (CompletionException e) {
+                        error = e.getCause() != null ? e.getCause().getClass().getSimpleName() : e.getMessage();
+                        break;
+                    }
+                    long mergeStart = System.nanoTime();
+                    ArcAggregation.combine(results);
+                    long end = System.nanoTime();
+                    partials = results.size();
+                    if (run > 0) {
+                        best = Math.min(best, (end - start) / 1_000_000);
+                        bestMerge = Math.min(bestMerge, (end - mergeStart) / 1_000);
+                    }
+                }
+                String label = fanIn == 0 ? "plano" : String.valueOf(fanIn);
+                if (error != null) {
+                    report.append(String.format("%-8d %-8s %12s %16s %18s%n", w, label, "error", error, "-"));
+                } else {
+                    report.append(String.format("%-8d %-8s %12d %16d %18d%n", w, label, best, bestMerge,
+                            partials));
+                }
+            }
+        }
+        LOG.info(report.toString().stripTrailing());
+        return report.toString();
+    }
+
+    @Override
+    public String runBatchBenchmark(int datagramCount, int numTasks, Current current) {
+        if (workerRegistry.isEmpty()) {
+            return "Benchmark de lotes: no hay workers remotos registrados";
+        }
+        SpeedDatagram[] datagrams = generateTestDatagrams(datagramCount, null, null);
+        if (datagrams.length == 0) {
+            return "Benchmark de lotes: paradas no registradas en el Master";
+        }
+        List<Task> tasks = separateDependencies(datagrams, numTasks);
+        long budget = taskDispatcher.getBatchBytes() > 0 ? taskDispatcher.getBatchBytes() : 4194304;
+
+        StringBuilder report = new StringBuilder();
+        report.append("Benchmark de lotes (" + datagramCount + " datagramas, " + tasks.size() + " tareas, "
+                + workerRegistry.size() + " workers, formato " + framedTransfer.getFormat() + "):\n");
+        report.append(String.format("%-26s %12s %12s %16s%n", "Modo", "Mejor (ms)", "Tareas/s", "Datagramas/s"));
+        for (long batchBytes : new long[] { 0, budget }) {
+            String mode = batchBytes == 0 ? "una invocacion por tarea" : "lotes de " + batchBytes / 1024 + " KB";
+            long best = Long.MAX_VALUE;
+            String error = null;
+            for (int run = 0; run < 4 && error == null; run++) {
+                long start = System.nanoTime();
+                try {
+                    CompletableFuture.allOf(taskDispatcher.dispatch(tasks, batchBytes, threadPool.shared(), reference)
+                            .toArray(new CompletableFuture[0])).join();
+                } catch (CompletionException e) {
+                    error = e.getCause() != null ? e.getCause().getClass().getSimpleName() : e.getMessage();
+                    break;
+                }
+                long elapsed = (System.nanoTime() - start) / 1_000_000;
+                // La primera corrida calienta las conexiones y el JIT de los workers
+                if (run > 0) {
+                    best = Math.min(best, elapsed);
+                }
+            }
+            if (error != null) {
+                report.append(String.format("%-26s %12s %12s %16s%n", mode, "error", error, "-"));
+            } else {
+                report.append(String.format("%-26s %12d %12.0f %16.0f%n", mode, best,
+                        tasks.size() * 1000.0 / Math.max(1, best), datagramCount * 1000.0 / Math.max(1, best)));
+            }
+        }
+        LOG.info(report.toString().stripTrailing());
+        return report.toString();
+    }
+
+    @Override
+    public String runMergeBenchmark(int arcCount, int taskCount, Current current) {
+        // Cada tarea observa ~60% de los arcos, como las tareas del historico completo
+        Random rand = new Random(42);
+        List<ArcAggregates> partials = new ArrayList<>(taskCount);
+        long entries = 0;
+        for (int t = 0; t < taskCount; t++) {
+            ArcTable table = new ArcTable(arcCount);
+            for (int arc = 0; arc < arcCount; arc++) {
+                if (rand.nextInt(10) < 6) {
+                    long ts = 1_700_000_000_000L + rand.nextInt(86_400_000);
+                    table.addAggregate(arc, 1 + rand.nextInt(50), ts, ts + rand.nextInt(600_000));
+                }
+            }
+            partials.add(ArcAggregation.toWire(table));
+            entries += table.size();
+        }
+
+        StringBuilder report = new StringBuilder();
+        report.append("Benchmark de consolidacion por arco (" + arcCount + " arcos, " + taskCount + " tareas, "
+                + entries + " agregados):\n");
+        report.append(String.format("%-28s %12s %12s %10s%n", "Estrategia", "Mejor (ms)", "ns/agregado", "Arcos"));
+        String[] names = { "hash abierto (ArcTable)", "sort-merge por pares", "HashMap<Integer, long[]>" };
+        for (int strategy = 0; strategy < names.length; strategy++) {
+            long best = Long.MAX_VALUE;
+            int merged = 0;
+            for (int run = 0; run < 7; run++) {
+                long start = System.nanoTime();
+                if (strategy == 0) {
+                    ArcTable table = new ArcTable(arcCount);
+                    for (ArcAggregates partial : partials) {
+                        ArcAggregation.mergeInto(table, partial);
+                    }
+                    merged = table.size();
+                } else if (strategy == 1) {
+                    List<SortedArcs> runs = new ArrayList<>(partials.size());
+                    for (ArcAggregates p : partials) {
+                        runs.add(new SortedArcs(p.arcs, p.counts, p.minTimestamps, p.maxTimestamps));
+                    }
+                    merged = SortedArcs.mergeAll(runs).size();
+                } else {
+                    Map<Integer, long[]> map = new HashMap<>();
+                    for (ArcAggregates p : partials) {
+                        for (int i = 0; i < p.arcs.length; i++) {
+                            long[] acc = map.computeIfAbsent(p.arcs[i],
+                                    k -> new long[] { 0, Long.MAX_VALUE, Long.MIN_VALUE });
+                            acc[0] += p.counts[i];
+                            acc[1] = Math.min(acc[1], p.minTimestamps[i]);
+                            acc[2] = Math.max(acc[2], p.maxTimestamps[i]);
+                        }
+                    }
+                    merged = map.size();
+                }
+                long elapsed = System.nanoTime() - start;
+                // Las primeras corridas calientan el JIT
+                if (run >= 2) {
+                    best = Math.min(best, elapsed);
+                }
+            }
+            report.append(String.format("%-28s %12.2f %12.1f %10d%n", names[strategy], best / 1e6,
+                    (double) best / Math.max(1, entries), merged));
         }
+        LOG.info(report.toString().stripTrailing());
         return report.toString();
     }
 
@@ -562,9 +1256,12 @@ public class MasterI implements Master {
         SpeedDatagram[] data = new SpeedDatagram[count];
         Random rand = new Random();
 
-        List<Integer> stopIds = new ArrayList<>(stopsMap.keySet());
+        Map<Integer, double[]> stops = stopsMap;
+        ReferenceData ref = reference;
+        List<Integer> stopIds = new ArrayList<>(stops.keySet());
         if (stopIds.size() < 2)
             return new SpeedDatagram[0];
+        ArcIndex arcIndex = ref != null ? ref.getArcs() : null;
 
         for (int i = 0; i < count; i++) {
             data[i] = new SpeedDatagram();
@@ -573,10 +1270,11 @@ public class MasterI implements Master {
 
             data[i].fromStopId = stopIds.get(idx1);
             data[i].toStopId = stopIds.get(idx2);
+            data[i].arcId = arcIndex != null ? arcIndex.indexOf(data[i].fromStopId, data[i].toStopId) : 0;
             data[i].timestamp = System.currentTimeMillis() + i * 1000;
 
-            double[] coords1 = stopsMap.get(data[i].fromStopId);
-            double[] coords2 = stopsMap.get(data[i].toStopId);
+            double[] coords1 = stops.get(data[i].fromStopId);
+            double[] coords2 = stops.get(data[i].toStopId);
 
             data[i].fromLat = coords1[0];
             data[i].fromLon = coords1[1];
@@ -0,0 +1,84 @@
+package server;
+
+import MIO.*;
+import com.mio.log.Log;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// Publica el avance a los callbacks suscritos, como mucho una vez por intervalo y trabajo (el final
+// siempre se envía). Cada suscripción recibe todos los trabajos o uno solo
+public class ProgressPublisher {
+
+    private static final Log LOG = Log.get("Master");
+
+    // Trabajo que recibe el listener; ALL_JOBS para todos
+    static final long ALL_JOBS = 0;
+
+    private static final class Subscription {
+        final ProgressListenerPrx listener;
+        final long jobId;
+
+        Subscription(ProgressListenerPrx listener, long jobId) {
+            this.listener = listener;
+            this.jobId = jobId;
+        }
+
+        boolean wants(long job) {
+            return jobId == ALL_JOBS || jobId == job;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Subscription && ((Subscription) o).listener.equals(listener)
+                    && ((Subscription) o).jobId == jobId;
+        }
+
+        @Override
+        public int hashCode() {
+            return listener.hashCode() * 31 + Long.hashCode(jobId);
+        }
+    }
+
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final int intervalMs;
+
+    public ProgressPublisher(int intervalMs) {
+        this.intervalMs = intervalMs;
+    }
+
+    public void add(ProgressListenerPrx listener, long jobId) {
+        subscriptions.addIfAbsent(new Subscription(listener.ice_oneway(), jobId));
+    }
+
+    // Retira todas las suscripciones del listener
+    public void remove(ProgressListenerPrx listener) {
+        ProgressListenerPrx oneway = listener.ice_oneway();
+        subscriptions.removeIf(s -> s.listener.equals(oneway));
+    }
+
+    public boolean hasListeners(long jobId) {
+        for (Subscription subscription : subscriptions) {
+            if (subscription.wants(jobId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // El intervalo se mide por trabajo: dos cálculos a la vez no se quitan el turno de publicar
+    public void publish(JobContext context, JobProgress progress, boolean force) {
+        if (!hasListeners(progress.jobId) || !context.claimPublish(System.currentTimeMillis(), intervalMs, force)) {
+            return;
+        }
+        for (Subscription subscription : subscriptions) {
+            if (!subscription.wants(progress.jobId)) {
+                continue;
+            }
+            // Un cliente que ya no responde se retira en lugar de frenar la consolidación
+            subscription.listener.progressAsync(progress).whenComplete((v, ex) -> {
+                if (ex != null && subscriptions.remove(subscription)) {
+                    LOG.info("[Master] Listener de avance retirado: %s", ex);
+                }
+            });
+        }
+    }
+}
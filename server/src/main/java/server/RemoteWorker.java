@@ -0,0 +1,74 @@
+package server;
+
+import MIO.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RemoteWorker {
+    private final int workerId;
+    private final WorkerPrx proxy;
+    private final WorkerCapabilities capabilities;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile long lastSeenMs;
+    private final AtomicInteger missedHeartbeats = new AtomicInteger();
+
+    public RemoteWorker(int workerId, WorkerPrx proxy, WorkerCapabilities capabilities) {
+        this.workerId = workerId;
+        this.proxy = proxy;
+        this.capabilities = capabilities;
+        this.lastSeenMs = System.currentTimeMillis();
+    }
+
+    public int getWorkerId() {
+        return workerId;
+    }
+
+    public WorkerPrx getProxy() {
+        return proxy;
+    }
+
+    public WorkerCapabilities getCapabilities() {
+        return capabilities;
+    }
+
+    // Capacidad estimada: nucleos * velocidad medida del kernel (solo nucleos si no hay medicion)
+    public double getCapacityScore() {
+        int cores = Math.max(1, capabilities.cores);
+        return capabilities.kernelSpeed > 0 ? cores * capabilities.kernelSpeed : cores;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public void taskStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    public void taskFinished() {
+        inFlight.decrementAndGet();
+    }
+
+    public long getLastSeenMs() {
+        return lastSeenMs;
+    }
+
+    public int getMissedHeartbeats() {
+        return missedHeartbeats.get();
+    }
+
+    public void markAlive() {
+        lastSeenMs = System.currentTimeMillis();
+        missedHeartbeats.set(0);
+    }
+
+    // Los heartbeats responden en hilos de Ice distintos: el conteo tiene que ser atómico
+    public int missHeartbeat() {
+        return missedHeartbeats.incrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return "Worker[" + workerId + ", " + capabilities.hostname + ", cores=" + capabilities.cores
+                + ", enVuelo=" + inFlight.get() + ", fallos=" + missedHeartbeats.get() + "]";
+    }
+}
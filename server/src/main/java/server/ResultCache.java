@@ -0,0 +1,315 @@
+package server;
+
+import MIO.GlobalResult;
+import com.mio.log.Log;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+// Resultados de calculateAverageSpeed por identidad de la entrada: ruta canónica, tamaño, fecha de
+// modificación y huella del inicio y el final del archivo, límite de líneas y versión del grafo.
+// Cada corrida guarda además checkpoints por línea (serie 1-2-5), así un límite menor sobre el
+// mismo archivo se responde sin recalcular. Las corridas sobre el historial completo guardan
+// también sus velocidades por arco para el ruteo. LRU en memoria y, con directorio, copia en disco
+public class ResultCache {
+
+    private static final Log LOG = Log.get("Master");
+
+    // Bytes del inicio y del final del archivo que entran en la huella
+    private static final int FINGERPRINT_BYTES = 64 * 1024;
+    // Checkpoints más chicos no ahorran lo suficiente para justificar tareas adicionales
+    private static final int MIN_CHECKPOINT_LINES = 100_000;
+
+    public static final class Key {
+        final String path;
+        final long size;
+        final long modified;
+        final String fingerprint;
+        final long graphVersion;
+        final int lineLimit;
+
+        Key(String path, long size, long modified, String fingerprint, long graphVersion, int lineLimit) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.fingerprint = fingerprint;
+            this.graphVersion = graphVersion;
+            this.lineLimit = lineLimit;
+        }
+
+        // Identidad del archivo y del grafo, sin el límite de líneas
+        String input() {
+            return path + "|" + size + "|" + modified + "|" + fingerprint + "|" + Long.toHexString(graphVersion);
+        }
+
+        String id() {
+            return input() + "|" + lineLimit;
+        }
+
+        public int getLineLimit() {
+            return lineLimit;
+        }
+    }
+
+    private static final class Cached {
+        final Key key;
+        final GlobalResult result;
+        final int linesRead;
+        final boolean endOfFile;
+        final NavigableMap<Integer, GlobalResult> checkpoints;
+        final ArcSpeeds arcSpeeds;
+
+        Cached(Key key, GlobalResult result, int linesRead, boolean endOfFile,
+                NavigableMap<Integer, GlobalResult> checkpoints, ArcSpeeds arcSpeeds) {
+            this.key = key;
+            this.result = result;
+            this.linesRead = linesRead;
+            this.endOfFile = endOfFile;
+            this.checkpoints = checkpoints;
+            this.arcSpeeds = arcSpeeds;
+        }
+    }
+
+    private final int capacity;
+    private final File directory;
+    private final LinkedHashMap<String, Cached> entries;
+
+    // capacity 0 desactiva la caché; directory null: solo en memoria
+    public ResultCache(int capacity, File directory) {
+        this.capacity = capacity;
+        this.directory = directory;
+        this.entries = new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+                if (size() <= ResultCache.this.capacity) {
+                    return false;
+                }
+                deleteFile(eldest.getValue().key);
+                return true;
+            }
+        };
+        if (isEnabled() && directory != null) {
+            loadDirectory();
+        }
+    }
+
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    public Key keyFor(String csvPath, int lineLimit, long graphVersion) throws IOException {
+        File file = new File(csvPath).getCanonicalFile();
+        return new Key(file.getPath(), file.length(), file.lastModified(), fingerprint(file), graphVersion,
+                lineLimit);
+    }
+
+    private static String fingerprint(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[FINGERPRINT_BYTES];
+            int head = raf.read(buffer, 0, (int) Math.min(buffer.length, raf.length()));
+            digest.update(buffer, 0, Math.max(0, head));
+            long tailStart = Math.max(0, raf.length() - FINGERPRINT_BYTES);
+            raf.seek(tailStart);
+            int tail = raf.read(buffer, 0, (int) (raf.length() - tailStart));
+            digest.update(buffer, 0, Math.max(0, tail));
+            return hex(digest.digest(), 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    private static String hex(byte[] bytes, int length) {
+        StringBuilder hex = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            hex.append(String.format("%02x", bytes[i]));
+        }
+        return hex.toString();
+    }
+
+    // Líneas en las que la corrida debe cortar tareas para dejar un checkpoint
+    public int[] checkpointLines(int lineLimit) {
+        if (!isEnabled()) {
+            return new int[0];
+        }
+        List<Integer> lines = new ArrayList<>();
+        for (long decade = MIN_CHECKPOINT_LINES; decade < lineLimit; decade *= 10) {
+            for (int factor : new int[] { 1, 2, 5 }) {
+                long line = decade * factor;
+                if (line < lineLimit) {
+                    lines.add((int) line);
+                }
+            }
+        }
+        return lines.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // Copia del resultado (el que llama puede ajustar tiempos) o null si no hay forma de responderlo
+    public synchronized GlobalResult lookup(Key key) {
+        Cached exact = entries.get(key.id());
+        if (exact != null) {
+            return exact.result.clone();
+        }
+        String input = key.input();
+        for (Cached entry : entries.values()) {
+            if (!entry.key.input().equals(input)) {
+                continue;
+            }
+            // La corrida llegó al final del archivo antes de su límite: cualquier límite mayor da lo mismo
+            if (entry.endOfFile && key.lineLimit >= entry.linesRead) {
+                return entry.result.clone();
+            }
+            GlobalResult checkpoint = entry.checkpoints.get(key.lineLimit);
+            if (checkpoint != null) {
+                LOG.info("[Master] Resultado de %d lineas desde un checkpoint de la corrida de %d lineas",
+                        key.lineLimit, entry.key.lineLimit);
+                return checkpoint.clone();
+            }
+        }
+        return null;
+    }
+
+    // Velocidades por arco de la corrida que respondería key con el historial completo (la misma
+    // entrada o una que llegó al final del archivo); null si no hay o si se respondería con un checkpoint
+    public synchronized ArcSpeeds arcSpeeds(Key key) {
+        Cached exact = entries.get(key.id());
+        if (exact != null) {
+            return exact.arcSpeeds;
+        }
+        String input = key.input();
+        for (Cached entry : entries.values()) {
+            if (entry.key.input().equals(input) && entry.endOfFile && key.lineLimit >= entry.linesRead) {
+                return entry.arcSpeeds;
+            }
+        }
+        return null;
+    }
+
+    // arcSpeeds solo para una corrida que alimenta el ruteo; null en las demás
+    public synchronized void put(Key key, GlobalResult result, int linesRead, boolean endOfFile,
+            Map<Integer, GlobalResult> checkpoints, ArcSpeeds arcSpeeds) {
+        Cached entry = new Cached(key, result.clone(), linesRead, endOfFile, new TreeMap<>(checkpoints),
+                arcSpeeds);
+        entries.put(key.id(), entry);
+        if (directory != null) {
+            store(entry);
+        }
+    }
+
+    // ---- Persistencia: un archivo .properties por entrada ----
+
+    private File fileFor(Key key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.id().getBytes(StandardCharsets.UTF_8));
+            return new File(directory, hex(digest, 12) + ".properties");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 no disponible", e);
+        }
+    }
+
+    private void deleteFile(Key key) {
+        if (directory != null) {
+            fileFor(key).delete();
+        }
+    }
+
+    private void store(Cached entry) {
+        Properties props = new Properties();
+        props.setProperty("path", entry.key.path);
+        props.setProperty("size", Long.toString(entry.key.size));
+        props.setProperty("modified", Long.toString(entry.key.modified));
+        props.setProperty("fingerprint", entry.key.fingerprint);
+        props.setProperty("graphVersion", Long.toString(entry.key.graphVersion));
+        props.setProperty("lineLimit", Integer.toString(entry.key.lineLimit));
+        props.setProperty("linesRead", Integer.toString(entry.linesRead));
+        props.setProperty("endOfFile", Boolean.toString(entry.endOfFile));
+        write(props, "result.", entry.result);
+        for (Map.Entry<Integer, GlobalResult> checkpoint : entry.checkpoints.entrySet()) {
+            write(props, "checkpoint." + checkpoint.getKey() + ".", checkpoint.getValue());
+        }
+        // Clave propia de las velocidades por mediana: las de entradas viejas (por lapso observado) no se leen
+        if (entry.arcSpeeds != null) {
+            props.setProperty("arcMedianSpeeds", entry.arcSpeeds.encode());
+        }
+        directory.mkdirs();
+        File target = fileFor(entry.key);
+        File temp = new File(directory, target.getName() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temp)) {
+            props.store(out, "calculateAverageSpeed");
+        } catch (IOException e) {
+            LOG.warn("[Master] No se pudo guardar el resultado en cache: " + e.getMessage());
+            return;
+        }
+        if (!temp.renameTo(target)) {
+            LOG.warn("[Master] No se pudo guardar el resultado en cache: " + target);
+        }
+    }
+
+    private void loadDirectory() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".properties"));
+        if (files == null) {
+            return;
+        }
+        // Los más recientes al final para que el LRU descarte primero los viejos
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            Properties props = new Properties();
+            try (InputStream in = new FileInputStream(file)) {
+                props.load(in);
+                Key key = new Key(props.getProperty("path"), Long.parseLong(props.getProperty("size")),
+                        Long.parseLong(props.getProperty("modified")), props.getProperty("fingerprint"),
+                        Long.parseLong(props.getProperty("graphVersion")),
+                        Integer.parseInt(props.getProperty("lineLimit")));
+                NavigableMap<Integer, GlobalResult> checkpoints = new TreeMap<>();
+                for (String name : props.stringPropertyNames()) {
+                    if (name.startsWith("checkpoint.") && name.endsWith(".totalDatagrams")) {
+                        String line = name.substring("checkpoint.".length(), name.length() - ".totalDatagrams".length());
+                        checkpoints.put(Integer.parseInt(line), read(props, "checkpoint." + line + "."));
+                    }
+                }
+                String speeds = props.getProperty("arcMedianSpeeds");
+                entries.put(key.id(), new Cached(key, read(props, "result."),
+                        Integer.parseInt(props.getProperty("linesRead")),
+                        Boolean.parseBoolean(props.getProperty("endOfFile")), checkpoints,
+                        speeds != null ? ArcSpeeds.decode(key.graphVersion, speeds) : null));
+            } catch (IOException | RuntimeException e) {
+                LOG.warn("[Master] Entrada de cache ilegible, se ignora: " + file + " (" + e.getMessage() + ")");
+            }
+        }
+        LOG.info("[Master] Cache de resultados: " + entries.size() + " entradas cargadas de " + directory);
+    }
+
+    private static void write(Properties props, String prefix, GlobalResult r) {
+        props.setProperty(prefix + "totalArcs", Integer.toString(r.totalArcs));
+        props.setProperty(prefix + "totalDatagrams", Long.toString(r.totalDatagrams));
+        props.setProperty(prefix + "globalAvgSpeed", Double.toString(r.globalAvgSpeed));
+        props.setProperty(prefix + "totalProcessingTimeMs", Long.toString(r.totalProcessingTimeMs));
+        props.setProperty(prefix + "workerCount", Integer.toString(r.workerCount));
+        props.setProperty(prefix + "taskCount", Integer.toString(r.taskCount));
+        props.setProperty(prefix + "loadCsvTimeMs", Long.toString(r.loadCsvTimeMs));
+        props.setProperty(prefix + "separationTimeMs", Long.toString(r.separationTimeMs));
+        props.setProperty(prefix + "distributionTimeMs", Long.toString(r.distributionTimeMs));
+        props.setProperty(prefix + "consolidationTimeMs", Long.toString(r.consolidationTimeMs));
+        props.setProperty(prefix + "activeWorkers", Integer.toString(r.activeWorkers));
+        props.setProperty(prefix + "totalArcsApproximate", Boolean.toString(r.totalArcsApproximate));
+    }
+
+    private static GlobalResult read(Properties props, String prefix) {
+        GlobalResult r = new GlobalResult();
+        r.totalArcs = Integer.parseInt(props.getProperty(prefix + "totalArcs"));
+        r.totalDatagrams = Long.parseLong(props.getProperty(prefix + "totalDatagrams"));
+        r.globalAvgSpeed = Double.parseDouble(props.getProperty(prefix + "globalAvgSpeed"));
+        r.totalProcessingTimeMs = Long.parseLong(props.getProperty(prefix + "totalProcessingTimeMs"));
+        r.workerCount = Integer.parseInt(props.getProperty(prefix + "workerCount"));
+        r.taskCount = Integer.parseInt(props.getProperty(prefix + "taskCount"));
+        r.loadCsvTimeMs = Long.parseLong(props.getProperty(prefix + "loadCsvTimeMs"));
+        r.separationTimeMs = Long.parseLong(props.getProperty(prefix + "separationTimeMs"));
+        r.distributionTimeMs = Long.parseLong(props.getProperty(prefix + "distributionTimeMs"));
+        r.consolidationTimeMs = Long.parseLong(props.getProperty(prefix + "consolidationTimeMs"));
+        r.activeWorkers = Integer.parseInt(props.getProperty(prefix + "activeWorkers"));
+        r.totalArcsApproximate = Boolean.parseBoolean(props.getProperty(prefix + "totalArcsApproximate"));
+        return r;
+    }
+}
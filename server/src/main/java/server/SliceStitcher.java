@@ -0,0 +1,93 @@
+package server;
+
+import MIO.*;
+import com.mio.compute.ArcTraversals;
+import com.mio.ingest.ArcIndex;
+import com.mio.ingest.BusHistory;
+import com.mio.ingest.BusTracker;
+import java.util.*;
+
+public class SliceStitcher {
+
+    private final Map<Integer, BusBoundary> carry = new HashMap<>();
+    private final ArcIndex arcs;
+
+    public SliceStitcher(ArcIndex arcs) {
+        this.arcs = arcs;
+    }
+
+    // Aplica las fronteras del siguiente slice (en orden de archivo) y agrega los arcos que cruzan el
+    // borde; su recorrido desde la parada anterior se suma a traversals si no es null
+    public void append(BusBoundary[] boundaries, List<SpeedDatagram> out, ArcTraversals traversals) {
+        for (BusBoundary b : boundaries) {
+            BusBoundary previous = carry.get(b.busId);
+            if (previous != null && previous.tailStopId >= 0 && b.headStopId >= 0
+                    && previous.tailStopId != b.headStopId) {
+                SpeedDatagram dg = new SpeedDatagram();
+                dg.fromStopId = previous.tailStopId;
+                dg.toStopId = b.headStopId;
+                dg.timestamp = b.headTimestamp;
+                dg.fromLat = b.hasPrevious ? b.prevLat : previous.tailLat;
+                dg.fromLon = b.hasPrevious ? b.prevLon : previous.tailLon;
+                dg.toLat = b.headLat;
+                dg.toLon = b.headLon;
+                dg.arcId = arcs.indexOf(dg.fromStopId, dg.toStopId);
+                out.add(dg);
+                if (traversals != null) {
+                    traversals.add(dg.arcId, previous.tailStopTimestamp, b.headTimestamp);
+                }
+            }
+
+            BusBoundary next = b;
+            if (b.tailStopId < 0 && previous != null) {
+                next = b.clone();
+                next.tailStopId = previous.tailStopId;
+                next.tailStopTimestamp = previous.tailStopTimestamp;
+            }
+            carry.put(b.busId, next);
+        }
+    }
+
+    public static SpeedDatagram toDatagram(BusTracker.Transition t, ArcIndex arcs) {
+        SpeedDatagram dg = new SpeedDatagram();
+        dg.fromStopId = t.fromStopId;
+        dg.toStopId = t.toStopId;
+        dg.timestamp = t.toTimestamp;
+        dg.fromLat = t.fromLat;
+        dg.fromLon = t.fromLon;
+        dg.toLat = t.toLat;
+        dg.toLon = t.toLon;
+        dg.arcId = arcs.indexOf(dg.fromStopId, dg.toStopId);
+        return dg;
+    }
+
+    public static BusBoundary[] toBoundaries(BusTracker tracker) {
+        Map<Integer, BusTracker.Head> heads = tracker.getHeads();
+        BusBoundary[] boundaries = new BusBoundary[tracker.getHistories().size()];
+        int i = 0;
+        for (Map.Entry<Integer, BusHistory> entry : tracker.getHistories().entrySet()) {
+            BusHistory tail = entry.getValue();
+            BusTracker.Head head = heads.get(entry.getKey());
+            BusBoundary b = new BusBoundary();
+            b.busId = entry.getKey();
+            b.headStopId = -1;
+            if (head != null) {
+                b.headStopId = head.stopId;
+                b.headLat = head.lat;
+                b.headLon = head.lon;
+                b.headTimestamp = head.timestamp;
+                b.hasPrevious = head.hasPrevious;
+                b.prevLat = head.prevLat;
+                b.prevLon = head.prevLon;
+                b.prevTimestamp = head.prevTimestamp;
+            }
+            b.tailStopId = tail.lastStopId != null ? tail.lastStopId : -1;
+            b.tailLat = tail.lastLat;
+            b.tailLon = tail.lastLon;
+            b.tailTimestamp = tail.lastTimestamp;
+            b.tailStopTimestamp = tail.lastStopTimestamp;
+            boundaries[i++] = b;
+        }
+        return boundaries;
+    }
+}
@@ -0,0 +1,189 @@
+package server;
+
+import MIO.GlobalResult;
+import MIO.JobProgress;
+import MIO.JobState;
+import MIO.JobStatus;
+import com.mio.log.Log;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Cálculos de velocidad como trabajos con id: se encolan en un pool propio, así ninguna llamada ICE
+// queda bloqueada mientras se procesan. Corren a lo sumo `threads` a la vez y se aceptan hasta
+// `maxQueued` en espera; más allá submit se rechaza en lugar de alargar la cola sin límite. Los
+// terminados se conservan hasta `retained` para consultar su estado y resultado
+public class SpeedJobs {
+
+    private static final Log LOG = Log.get("SpeedJobs");
+
+    public interface Calculation {
+        GlobalResult run(String csvPath, int maxDatagrams, JobContext context);
+    }
+
+    private static final class Job {
+        final JobContext context;
+        final String csvPath;
+        final int maxDatagrams;
+        final long submittedAt = System.currentTimeMillis();
+        final CompletableFuture<GlobalResult> result = new CompletableFuture<>();
+        JobState state = JobState.Queued;
+        long startedAt;
+        long finishedAt;
+        String error = "";
+
+        Job(long jobId, String csvPath, int maxDatagrams) {
+            this.context = new JobContext(jobId);
+            this.csvPath = csvPath;
+            this.maxDatagrams = maxDatagrams;
+        }
+    }
+
+    private final Calculation calculation;
+    private final int retained;
+    private final int maxQueued;
+    private final int admitted;
+    // Trabajos aceptados sin terminar (en cola o en ejecución)
+    private final AtomicInteger active = new AtomicInteger();
+    private final ExecutorService executor;
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Map<Long, Job> jobs = new ConcurrentHashMap<>();
+    // Ids de los trabajos terminados en orden de término
+    private final Deque<Long> finished = new ArrayDeque<>();
+
+    public SpeedJobs(Calculation calculation, int threads, int maxQueued, int retained) {
+        this.calculation = calculation;
+        this.retained = Math.max(1, retained);
+        this.maxQueued = Math.max(0, maxQueued);
+        this.admitted = Math.max(1, threads) + this.maxQueued;
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "speed-job");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public long submit(String csvPath, int maxDatagrams) {
+        if (active.incrementAndGet() > admitted) {
+            active.decrementAndGet();
+            throw new RuntimeException("Servidor ocupado: " + maxQueued + " trabajos en espera, intente mas tarde");
+        }
+        long jobId = nextId.getAndIncrement();
+        Job job = new Job(jobId, csvPath, maxDatagrams);
+        jobs.put(jobId, job);
+        LOG.info("Trabajo %d encolado: %s (max %d datagramas)", jobId, csvPath, maxDatagrams);
+        executor.execute(() -> run(job));
+        return jobId;
+    }
+
+    private void run(Job job) {
+        synchronized (job) {
+            if (job.state != JobState.Queued) {
+                return; // Cancelado mientras esperaba
+            }
+            job.state = JobState.Running;
+            job.startedAt = System.currentTimeMillis();
+        }
+        long jobId = job.context.getJobId();
+        try {
+            GlobalResult result = calculation.run(job.csvPath, job.maxDatagrams, job.context);
+            job.context.checkCancelled();
+            finish(job, JobState.Completed, "");
+            job.result.complete(result);
+            LOG.info("Trabajo %d completado: %.2f km/h", jobId, result.globalAvgSpeed);
+        } catch (RuntimeException e) {
+            if (e instanceof CancellationException || job.context.isCancelled()) {
+                // Una etapa cortada a mitad puede fallar con otro error; sigue siendo una cancelación
+                CancellationException cancelled = new CancellationException("Trabajo " + jobId + " cancelado");
+                finish(job, JobState.Cancelled, cancelled.getMessage());
+                job.result.completeExceptionally(cancelled);
+                LOG.info("Trabajo %d cancelado", jobId);
+                return;
+            }
+            String message = e.getMessage() != null ? e.getMessage() : e.toString();
+            finish(job, JobState.Failed, message);
+            job.result.completeExceptionally(new RuntimeException("Trabajo " + jobId + " fallido: " + message, e));
+            LOG.error("Trabajo " + jobId + " fallido", e);
+        }
+    }
+
+    private void finish(Job job, JobState state, String error) {
+        synchronized (job) {
+            mark(job, state, error);
+        }
+        retire(job);
+    }
+
+    private static void mark(Job job, JobState state, String error) {
+        job.state = state;
+        job.error = error;
+        job.finishedAt = System.currentTimeMillis();
+    }
+
+    private void retire(Job job) {
+        active.decrementAndGet();
+        synchronized (finished) {
+            finished.addLast(job.context.getJobId());
+            while (finished.size() > retained) {
+                jobs.remove(finished.pollFirst());
+            }
+        }
+    }
+
+    private Job job(long jobId) {
+        Job job = jobs.get(jobId);
+        if (job == null) {
+            throw new RuntimeException("Trabajo no encontrado: " + jobId);
+        }
+        return job;
+    }
+
+    public JobStatus status(long jobId) {
+        Job job = job(jobId);
+        JobProgress progress = job.context.getProgress();
+        synchronized (job) {
+            long now = System.currentTimeMillis();
+            long started = job.startedAt > 0 ? job.startedAt : now;
+            long ended = job.finishedAt > 0 ? job.finishedAt : now;
+            return new JobStatus(jobId, job.state, job.csvPath, job.maxDatagrams,
+                    progress != null ? progress : new JobProgress(jobId, 0, 0, 0, 0, 0, 0), job.error,
+                    started - job.submittedAt, job.startedAt > 0 ? ended - job.startedAt : 0);
+        }
+    }
+
+    // Completa con el resultado, o excepcionalmente si el trabajo falló o se canceló
+    public CompletableFuture<GlobalResult> result(long jobId) {
+        return job(jobId).result;
+    }
+
+    // false si el trabajo ya había terminado. Uno en ejecución se detiene en el siguiente punto de control
+    public boolean cancel(long jobId) {
+        Job job = job(jobId);
+        CancellationException e = new CancellationException("Trabajo " + jobId + " cancelado");
+        boolean queued;
+        synchronized (job) {
+            if (job.state != JobState.Queued && job.state != JobState.Running) {
+                return false;
+            }
+            queued = job.state == JobState.Queued;
+            if (queued) {
+                mark(job, JobState.Cancelled, e.getMessage());
+            }
+        }
+        job.context.cancel();
+        if (queued) {
+            retire(job);
+            job.result.completeExceptionally(e);
+        }
+        LOG.info("Cancelacion solicitada para el trabajo %d", jobId);
+        return true;
+    }
+
+    public void shutdown() {
+        for (Job job : jobs.values()) {
+            job.context.cancel();
+        }
+        executor.shutdownNow();
+    }
+}
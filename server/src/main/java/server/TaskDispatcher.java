@@ -0,0 +1,369 @@
+package server;
+
+import MIO.*;
+import com.mio.ingest.ReferenceData;
+import com.mio.log.Log;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+public class TaskDispatcher implements WorkerRegistry.RemovalListener {
+
+    private static final Log LOG = Log.get("Master");
+
+    // Unidad de trabajo despachable: invocación remota asíncrona + ejecución local de respaldo
+    public static class Work<R> {
+        final int taskId;
+        final Function<WorkerPrx, CompletableFuture<R>> remote;
+        final Supplier<R> local;
+
+        public Work(int taskId, Function<WorkerPrx, CompletableFuture<R>> remote, Supplier<R> local) {
+            this.taskId = taskId;
+            this.remote = remote;
+            this.local = local;
+        }
+    }
+
+    private static class Slot<R> {
+        final Work<R> work;
+        final CompletableFuture<R> result = new CompletableFuture<>();
+        final Set<Integer> runningOn = ConcurrentHashMap.newKeySet();
+        // Una copia en el pool local: no se lanza otra, y no hace falta reasignar si falla un worker
+        final AtomicBoolean runningLocally = new AtomicBoolean();
+        volatile long startMs;
+        volatile boolean speculated;
+
+        Slot(Work<R> work) {
+            this.work = work;
+        }
+
+        // Ninguna copia en curso, ni remota ni local
+        boolean unassigned() {
+            return runningOn.isEmpty() && !runningLocally.get();
+        }
+    }
+
+    // Tareas de una llamada (un trabajo); local es el carril del pool del Master para ese trabajo
+    private static class Round {
+        final Deque<Slot<?>> queue = new ConcurrentLinkedDeque<>();
+        final Set<Slot<?>> running = ConcurrentHashMap.newKeySet();
+        final Executor local;
+
+        Round(Executor local) {
+            this.local = local;
+        }
+    }
+
+    private final Executor localPool;
+    private final WorkerRegistry registry;
+    private final TaskTimings timings;
+    private final int inFlightPerWorker;
+    private final FramedTransfer transfer;
+    private final long batchBytes;
+    // Rondas activas; la ventana de cada worker se reparte entre ellas por turno
+    private final List<Round> rounds = new CopyOnWriteArrayList<>();
+    private final AtomicInteger nextRound = new AtomicInteger();
+    private final ScheduledExecutorService monitor;
+
+    public TaskDispatcher(Executor localPool, WorkerRegistry registry, TaskTimings timings,
+            int inFlightPerWorker, FramedTransfer transfer, long batchBytes) {
+        this.localPool = localPool;
+        this.registry = registry;
+        this.timings = timings;
+        this.inFlightPerWorker = Math.max(1, inFlightPerWorker);
+        this.transfer = transfer;
+        this.batchBytes = batchBytes;
+        this.monitor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "straggler-monitor");
+            t.setDaemon(true);
+            return t;
+        });
+        monitor.scheduleWithFixedDelay(this::speculateStragglers, 500, 500, TimeUnit.MILLISECONDS);
+        registry.addRemovalListener(this);
+    }
+
+    public int getInFlightPerWorker() {
+        return inFlightPerWorker;
+    }
+
+    // Ventana de tareas simultaneas proporcional a la capacidad declarada del worker
+    public int windowFor(RemoteWorker worker) {
+        return Math.max(1, (int) Math.round(inFlightPerWorker * registry.weightOf(worker)));
+    }
+
+    public long getBatchBytes() {
+        return batchBytes;
+    }
+
+    // Con batchBytes > 0 las tareas pequeñas se agrupan en una sola invocación processTasks. local es el
+    // ejecutor de respaldo de estas tareas (el carril del trabajo en el pool del Master) y reference el
+    // grafo del trabajo con que se calculan ahí
+    public List<CompletableFuture<PartialResult>> dispatch(List<Task> tasks, long batchBytes, Executor local,
+            ReferenceData reference) {
+        if (batchBytes <= 0) {
+            return dispatchEach(tasks, local, reference);
+        }
+        List<List<Task>> batches = new ArrayList<>();
+        List<Task> current = new ArrayList<>();
+        long currentBytes = 0;
+        for (Task task : tasks) {
+            long bytes = transfer.estimatedBytes(task);
+            if (bytes * 2 > batchBytes) {
+                batches.add(Collections.singletonList(task));
+                continue;
+            }
+            if (currentBytes + bytes > batchBytes) {
+                batches.add(current);
+                current = new ArrayList<>();
+                currentBytes = 0;
+            }
+            current.add(task);
+            currentBytes += bytes;
+        }
+        if (!current.isEmpty()) {
+            batches.add(current);
+        }
+        if (batches.size() == tasks.size()) {
+            return dispatchEach(tasks, local, reference);
+        }
+
+        List<Work<PartialResult[]>> work = new ArrayList<>(batches.size());
+        for (List<Task> batch : batches) {
+            work.add(new Work<>(batch.get(0).taskId, batch.size() == 1
+                    ? worker -> transfer.send(worker, batch.get(0)).thenApply(r -> new PartialResult[] { r })
+                    : worker -> transfer.sendBatch(worker, batch),
+                    () -> {
+                        PartialResult[] results = new PartialResult[batch.size()];
+                        for (int i = 0; i < results.length; i++) {
+                            results[i] = new WorkerI(batch.get(i).taskId, reference).processTask(batch.get(i), null);
+                        }
+                        return results;
+                    }));
+        }
+        LOG.info("[Master] %d tareas agrupadas en %d lotes (presupuesto %d KB)", tasks.size(), batches.size(),
+                batchBytes / 1024);
+        Map<Task, CompletableFuture<PartialResult>> byTask = new IdentityHashMap<>();
+        List<CompletableFuture<PartialResult[]>> batchFutures = dispatchWork(work, local);
+        for (int b = 0; b < batches.size(); b++) {
+            for (int i = 0; i < batches.get(b).size(); i++) {
+                int index = i;
+                CompletableFuture<PartialResult[]> batchFuture = batchFutures.get(b);
+                CompletableFuture<PartialResult> taskFuture = batchFuture.thenApply(results -> results[index]);
+                // Cancelar una tarea cancela su lote, así pump no lo envía si aún no salió
+                taskFuture.whenComplete((r, ex) -> {
+                    if (taskFuture.isCancelled()) {
+                        batchFuture.cancel(false);
+                    }
+                });
+                byTask.put(batches.get(b).get(i), taskFuture);
+            }
+        }
+        List<CompletableFuture<PartialResult>> futures = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            futures.add(byTask.get(task));
+        }
+        return futures;
+    }
+
+    private List<CompletableFuture<PartialResult>> dispatchEach(List<Task> tasks, Executor local,
+            ReferenceData reference) {
+        List<Work<PartialResult>> work = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            work.add(new Work<>(task.taskId, worker -> transfer.send(worker, task),
+                    () -> new WorkerI(task.taskId, reference).processTask(task, null)));
+        }
+        return dispatchWork(work, local);
+    }
+
+    public <R> List<CompletableFuture<R>> dispatchWork(List<Work<R>> work) {
+        return dispatchWork(work, localPool);
+    }
+
+    public <R> List<CompletableFuture<R>> dispatchWork(List<Work<R>> work, Executor local) {
+        Round round = new Round(local);
+        List<CompletableFuture<R>> futures = new ArrayList<>(work.size());
+        for (Work<R> w : work) {
+            Slot<R> slot = new Slot<>(w);
+            round.queue.add(slot);
+            futures.add(slot.result);
+        }
+        rounds.add(round);
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .whenComplete((v, ex) -> rounds.remove(round));
+
+        List<RemoteWorker> workers = registry.active();
+        if (workers.isEmpty()) {
+            Slot<?> slot;
+            while ((slot = round.queue.poll()) != null) {
+                runLocally(round, slot);
+            }
+            return futures;
+        }
+        workers.sort(Comparator.comparingDouble(RemoteWorker::getCapacityScore).reversed());
+        for (RemoteWorker worker : workers) {
+            LOG.info("[Master] Worker %d (%d cores, peso %.2f): ventana de %d tareas, %d rondas activas",
+                    worker.getWorkerId(), worker.getCapabilities().cores, registry.weightOf(worker),
+                    windowFor(worker), rounds.size());
+            fill(worker);
+        }
+        return futures;
+    }
+
+    // Ocupa la ventana del worker tomando una tarea de cada ronda por turno: con varios trabajos
+    // a la vez cada uno recibe una parte pareja de la capacidad, en lugar de una ventana completa
+    // por trabajo
+    private void fill(RemoteWorker worker) {
+        synchronized (worker) {
+            while (registry.isActive(worker.getWorkerId()) && worker.getInFlight() < windowFor(worker)) {
+                Round[] active = rounds.toArray(new Round[0]);
+                boolean sent = false;
+                for (int i = 0; i < active.length && !sent; i++) {
+                    Round round = active[Math.floorMod(nextRound.getAndIncrement(), active.length)];
+                    Slot<?> slot = poll(round);
+                    if (slot != null) {
+                        send(round, slot, worker);
+                        sent = true;
+                    }
+                }
+                if (!sent) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static Slot<?> poll(Round round) {
+        Slot<?> slot;
+        do {
+            slot = round.queue.poll();
+        } while (slot != null && slot.result.isDone());
+        return slot;
+    }
+
+    private <R> void send(Round round, Slot<R> slot, RemoteWorker worker) {
+        if (slot.startMs == 0) {
+            slot.startMs = System.currentTimeMillis();
+        }
+        slot.runningOn.add(worker.getWorkerId());
+        round.running.add(slot);
+        worker.taskStarted();
+
+        LOG.debug("[Master] Enviando Task %d a Worker remoto %d", slot.work.taskId, worker.getWorkerId());
+        slot.work.remote.apply(worker.getProxy()).whenComplete((result, ex) -> {
+            worker.taskFinished();
+            slot.runningOn.remove(worker.getWorkerId());
+            if (ex == null) {
+                worker.markAlive();
+                finish(round, slot, result, "Worker " + worker.getWorkerId());
+            } else {
+                LOG.warn("[Master] Error procesando Task %d en worker remoto %d: %s", slot.work.taskId,
+                        worker.getWorkerId(), ex.getMessage());
+                if (!slot.result.isDone() && slot.unassigned()) {
+                    runLocally(round, slot);
+                }
+            }
+            fill(worker);
+        });
+    }
+
+    private <R> void finish(Round round, Slot<R> slot, R result, String source) {
+        if (slot.result.complete(result)) {
+            round.running.remove(slot);
+            timings.record(System.currentTimeMillis() - slot.startMs);
+        } else {
+            LOG.debug("[Master] Resultado duplicado de Task %d (%s) descartado", slot.work.taskId, source);
+        }
+    }
+
+    private <R> void runLocally(Round round, Slot<R> slot) {
+        if (!slot.runningLocally.compareAndSet(false, true)) {
+            return;
+        }
+        if (slot.startMs == 0) {
+            slot.startMs = System.currentTimeMillis();
+        }
+        round.running.add(slot);
+        CompletableFuture.supplyAsync(slot.work.local, round.local)
+                .whenComplete((result, ex) -> {
+                    if (ex == null) {
+                        finish(round, slot, result, "local");
+                    } else if (slot.result.completeExceptionally(ex)) {
+                        round.running.remove(slot);
+                    }
+                });
+    }
+
+    private void speculateStragglers() {
+        long deadline = timings.deadlineMs();
+        if (deadline == Long.MAX_VALUE) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Round round : rounds) {
+            for (Slot<?> slot : round.running) {
+                if (slot.result.isDone() || slot.speculated || slot.runningOn.isEmpty()
+                        || now - slot.startMs <= deadline) {
+                    continue;
+                }
+                slot.speculated = true;
+                RemoteWorker backup = leastLoadedExcluding(slot.runningOn);
+                LOG.info("[Master] Task %d rezagada (%d ms > %d ms). Copia especulativa en %s", slot.work.taskId,
+                        now - slot.startMs, deadline,
+                        backup != null ? "Worker " + backup.getWorkerId() : "ThreadPool local");
+                if (backup != null) {
+                    send(round, slot, backup);
+                } else {
+                    runLocally(round, slot);
+                }
+            }
+        }
+    }
+
+    private RemoteWorker leastLoadedExcluding(Set<Integer> excluded) {
+        RemoteWorker best = null;
+        double bestLoad = Double.MAX_VALUE;
+        for (RemoteWorker worker : registry.active()) {
+            if (excluded.contains(worker.getWorkerId())) {
+                continue;
+            }
+            double load = worker.getInFlight() / worker.getCapacityScore();
+            if (load < bestLoad) {
+                best = worker;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public void workerRemoved(RemoteWorker worker) {
+        for (Round round : rounds) {
+            for (Slot<?> slot : round.running) {
+                if (slot.runningOn.remove(worker.getWorkerId()) && slot.unassigned()
+                        && !slot.result.isDone()) {
+                    RemoteWorker other = leastLoadedExcluding(Collections.emptySet());
+                    LOG.info("[Master] Task %d reasignada tras salida de Worker %d", slot.work.taskId,
+                            worker.getWorkerId());
+                    if (other != null) {
+                        send(round, slot, other);
+                    } else {
+                        runLocally(round, slot);
+                    }
+                }
+            }
+            if (registry.isEmpty()) {
+                Slot<?> slot;
+                while ((slot = round.queue.poll()) != null) {
+                    runLocally(round, slot);
+                }
+            }
+        }
+    }
+
+    public void shutdown() {
+        monitor.shutdownNow();
+    }
+}
@@ -0,0 +1,240 @@
+package server;
+
+import MIO.*;
+import com.mio.ingest.ReferenceData;
+import com.mio.log.Log;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Cola del modo pull. Cada trabajo encola en su propio carril y los workers toman una tarea de cada
+// carril por turno, como en el JobScheduler: un trabajo grande no deja esperando a los que llegan
+// después. Cada tarea recuerda el carril de su trabajo para procesarla localmente si se queda sin
+// workers
+public class TaskQueue {
+
+    private static final Log LOG = Log.get("TaskQueue");
+
+    // Carril de un trabajo: el ejecutor en el pool local y el grafo con que corre, para el respaldo local
+    public static final class Lane {
+        public final Executor executor;
+        public final ReferenceData reference;
+
+        public Lane(Executor executor, ReferenceData reference) {
+            this.executor = executor;
+            this.reference = reference;
+        }
+    }
+
+    private static class Lease {
+        final int workerId;
+        final Task task;
+        final long deadline;
+
+        Lease(int workerId, Task task, long deadline) {
+            this.workerId = workerId;
+            this.task = task;
+            this.deadline = deadline;
+        }
+    }
+
+    // Carriles con tareas pendientes, en orden de turno (el primero es el siguiente en ser atendido)
+    private final LinkedHashMap<Lane, Deque<Task>> pending = new LinkedHashMap<>();
+    private final Map<Integer, Lane> laneOf = new HashMap<>();
+    private final Map<Integer, Lease> leases = new HashMap<>();
+    private final Map<Integer, Long> startedAt = new HashMap<>();
+    private final Set<Integer> speculated = new HashSet<>();
+    private final Map<Integer, CompletableFuture<PartialResult>> results = new ConcurrentHashMap<>();
+    private final long leaseTimeoutMs;
+    private final TaskTimings timings;
+    private final ScheduledExecutorService reaper;
+
+    public TaskQueue(long leaseTimeoutMs, TaskTimings timings) {
+        this.leaseTimeoutMs = leaseTimeoutMs;
+        this.timings = timings;
+        this.reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "task-lease-reaper");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(leaseTimeoutMs / 2, 100);
+        reaper.scheduleAtFixedRate(this::requeueExpired, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // lane es el carril del trabajo: identifica su turno en la cola
+    public List<CompletableFuture<PartialResult>> submit(List<Task> tasks, Lane lane) {
+        List<CompletableFuture<PartialResult>> futures = new ArrayList<>(tasks.size());
+        synchronized (this) {
+            for (Task task : tasks) {
+                CompletableFuture<PartialResult> future = new CompletableFuture<>();
+                results.put(task.taskId, future);
+                futures.add(future);
+                laneOf.put(task.taskId, lane);
+                enqueue(task, false);
+                future.whenComplete((r, ex) -> {
+                    if (future.isCancelled()) {
+                        withdraw(task.taskId, future);
+                    }
+                });
+            }
+        }
+        return futures;
+    }
+
+    // Tarea cancelada por el Master: deja de entregarse y su resultado, si llega, se descarta
+    private synchronized void withdraw(int taskId, CompletableFuture<PartialResult> future) {
+        if (!results.remove(taskId, future)) {
+            return;
+        }
+        Lane lane = laneOf.remove(taskId);
+        Deque<Task> queued = pending.get(lane);
+        if (queued != null && queued.removeIf(task -> task.taskId == taskId) && queued.isEmpty()) {
+            pending.remove(lane);
+        }
+        leases.remove(taskId);
+        startedAt.remove(taskId);
+        speculated.remove(taskId);
+    }
+
+    public synchronized Task poll(int workerId) {
+        long now = System.currentTimeMillis();
+        Task task = next();
+        if (task != null) {
+            leases.put(task.taskId, new Lease(workerId, task, now + leaseTimeoutMs));
+            startedAt.putIfAbsent(task.taskId, now);
+            return task;
+        }
+        return pollSpeculative(workerId, now);
+    }
+
+    private void enqueue(Task task, boolean first) {
+        Deque<Task> queued = pending.computeIfAbsent(laneOf.get(task.taskId), k -> new ArrayDeque<>());
+        if (first) {
+            queued.addFirst(task);
+        } else {
+            queued.addLast(task);
+        }
+    }
+
+    private Task next() {
+        Iterator<Map.Entry<Lane, Deque<Task>>> it = pending.entrySet().iterator();
+        if (!it.hasNext()) {
+            return null;
+        }
+        Map.Entry<Lane, Deque<Task>> lane = it.next();
+        it.remove();
+        Task task = lane.getValue().pollFirst();
+        if (!lane.getValue().isEmpty()) {
+            pending.put(lane.getKey(), lane.getValue()); // Vuelve al final del turno
+        }
+        return task;
+    }
+
+    // Sin trabajo pendiente: el worker ocioso ejecuta una copia de la tarea mas rezagada
+    private Task pollSpeculative(int workerId, long now) {
+        long deadline = timings.deadlineMs();
+        if (deadline == Long.MAX_VALUE) {
+            return null;
+        }
+        Lease straggler = null;
+        for (Lease lease : leases.values()) {
+            long elapsed = now - startedAt.getOrDefault(lease.task.taskId, now);
+            if (lease.workerId != workerId && elapsed > deadline && !speculated.contains(lease.task.taskId)
+                    && (straggler == null || lease.deadline < straggler.deadline)) {
+                straggler = lease;
+            }
+        }
+        if (straggler == null) {
+            return null;
+        }
+        speculated.add(straggler.task.taskId);
+        LOG.info("[TaskQueue] Task %d rezagada en worker %d. Copia especulativa para worker %d",
+                straggler.task.taskId, straggler.workerId, workerId);
+        return straggler.task;
+    }
+
+    public boolean complete(int workerId, PartialResult result) {
+        Long start;
+        synchronized (this) {
+            Lease lease = leases.get(result.taskId);
+            if (lease != null && lease.workerId == workerId) {
+                leases.remove(result.taskId);
+            }
+            start = startedAt.get(result.taskId);
+        }
+        CompletableFuture<PartialResult> future = results.remove(result.taskId);
+        if (future == null) {
+            LOG.debug("[TaskQueue] Resultado duplicado o tardio de Task %d (worker %d), descartado", result.taskId,
+                    workerId);
+            return false;
+        }
+        synchronized (this) {
+            leases.remove(result.taskId);
+            laneOf.remove(result.taskId);
+            startedAt.remove(result.taskId);
+            speculated.remove(result.taskId);
+        }
+        if (start != null) {
+            timings.record(System.currentTimeMillis() - start);
+        }
+        return future.complete(result);
+    }
+
+    public synchronized void requeueWorker(int workerId) {
+        Iterator<Lease> it = leases.values().iterator();
+        while (it.hasNext()) {
+            Lease lease = it.next();
+            if (lease.workerId == workerId) {
+                it.remove();
+                enqueue(lease.task, true);
+                LOG.debug("[TaskQueue] Task %d re-encolada (worker %d fuera del pool)", lease.task.taskId, workerId);
+            }
+        }
+    }
+
+    // Retira todo el trabajo sin resultado (pendiente y en lease) para procesarlo en otro lugar,
+    // agrupado por el carril de su trabajo
+    public synchronized Map<Lane, List<Task>> drain() {
+        Map<Lane, List<Task>> drained = new LinkedHashMap<>();
+        for (Map.Entry<Lane, Deque<Task>> lane : pending.entrySet()) {
+            drained.computeIfAbsent(lane.getKey(), k -> new ArrayList<>()).addAll(lane.getValue());
+        }
+        pending.clear();
+        for (Lease lease : leases.values()) {
+            drained.computeIfAbsent(laneOf.get(lease.task.taskId), k -> new ArrayList<>()).add(lease.task);
+        }
+        leases.clear();
+        return drained;
+    }
+
+    public synchronized int pendingCount() {
+        int count = 0;
+        for (Deque<Task> lane : pending.values()) {
+            count += lane.size();
+        }
+        return count;
+    }
+
+    public synchronized int leasedCount() {
+        return leases.size();
+    }
+
+    private synchronized void requeueExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Lease> it = leases.values().iterator();
+        while (it.hasNext()) {
+            Lease lease = it.next();
+            if (lease.deadline <= now) {
+                it.remove();
+                if (results.containsKey(lease.task.taskId)) {
+                    enqueue(lease.task, true);
+                    LOG.warn("[TaskQueue] Lease vencido: Task %d del worker %d re-encolada", lease.task.taskId,
+                            lease.workerId);
+                }
+            }
+        }
+    }
+
+    public void shutdown() {
+        reaper.shutdownNow();
+    }
+}
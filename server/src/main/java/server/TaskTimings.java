@@ -0,0 +1,40 @@
+package server;
+
+import java.util.Arrays;
+
+public class TaskTimings {
+    private final long[] samples;
+    private int count;
+    private int next;
+    private final double percentile;
+    private final double multiplier;
+    private final long minDeadlineMs;
+    private final int minSamples;
+
+    public TaskTimings(int window, double percentile, double multiplier, long minDeadlineMs, int minSamples) {
+        this.samples = new long[window];
+        this.percentile = percentile;
+        this.multiplier = multiplier;
+        this.minDeadlineMs = minDeadlineMs;
+        this.minSamples = minSamples;
+    }
+
+    public synchronized void record(long durationMs) {
+        samples[next] = durationMs;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+    }
+
+    // Tiempo a partir del cual una tarea en ejecucion se considera rezagada
+    public synchronized long deadlineMs() {
+        if (count < minSamples) {
+            return Long.MAX_VALUE;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int idx = Math.min(count - 1, (int) Math.ceil(percentile * count) - 1);
+        return Math.max(minDeadlineMs, (long) (sorted[Math.max(idx, 0)] * multiplier));
+    }
+}
@@ -0,0 +1,140 @@
+package server;
+
+import MIO.TravelRoute;
+import com.mio.ingest.ArcIndex;
+import com.mio.ingest.ReferenceData;
+import com.mio.log.Log;
+import com.mio.route.BidirectionalDijkstra;
+import com.mio.route.ContractionHierarchy;
+import com.mio.route.ShortestPath;
+
+// Caminos más rápidos entre paradas sobre el grafo de arcos. Cada arco pesa su longitud dividida
+// por su velocidad en las velocidades publicadas por el Master (MasterI.getArcSpeeds, sacadas de la
+// mediana de los recorridos de los buses entre sus paradas), o por la velocidad por defecto si no se observó. La jerarquía de contracción depende solo de la topología y se arma una vez por versión
+// del grafo; cuando cambian las velocidades solo se re-personalizan los pesos
+public class TravelTimeRouter {
+
+    private static final Log LOG = Log.get("Router");
+
+    // Pesos listos para consultar: inmutables, así un lote entero usa los mismos
+    public static final class Weights {
+        private final ReferenceData reference;
+        private final ArcSpeeds speeds;
+        private final ContractionHierarchy hierarchy;
+        private final ContractionHierarchy.Metric metric;
+        private final BidirectionalDijkstra dijkstra;
+        private final double[] seconds;
+        private final boolean[] measured;
+
+        private Weights(ReferenceData reference, ArcSpeeds speeds, ContractionHierarchy hierarchy,
+                double[] seconds, boolean[] measured) {
+            this.reference = reference;
+            this.speeds = speeds;
+            this.hierarchy = hierarchy;
+            this.metric = hierarchy != null ? hierarchy.customize(seconds) : null;
+            this.dijkstra = new BidirectionalDijkstra(reference.getArcs().graph(), seconds);
+            this.seconds = seconds;
+            this.measured = measured;
+        }
+
+        public TravelRoute route(int fromStopId, int toStopId) {
+            ArcIndex arcs = reference.getArcs();
+            int from = stopIndex(arcs, fromStopId);
+            int to = stopIndex(arcs, toStopId);
+            ShortestPath path = metric != null ? metric.query(from, to) : dijkstra.query(from, to);
+
+            TravelRoute route = new TravelRoute();
+            route.fromStopId = fromStopId;
+            route.toStopId = toStopId;
+            route.graphVersion = reference.getVersion();
+            route.found = path.isFound();
+            if (!route.found) {
+                route.stopIds = new int[0];
+                return route;
+            }
+            int[] pathArcs = path.getArcs();
+            route.stopIds = new int[pathArcs.length + 1];
+            route.stopIds[0] = fromStopId;
+            for (int i = 0; i < pathArcs.length; i++) {
+                int arc = pathArcs[i];
+                route.stopIds[i + 1] = arcs.toStop(arc);
+                route.travelTimeSec += seconds[arc];
+                route.distanceKm += reference.arcLengthKm(arc);
+                if (measured[arc]) {
+                    route.measuredArcs++;
+                }
+            }
+            return route;
+        }
+
+        private static int stopIndex(ArcIndex arcs, int stopId) {
+            int idx = arcs.stopIndexOf(stopId);
+            if (idx < 0) {
+                throw new RuntimeException("Parada no encontrada: " + stopId);
+            }
+            return idx;
+        }
+    }
+
+    private final boolean useHierarchy;
+    private final double defaultSpeedKmh;
+    private volatile Weights weights;
+
+    public TravelTimeRouter(boolean useHierarchy, double defaultSpeedKmh) {
+        if (defaultSpeedKmh <= 0) {
+            throw new IllegalStateException("Velocidad por defecto invalida: " + defaultSpeedKmh);
+        }
+        this.useHierarchy = useHierarchy;
+        this.defaultSpeedKmh = defaultSpeedKmh;
+    }
+
+    // Pesos al día para el grafo ref: se re-personalizan solo si cambian las velocidades y la jerarquía
+    // se rearma solo si cambió el grafo. speeds es una sola lectura de MasterI.getArcSpeeds, así la clave
+    // de los pesos y las velocidades con que se arman son la misma instancia; null usa la velocidad por defecto
+    public Weights weights(ReferenceData ref, ArcSpeeds speeds) {
+        Weights current = weights;
+        if (current != null && current.reference == ref && current.speeds == speeds) {
+            return current;
+        }
+        synchronized (this) {
+            current = weights;
+            if (current != null && current.reference == ref && current.speeds == speeds) {
+                return current;
+            }
+            ContractionHierarchy hierarchy = null;
+            if (useHierarchy && current != null && current.reference == ref) {
+                hierarchy = current.hierarchy;
+            } else if (useHierarchy) {
+                long start = System.currentTimeMillis();
+                hierarchy = new ContractionHierarchy(ref.getArcs().graph());
+                LOG.info("Jerarquia de contraccion (version %016x): %d paradas, %d aristas (%d atajos), %d triangulos en %d ms",
+                        ref.getVersion(), hierarchy.stopCount(), hierarchy.edgeCount(), hierarchy.shortcutCount(),
+                        hierarchy.triangleCount(), System.currentTimeMillis() - start);
+            }
+
+            long start = System.nanoTime();
+            // Velocidades de otra versión del grafo no sirven: sus índices densos no coinciden
+            boolean sameGraph = speeds != null && speeds.getGraphVersion() == ref.getVersion();
+            double[] lengths = ref.getArcLengthsKm();
+            int arcCount = ref.getArcs().graphArcCount();
+            double[] seconds = new double[arcCount];
+            boolean[] measured = new boolean[arcCount];
+            int measuredCount = 0;
+            for (int arc = 0; arc < arcCount; arc++) {
+                double speed = sameGraph ? speeds.speed(arc) : Double.NaN;
+                measured[arc] = speed > 0; // NaN y 0 usan la velocidad por defecto
+                if (measured[arc]) {
+                    measuredCount++;
+                } else {
+                    speed = defaultSpeedKmh;
+                }
+                seconds[arc] = lengths[arc] / speed * 3600.0;
+            }
+            Weights built = new Weights(ref, speeds, hierarchy, seconds, measured);
+            LOG.info("Pesos de viaje actualizados: %d de %d arcos con velocidad medida (%.1f ms)", measuredCount,
+                    arcCount, (System.nanoTime() - start) / 1e6);
+            weights = built;
+            return built;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package server;
+
+import MIO.*;
+import com.mio.log.Log;
+import com.mio.dist.AggregationTree;
+import com.mio.ingest.ReferenceData;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Agregación en árbol: cada worker recibe su tarea directamente del Master, pero los resultados
+// se combinan subiendo por un árbol de fan-in fijo y al Master solo llegan las raíces
+public class TreeAggregator {
+
+    private static final Log LOG = Log.get("Master");
+
+    private final WorkerRegistry registry;
+    private final FramedTransfer transfer;
+    private final int fanIn;
+    private final int timeoutMs;
+    private final AtomicInteger nextRound = new AtomicInteger();
+
+    public TreeAggregator(WorkerRegistry registry, FramedTransfer transfer, int fanIn, int timeoutMs) {
+        this.registry = registry;
+        this.transfer = transfer;
+        this.fanIn = fanIn;
+        this.timeoutMs = timeoutMs;
+    }
+
+    public boolean isEnabled() {
+        return fanIn > 0;
+    }
+
+    public int getFanIn() {
+        return fanIn;
+    }
+
+    public List<CompletableFuture<PartialResult>> aggregate(List<Task> tasks, Executor lane, ReferenceData reference) {
+        return aggregate(tasks, registry.active(), fanIn, lane, reference);
+    }
+
+    // Devuelve un resultado por subárbol raíz (a lo sumo fanIn) en lugar de uno por tarea. Un subárbol
+    // que falla, o en el que algún worker no pudo preparar su parte, se procesa en lane, el carril del
+    // trabajo en el pool local, con reference, el grafo del trabajo
+    public List<CompletableFuture<PartialResult>> aggregate(List<Task> tasks, List<RemoteWorker> workers,
+            int fanIn, Executor lane, ReferenceData reference) {
+        List<List<Task>> assigned = assign(tasks, workers);
+        List<WorkerPrx> members = new ArrayList<>();
+        Map<WorkerPrx, List<Task>> memberTasks = new HashMap<>();
+        for (int i = 0; i < workers.size(); i++) {
+            if (assigned.get(i).isEmpty()) {
+                continue;
+            }
+            WorkerPrx proxy = workers.get(i).getProxy();
+            members.add(proxy);
+            memberTasks.put(proxy, assigned.get(i));
+        }
+
+        int round = nextRound.incrementAndGet();
+        Map<WorkerPrx, CompletableFuture<Void>> staging = new HashMap<>();
+        for (WorkerPrx member : members) {
+            CompletableFuture<Void> staged = stage(member, round, parts(memberTasks.get(member)));
+            staged.whenComplete((v, ex) -> {
+                if (ex != null) {
+                    LOG.warn("[Master] Ronda %d: fallo preparando tareas en %s: %s", round, member, ex);
+                }
+            });
+            staging.put(member, staged);
+        }
+
+        List<CompletableFuture<PartialResult>> results = new ArrayList<>();
+        for (WorkerPrx[] subtree : AggregationTree.split(members.toArray(new WorkerPrx[0]), 0, fanIn)) {
+            List<Task> subtreeTasks = new ArrayList<>();
+            CompletableFuture<PartialResult> outcome = new CompletableFuture<>();
+            for (WorkerPrx member : subtree) {
+                subtreeTasks.addAll(memberTasks.get(member));
+                // Sin la parte de un worker el subárbol no puede completarse: no se espera el plazo
+                staging.get(member).whenComplete((v, ex) -> {
+                    if (ex != null) {
+                        outcome.completeExceptionally(ex);
+                    }
+                });
+            }
+            subtree[0].ice_invocationTimeout(timeoutMs).collectGroupAsync(round, subtree, fanIn)
+                    .whenComplete((result, ex) -> {
+                        if (ex != null) {
+                            outcome.completeExceptionally(ex);
+                        } else {
+                            outcome.complete(result);
+                        }
+                    });
+            results.add(outcome
+                    .handle((result, ex) -> {
+                        if (ex == null) {
+                            return CompletableFuture.completedFuture(result);
+                        }
+                        LOG.warn("[Master] Ronda %d: subarbol de %d workers fallo (%s), procesando localmente",
+                                round, subtree.length, ex);
+                        return CompletableFuture.supplyAsync(() -> runLocally(subtreeTasks, reference), lane);
+                    })
+                    .thenCompose(f -> f));
+        }
+        LOG.info("[Master] Ronda %d: %d workers, fan-in %d, profundidad %d, %d resultados al Master", round,
+                members.size(), fanIn, AggregationTree.depth(members.size(), fanIn), results.size());
+        return results;
+    }
+
+    // Partes de a lo sumo un frame, como en la transferencia por frames, para que ningún stageTask
+    // pase de Ice.MessageSizeMax; sin frames cada tarea viaja entera en su propia parte
+    private List<Task> parts(List<Task> tasks) {
+        int size = transfer.isEnabled() ? Math.max(1, transfer.getFrameDatagrams()) : Integer.MAX_VALUE;
+        List<Task> parts = new ArrayList<>();
+        for (Task task : tasks) {
+            if (task.datagrams.length <= size) {
+                parts.add(task);
+                continue;
+            }
+            for (int from = 0; from < task.datagrams.length; from += size) {
+                Task part = new Task();
+                part.taskId = task.taskId;
+                part.datagrams = Arrays.copyOfRange(task.datagrams, from,
+                        Math.min(from + size, task.datagrams.length));
+                parts.add(part);
+            }
+        }
+        return parts;
+    }
+
+    // Envía las partes con a lo sumo getFramesInFlight() en vuelo; falla con la primera que falle
+    private CompletableFuture<Void> stage(WorkerPrx member, int round, List<Task> parts) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger acked = new AtomicInteger();
+        for (int i = 0; i < Math.min(transfer.getFramesInFlight(), parts.size()); i++) {
+            stageNext(member, round, parts, next, acked, done);
+        }
+        return done;
+    }
+
+    private void stageNext(WorkerPrx member, int round, List<Task> parts, AtomicInteger next, AtomicInteger acked,
+            CompletableFuture<Void> done) {
+        int index = next.getAndIncrement();
+        if (index >= parts.size() || done.isDone()) {
+            return;
+        }
+        member.stageTaskAsync(round, parts.size(), transfer.prepare(parts.get(index))).whenComplete((v, ex) -> {
+            if (ex != null) {
+                done.completeExceptionally(ex);
+            } else if (acked.incrementAndGet() == parts.size()) {
+                done.complete(null);
+            } else {
+                stageNext(member, round, parts, next, acked, done);
+            }
+        });
+    }
+
+    // Reparto voraz por datagramas / capacidad del worker
+    private static List<List<Task>> assign(List<Task> tasks, List<RemoteWorker> workers) {
+        List<List<Task>> assigned = new ArrayList<>();
+        double[] load = new double[workers.size()];
+        for (int i = 0; i < workers.size(); i++) {
+            assigned.add(new ArrayList<>());
+        }
+        List<Task> bySize = new ArrayList<>(tasks);
+        bySize.sort((a, b) -> Integer.compare(b.datagrams.length, a.datagrams.length));
+        for (Task task : bySize) {
+            int best = 0;
+            for (int i = 1; i < workers.size(); i++) {
+                if (load[i] < load[best]) {
+                    best = i;
+                }
+            }
+            assigned.get(best).add(task);
+            load[best] += task.datagrams.length / Math.max(1e-9, workers.get(best).getCapacityScore());
+        }
+        return assigned;
+    }
+
+    private static PartialResult runLocally(List<Task> tasks, ReferenceData reference) {
+        List<PartialResult> parts = new ArrayList<>();
+        for (Task task : tasks) {
+            parts.add(new WorkerI(task.taskId, reference).processTask(task, null));
+        }
+        return ArcAggregation.combine(parts);
+    }
+}
@@ -1,61 +1,183 @@
 package server;
 
 import MIO.*;
+import com.mio.compute.ArcTable;
+import com.mio.compute.ArcTraversals;
+import com.mio.compute.SpeedKernel;
+import com.mio.compute.SpeedTotals;
+import com.mio.ingest.SliceScanner;
+import com.mio.ingest.ReferenceData;
+import com.mio.log.Log;
 import com.zeroc.Ice.Current;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 
+// Respaldo local del Master: calcula en su pool las tareas que no llegan a un worker remoto, con el
+// grafo del trabajo que lo creó. Solo guarda estado en mapas concurrentes: varias tareas locales a la
+// vez no se pisan
 public class WorkerI implements Worker {
-        public static class PartialResultWithDatagrams extends MIO.PartialResult {
-            public SpeedDatagram[] datagrams;
-        }
+    private static final Log LOG = Log.get("Worker");
 
-    private final int workerId;
-    private boolean available = true;
+    public static class PartialResultWithDatagrams extends PartialResult {
+        public SpeedDatagram[] datagrams;
+    }
 
-    private static final double EARTH_RADIUS_KM = 6371.0;
+    private final int workerId;
+    private final ReferenceData reference;
+    private final Map<Integer, SpeedDatagram[][]> frames = new ConcurrentHashMap<>();
+    private final Map<Integer, List<PartialResult>> staged = new ConcurrentHashMap<>();
 
-    public WorkerI(int workerId) {
+    public WorkerI(int workerId, ReferenceData reference) {
         this.workerId = workerId;
+        this.reference = reference;
     }
 
     @Override
-    public MIO.PartialResult processTask(Task task, Current current) {
+    public PartialResult processTask(Task task, Current current) {
+        SpeedDatagram[] datagrams = DatagramBatches.size(task.batch) > 0
+                ? DatagramBatches.decode(task.batch, reference) : task.datagrams;
+        return processRange(task.taskId, datagrams, 0, datagrams.length);
+    }
+
+    // Ruta local del Master: calcula directamente sobre un rango del arreglo, sin armar un Task
+    public PartialResultWithDatagrams processRange(int taskId, SpeedDatagram[] datagrams, int from, int to) {
         long startTime = System.currentTimeMillis();
-        available = false;
-        MIO.PartialResult result = new MIO.PartialResult();
-        result.taskId = task.taskId;
-        result.arcCount = 0;
-        result.datagramCount = 0;
-        result.sumSpeed = 0;
-        result.totalDistance = 0;
-        result.totalTime = 0;
-        result.avgSpeed = 0;
+        ArcTable arcs = new ArcTable(256);
+        for (int i = from; i < to; i++) {
+            SpeedDatagram dg = datagrams[i];
+            int slot = arcs.add(dg.arcId, dg.timestamp);
+            arcs.offerCoords(slot, i, dg.fromLat, dg.fromLon, dg.toLat, dg.toLon);
+        }
+        SpeedTotals totals = SpeedKernel.totals(null, arcs,
+                reference != null ? SpeedKernel.graphDistance(reference) : SpeedKernel.HAVERSINE);
+
+        PartialResultWithDatagrams result = new PartialResultWithDatagrams();
+        result.taskId = taskId;
+        result.arcCount = totals.arcCount;
+        result.datagramCount = to - from;
+        result.sumSpeed = totals.weightedSpeed;
+        result.totalDistance = totals.distance;
+        result.totalTime = totals.time;
+        result.avgSpeed = result.datagramCount > 0 ? totals.weightedSpeed / result.datagramCount : 0;
         result.processingTimeMs = System.currentTimeMillis() - startTime;
-        result.filteredSpeedSum = 0;
-        result.filteredCount = 0;
-        available = true;
-        System.out.println("[Worker " + workerId + "] Task " + task.taskId + " completada (fallback local, sin cálculo de velocidad).");
+        result.filteredSpeedSum = totals.filteredSpeedSum;
+        result.filteredCount = totals.filteredCount;
+        result.arcStats = ArcAggregation.toWire(arcs);
+        result.arcPresence = ArcAggregation.presenceOf(arcs,
+                reference != null ? reference.getArcs().graphArcCount() : 0, false);
+        LOG.info("[Worker %d] Task %d completada en local: %d datagramas, %d arcos, %d ms", workerId, taskId,
+                result.datagramCount, totals.arcCount, result.processingTimeMs);
         return result;
     }
 
-    private double haversineDistance(double lat1, double lon1, double lat2, double lon2) {
-        double lat1Rad = Math.toRadians(lat1);
-        double lat2Rad = Math.toRadians(lat2);
-        double deltaLat = Math.toRadians(lat2 - lat1);
-        double deltaLon = Math.toRadians(lon2 - lon1);
+    @Override
+    public PartialResult[] processTasks(Task[] tasks, Current current) {
+        PartialResult[] results = new PartialResult[tasks.length];
+        for (int i = 0; i < tasks.length; i++) {
+            results[i] = processTask(tasks[i], current);
+        }
+        return results;
+    }
+
+    @Override
+    public void openTask(int taskId, int frameCount, long graphVersion, Current current) {
+        frames.put(taskId, new SpeedDatagram[frameCount][]);
+    }
 
-        double a = Math.sin(deltaLat / 2) * Math.sin(deltaLat / 2) +
-                Math.cos(lat1Rad) * Math.cos(lat2Rad) *
-                        Math.sin(deltaLon / 2) * Math.sin(deltaLon / 2);
+    @Override
+    public void appendFrame(int taskId, int frameIndex, SpeedDatagram[] datagrams, Current current) {
+        SpeedDatagram[][] received = frames.get(taskId);
+        if (received == null) {
+            throw new IllegalStateException("Task " + taskId + " no fue abierta");
+        }
+        received[frameIndex] = datagrams;
+    }
 
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    @Override
+    public void appendBatch(int taskId, int frameIndex, DatagramBatch batch, Current current) {
+        appendFrame(taskId, frameIndex, DatagramBatches.decode(batch, reference), current);
+    }
 
-        return EARTH_RADIUS_KM * c;
+    @Override
+    public PartialResult sealTask(int taskId, Current current) {
+        SpeedDatagram[][] received = frames.remove(taskId);
+        if (received == null) {
+            throw new IllegalStateException("Task " + taskId + " no fue abierta");
+        }
+        List<SpeedDatagram> datagrams = new ArrayList<>();
+        for (SpeedDatagram[] frame : received) {
+            if (frame == null) {
+                throw new IllegalStateException("Task " + taskId + " sellada con frames pendientes");
+            }
+            datagrams.addAll(Arrays.asList(frame));
+        }
+        Task task = new Task();
+        task.taskId = taskId;
+        task.datagrams = datagrams.toArray(new SpeedDatagram[0]);
+        return processTask(task, current);
+    }
+
+    // Llamadas locales y en orden: las partes ya están todas cuando se recolecta la ronda
+    @Override
+    public void stageTask(int roundId, int partCount, Task task, Current current) {
+        staged.computeIfAbsent(roundId, k -> Collections.synchronizedList(new ArrayList<>()))
+                .add(processTask(task, current));
+    }
+
+    // El worker local no tiene peers: solo entrega su resultado de la ronda
+    @Override
+    public CompletionStage<PartialResult> collectGroupAsync(int roundId, WorkerPrx[] group, int fanIn,
+            Current current) {
+        List<PartialResult> parts = staged.remove(roundId);
+        if (parts == null) {
+            throw new IllegalStateException("Ronda " + roundId + " sin tarea preparada");
+        }
+        return CompletableFuture.completedFuture(ArcAggregation.combine(parts));
+    }
+
+    @Override
+    public SliceResult processSlice(FileSlice slice, Current current) {
+        if (reference == null) {
+            throw new IllegalStateException("Worker local sin paradas para procesar slices");
+        }
+        SliceScanner scanner = new SliceScanner(reference.getLocator());
+        List<SpeedDatagram> datagrams = new ArrayList<>();
+        ArcTraversals traversals = new ArcTraversals(reference.getArcs().graphArcCount());
+        long linesRead;
+        try {
+            linesRead = scanner.scan(slice.filePath, slice.offset, slice.length, t -> {
+                SpeedDatagram dg = SliceStitcher.toDatagram(t, reference.getArcs());
+                traversals.add(dg.arcId, t.departureTimestamp, t.toTimestamp);
+                datagrams.add(dg);
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("Error leyendo " + slice.filePath + ": " + e.getMessage(), e);
+        }
+
+        Task task = new Task();
+        task.taskId = slice.taskId;
+        task.datagrams = datagrams.toArray(new SpeedDatagram[0]);
+
+        SliceResult sliceResult = new SliceResult();
+        sliceResult.result = processTask(task, current);
+        sliceResult.boundaries = SliceStitcher.toBoundaries(scanner.getTracker());
+        sliceResult.linesRead = linesRead;
+        sliceResult.traversals = ArcAggregation.toWire(traversals);
+        return sliceResult;
+    }
+
+    // El worker local usa la referencia del Master con que se creó
+    @Override
+    public void loadReference(ReferenceTables tables, Current current) {
     }
 
+    // Las tareas locales corren en el pool del Master, que las encola: siempre acepta más
     @Override
     public boolean isAvailable(Current current) {
-        return available;
+        return true;
     }
 
     @Override
@@ -0,0 +1,158 @@
+package server;
+
+import MIO.*;
+import com.mio.log.Log;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WorkerRegistry {
+
+    private static final Log LOG = Log.get("Master");
+
+    public interface RemovalListener {
+        void workerRemoved(RemoteWorker worker);
+    }
+
+    private final Map<Integer, RemoteWorker> workers = new ConcurrentHashMap<>();
+    private final AtomicInteger workerIdCounter = new AtomicInteger();
+    private final List<RemovalListener> listeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService heartbeats;
+    private final int heartbeatIntervalMs;
+    private final int maxMissedHeartbeats;
+
+    public WorkerRegistry(int heartbeatIntervalMs, int maxMissedHeartbeats) {
+        this.heartbeatIntervalMs = heartbeatIntervalMs;
+        this.maxMissedHeartbeats = maxMissedHeartbeats;
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "worker-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        heartbeats.scheduleWithFixedDelay(this::sendHeartbeats, heartbeatIntervalMs, heartbeatIntervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public void addRemovalListener(RemovalListener listener) {
+        listeners.add(listener);
+    }
+
+    public RemoteWorker register(WorkerPrx proxy, WorkerCapabilities capabilities) {
+        RemoteWorker worker = new RemoteWorker(workerIdCounter.getAndIncrement(), proxy, capabilities);
+        workers.put(worker.getWorkerId(), worker);
+        return worker;
+    }
+
+    public RemoteWorker unregister(int workerId) {
+        RemoteWorker worker = workers.remove(workerId);
+        if (worker != null) {
+            notifyRemoved(worker);
+        }
+        return worker;
+    }
+
+    public RemoteWorker get(int workerId) {
+        return workers.get(workerId);
+    }
+
+    public boolean isActive(int workerId) {
+        return workers.containsKey(workerId);
+    }
+
+    public void markAlive(int workerId) {
+        RemoteWorker worker = workers.get(workerId);
+        if (worker != null) {
+            worker.markAlive();
+        }
+    }
+
+    public List<RemoteWorker> active() {
+        List<RemoteWorker> list = new ArrayList<>(workers.values());
+        list.sort(Comparator.comparingInt(RemoteWorker::getWorkerId));
+        return list;
+    }
+
+    // Peso relativo del worker frente al promedio del pool actual
+    public double weightOf(RemoteWorker worker) {
+        double total = 0;
+        int count = 0;
+        for (RemoteWorker w : workers.values()) {
+            total += w.getCapacityScore();
+            count++;
+        }
+        if (count == 0 || total <= 0) {
+            return 1.0;
+        }
+        return worker.getCapacityScore() / (total / count);
+    }
+
+    public WorkerStatus[] statuses() {
+        List<RemoteWorker> list = active();
+        WorkerStatus[] result = new WorkerStatus[list.size()];
+        for (int i = 0; i < list.size(); i++) {
+            RemoteWorker worker = list.get(i);
+            WorkerStatus status = new WorkerStatus();
+            status.workerId = worker.getWorkerId();
+            status.capabilities = worker.getCapabilities();
+            status.weight = weightOf(worker);
+            status.inFlight = worker.getInFlight();
+            status.lastSeenMs = worker.getLastSeenMs();
+            result[i] = status;
+        }
+        return result;
+    }
+
+    public int size() {
+        return workers.size();
+    }
+
+    public boolean isEmpty() {
+        return workers.isEmpty();
+    }
+
+    private void sendHeartbeats() {
+        for (RemoteWorker worker : workers.values()) {
+            worker.getProxy().ice_invocationTimeout(heartbeatIntervalMs).isAvailableAsync()
+                    .whenComplete((available, ex) -> {
+                        if (ex == null) {
+                            worker.markAlive();
+                        } else if (isBusy(worker, ex)) {
+                            LOG.debug("[Master] Heartbeat del worker %d demorado por %d llamadas en vuelo",
+                                    worker.getWorkerId(), worker.getInFlight());
+                        } else if (worker.missHeartbeat() >= maxMissedHeartbeats) {
+                            evict(worker, ex.getClass().getSimpleName());
+                        }
+                    });
+        }
+    }
+
+    // Un ping que vence mientras el worker tiene llamadas en vuelo puede estar esperando un hilo de
+    // despacho detrás de tareas largas: no cuenta como fallo. Un worker caído corta la conexión y sus
+    // llamadas fallan, así que deja de estar ocupado y los siguientes pings sí cuentan
+    private static boolean isBusy(RemoteWorker worker, Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        return cause instanceof com.zeroc.Ice.InvocationTimeoutException && worker.getInFlight() > 0;
+    }
+
+    private void evict(RemoteWorker worker, String reason) {
+        if (workers.remove(worker.getWorkerId(), worker)) {
+            LOG.warn("[Master] Worker %d expulsado tras %d heartbeats fallidos (%s). Workers activos: %d",
+                    worker.getWorkerId(), worker.getMissedHeartbeats(), reason, workers.size());
+            notifyRemoved(worker);
+        }
+    }
+
+    private void notifyRemoved(RemoteWorker worker) {
+        for (RemovalListener listener : listeners) {
+            try {
+                listener.workerRemoved(worker);
+            } catch (RuntimeException e) {
+                LOG.error("[Master] Error notificando salida de worker " + worker.getWorkerId(), e);
+            }
+        }
+    }
+
+    public void shutdown() {
+        heartbeats.shutdownNow();
+    }
+}
@@ -0,0 +1,93 @@
+package server;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import MIO.TravelRoute;
+import com.mio.compute.ArcTraversals;
+import com.mio.ingest.BusTracker;
+import com.mio.ingest.ReferenceData;
+import org.junit.jupiter.api.Test;
+
+// Ruteo sobre arcos medidos con un historial de varios días: el peso de cada arco es su recorrido
+// típico entre paradas (minutos), no el lapso entre la primera y la última observación (días)
+class TravelTimeRouterTest {
+
+    private static final long MINUTE = 60_000L;
+    private static final long DAY = 24 * 60 * MINUTE;
+    private static final double DEFAULT_SPEED_KMH = 20.0;
+    // Ancho relativo de una cubeta del histograma: la mediana se conoce con esa precisión
+    private static final double BUCKET_WIDTH = 0.25;
+
+    // Paradas 1, 2 y 3 en línea, a 1 km cada una; el atajo 1->3 nunca se recorre en el historial
+    private static ReferenceData reference() {
+        int[] stopIds = { 1, 2, 3 };
+        double[] lats = { 3.400, 3.409, 3.418 };
+        double[] lons = { -76.5, -76.5, -76.5 };
+        int[] from = { 1, 2, 1 };
+        int[] to = { 2, 3, 3 };
+        return new ReferenceData(ReferenceData.versionOf(stopIds, lats, lons, from, to), stopIds, lats, lons,
+                from, to, null);
+    }
+
+    // Tres días de viajes 1->2->3 de dos minutos por tramo, con un registro GPS entre paradas y
+    // esperas en la parada de salida; los recorridos se juntan como en la carga del historial
+    private static ArcTraversals history(ReferenceData ref) {
+        ArcTraversals traversals = new ArcTraversals(ref.getArcs().graphArcCount());
+        BusTracker tracker = new BusTracker(false);
+        BusTracker.Transition arc = new BusTracker.Transition();
+        long start = 1_527_724_800_000L;
+        for (int day = 0; day < 3; day++) {
+            for (int trip = 0; trip < 20; trip++) {
+                int bus = 100 + trip % 4;
+                long t = start + day * DAY + trip * 30 * MINUTE;
+                int[] stops = { 1, -1, 1, -1, 2, -1, 3 };
+                long[] offsets = { 0, 0, 1, 2, 3, 4, 5 };
+                for (int i = 0; i < stops.length; i++) {
+                    int stop = stops[i];
+                    double lat = stop > 0 ? ref.getLatitudes()[stop - 1] : 3.404;
+                    if (tracker.observe(bus, stop, lat, -76.5, t + offsets[i] * MINUTE, arc)) {
+                        traversals.add(ref.getArcs().indexOf(arc.fromStopId, arc.toStopId),
+                                arc.departureTimestamp, arc.toTimestamp);
+                    }
+                }
+            }
+        }
+        return traversals;
+    }
+
+    @Test
+    void measuredArcsWeighTheirTypicalTraversal() {
+        ReferenceData ref = reference();
+        ArcSpeeds speeds = ArcSpeeds.of(history(ref), ref);
+        int measured = ref.getArcs().indexOf(1, 2);
+        int shortcut = ref.getArcs().indexOf(1, 3);
+        double lengthKm = ref.arcLengthKm(measured);
+        // Un kilómetro en dos minutos: ~30 km/h, no una fracción de km por día
+        assertEquals(lengthKm / (2.0 / 60), speeds.speed(measured), 30 * BUCKET_WIDTH);
+        assertTrue(Double.isNaN(speeds.speed(shortcut)));
+
+        for (boolean useHierarchy : new boolean[] { false, true }) {
+            TravelTimeRouter router = new TravelTimeRouter(useHierarchy, DEFAULT_SPEED_KMH);
+            TravelRoute route = router.weights(ref, speeds).route(1, 3);
+            assertTrue(route.found);
+            // Dos tramos medidos de ~2 min le ganan al atajo de 2 km a la velocidad por defecto (6 min)
+            assertArrayEquals(new int[] { 1, 2, 3 }, route.stopIds);
+            assertEquals(2, route.measuredArcs);
+            assertEquals(4 * 60.0, route.travelTimeSec, 4 * 60.0 * BUCKET_WIDTH);
+            assertEquals(ref.getVersion(), route.graphVersion);
+        }
+    }
+
+    @Test
+    void speedsOfAnotherGraphFallBackToDefault() {
+        ReferenceData ref = reference();
+        ArcSpeeds stale = new ArcSpeeds(ref.getVersion() + 1, new double[] { 1.0, 1.0, 1.0 });
+        TravelTimeRouter router = new TravelTimeRouter(false, DEFAULT_SPEED_KMH);
+        for (ArcSpeeds speeds : new ArcSpeeds[] { null, stale }) {
+            TravelRoute route = router.weights(ref, speeds).route(1, 3);
+            assertEquals(0, route.measuredArcs);
+            assertEquals(ref.arcLengthKm(ref.getArcs().indexOf(1, 3)) / DEFAULT_SPEED_KMH * 3600.0,
+                    route.travelTimeSec, 1e-6);
+        }
+    }
+}